@@ -0,0 +1,290 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+// Applies a file (or request body) of administrator commands as one transaction. One command per
+// line, comma-separated; lists inside a field are separated by ';', blank lines and lines starting
+// with '#' are skipped:
+//   addCourse,code,title,professorID,credits,prereq;prereq,semester,schedule,capacity
+//   updateCourse,code,credits,prereq;prereq,schedule
+//   deleteCourse,code
+//   assignProfessor,professorID,code
+//   setCapacity,code,capacity
+//   setSemester,studentID,semester
+//   advanceSemester,studentID
+// Every command is validated against the portal as the earlier commands in the batch leave it, all
+// under the write lock. If any is rejected nothing is applied, unless the caller asks for the valid
+// ones to go in anyway. The accepted commands are applied together and their journal records reach
+// the disk in one commit.
+class AdminBatch {
+
+    enum Status {
+        APPLIED,
+        REJECTED,
+        SKIPPED // valid, but not applied because another command in the batch was rejected
+    }
+
+    static class Item {
+        final int line;
+        final String command;
+        Status status;
+        final String error;
+
+        Item(int line, String command, String error) {
+            this.line = line;
+            this.command = command;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + command + " " + status + (error == null ? "" : " - " + error);
+        }
+    }
+
+    static class Result {
+        final List<Item> items = new ArrayList<>();
+        int applied;
+        int rejected;
+
+        @Override
+        public String toString() {
+            if (applied == 0 && rejected > 0) {
+                return "Nothing applied: " + rejected + " of " + items.size() + " commands rejected";
+            }
+            return applied + " commands applied, " + rejected + " rejected";
+        }
+    }
+
+    // The command's problem, reported against its line
+    private static class Invalid extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        Invalid(String message) {
+            super(message);
+        }
+    }
+
+    public static Result runFile(Path file, boolean partial) throws IOException {
+        return run(Files.readAllLines(file, StandardCharsets.UTF_8), partial);
+    }
+
+    public static Result run(List<String> lines, boolean partial) {
+        Result result = new Result();
+        List<Runnable> changes = new ArrayList<>();
+        List<Item> accepted = new ArrayList<>();
+        Lock lock = Application.stateLock.writeLock();
+        lock.lock();
+        try {
+            AdminBatch batch = new AdminBatch();
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i).trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",", -1);
+                for (int f = 0; f < fields.length; f++) {
+                    fields[f] = fields[f].trim();
+                }
+                try {
+                    changes.add(batch.validate(fields));
+                    Item item = new Item(i + 1, fields[0], null);
+                    accepted.add(item);
+                    result.items.add(item);
+                } catch (Invalid e) {
+                    Item item = new Item(i + 1, fields[0], e.getMessage());
+                    item.status = Status.REJECTED;
+                    result.items.add(item);
+                    result.rejected++;
+                }
+            }
+            if (result.rejected > 0 && !partial) {
+                for (Item item : accepted) {
+                    item.status = Status.SKIPPED;
+                }
+            } else {
+                Application.journal.atomically(() -> {
+                    for (Runnable change : changes) {
+                        change.run();
+                    }
+                });
+                for (Item item : accepted) {
+                    item.status = Status.APPLIED;
+                }
+                result.applied = accepted.size();
+            }
+        } finally {
+            lock.unlock();
+        }
+        Metrics.BATCH_COMMANDS.add(result.applied);
+        Metrics.BATCH_REJECTIONS.add(result.rejected);
+        if (result.applied > 0) {
+            Application.saveData(); // one commit for the whole batch
+        }
+        return result;
+    }
+
+    // Courses added and deleted, and prerequisites set, by the commands validated so far, by normalized code
+    private final Map<String, Course> added = new HashMap<>();
+    private final Set<String> deleted = new HashSet<>();
+    private final Map<String, String[]> prerequisites = new HashMap<>();
+
+    // Checks one command and returns the change that applies it
+    private Runnable validate(String[] fields) throws Invalid {
+        switch (fields[0]) {
+            case "addCourse": {
+                expect(fields, "addCourse,code,title,professorID,credits,prerequisites,semester,schedule,capacity");
+                String key = PortalRepository.normalize(fields[1]);
+                if (fields[1].isEmpty() || fields[2].isEmpty()) {
+                    throw new Invalid("course code and title are required");
+                }
+                if (added.containsKey(key) || !deleted.contains(key) && Application.findCourseByCode(fields[1]) != null) {
+                    throw new Invalid("course " + fields[1] + " already exists");
+                }
+                Course course = new Course(fields[1], fields[2], professor(fields[3]), positive(fields[4], "credits"),
+                        acyclic(fields[1], list(fields[5])), positive(fields[6], "semester"), schedule(fields[7]),
+                        positive(fields[8], "capacity"));
+                added.put(key, course);
+                deleted.remove(key);
+                prerequisites.put(key, course.getPrerequisites());
+                return () -> Administrator.catalog(course);
+            }
+            case "updateCourse": {
+                expect(fields, "updateCourse,code,credits,prerequisites,schedule");
+                Course course = course(fields[1]);
+                int credits = positive(fields[2], "credits");
+                String[] required = acyclic(fields[1], list(fields[3]));
+                String schedule = schedule(fields[4]);
+                prerequisites.put(PortalRepository.normalize(fields[1]), required);
+                return () -> course.updateDetails(credits, required, schedule);
+            }
+            case "deleteCourse": {
+                expect(fields, "deleteCourse,code");
+                Course course = course(fields[1]);
+                String key = PortalRepository.normalize(fields[1]);
+                added.remove(key);
+                deleted.add(key);
+                prerequisites.remove(key);
+                return () -> Administrator.uncatalog(course);
+            }
+            case "assignProfessor": {
+                expect(fields, "assignProfessor,professorID,code");
+                Professor professor = professor(fields[1]);
+                Course course = course(fields[2]);
+                return () -> course.setProfessor(professor);
+            }
+            case "setCapacity": {
+                expect(fields, "setCapacity,code,capacity");
+                Course course = course(fields[1]);
+                int capacity = positive(fields[2], "capacity");
+                return () -> course.setMaxCapacity(capacity);
+            }
+            case "setSemester": {
+                expect(fields, "setSemester,studentID,semester");
+                Student student = student(fields[1]);
+                int semester = positive(fields[2], "semester");
+                return () -> student.setSemester(semester);
+            }
+            case "advanceSemester": {
+                expect(fields, "advanceSemester,studentID");
+                Student student = student(fields[1]);
+                return () -> student.setSemester(student.getSemester() + 1);
+            }
+            default:
+                throw new Invalid("unknown command " + fields[0]);
+        }
+    }
+
+    private static void expect(String[] fields, String usage) throws Invalid {
+        if (fields.length != usage.split(",").length) {
+            throw new Invalid("expected " + usage);
+        }
+    }
+
+    private Course course(String code) throws Invalid {
+        String key = PortalRepository.normalize(code);
+        Course course = added.get(key);
+        if (course == null && !deleted.contains(key)) {
+            course = Application.findCourseByCode(code);
+        }
+        if (course == null) {
+            throw new Invalid("unknown course " + code);
+        }
+        return course;
+    }
+
+    private static Professor professor(String id) throws Invalid {
+        Professor professor = Application.findProfessorByID(id);
+        if (professor == null) {
+            throw new Invalid("unknown professor " + id);
+        }
+        return professor;
+    }
+
+    private static Student student(String id) throws Invalid {
+        Student student = Application.findStudentByID(id);
+        if (student == null) {
+            throw new Invalid("unknown student " + id);
+        }
+        return student;
+    }
+
+    private static int positive(String value, String name) throws Invalid {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new Invalid("invalid " + name + " " + value);
+    }
+
+    private static String[] list(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(";")) {
+            if (!item.isBlank()) {
+                items.add(item.trim());
+            }
+        }
+        return items.toArray(new String[0]);
+    }
+
+    // Prerequisites must not close a cycle through the catalog as the batch leaves it
+    private String[] acyclic(String code, String[] required) throws Invalid {
+        List<String> cycle = PrerequisiteGraph.cycleThrough(code, required, this::prerequisitesOf);
+        if (!cycle.isEmpty()) {
+            throw new Invalid("prerequisites would form a cycle " + String.join(" -> ", cycle));
+        }
+        return required;
+    }
+
+    private String[] prerequisitesOf(String code) {
+        String key = PortalRepository.normalize(code);
+        if (prerequisites.containsKey(key)) {
+            return prerequisites.get(key);
+        }
+        if (deleted.contains(key)) {
+            return null;
+        }
+        Course course = Application.findCourseByCode(code);
+        return course == null ? null : course.getPrerequisites();
+    }
+
+    // Schedules must name at least one meeting the timetable checks can read
+    private static String schedule(String value) throws Invalid {
+        if (WeeklySchedule.parse(value).isEmpty()) {
+            throw new Invalid("unreadable schedule " + value);
+        }
+        return value;
+    }
+}
@@ -1,18 +1,24 @@
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 abstract class User implements Serializable{
     private String email;
-    private String password;
+    private String password; // PasswordHasher hash; accounts from older data files may still hold plaintext
 
+    // Takes the stored form of the password; new accounts pass PasswordHasher.hash(plaintext)
     public User(String email, String password) {
         this.email = email;
         this.password = password;
@@ -27,23 +33,96 @@ abstract class User implements Serializable{
     }
 
     public boolean login(String email, String password) {
-        return this.email.equals(email) && this.password.equals(password);
+        long start = Metrics.start();
+        boolean matches = PasswordHasher.verify(password, this.password) && this.email.equals(email);
+        Metrics.LOGIN_TIME.recordSince(start);
+        if (!matches) {
+            Metrics.LOGIN_FAILURES.increment();
+            return false;
+        }
+        Metrics.LOGINS.increment();
+        hashStoredPassword(); // upgrade a legacy plaintext password; the next checkpoint persists it
+        return true;
+    }
+
+    // Replaces a plaintext password from a data file written before passwords were hashed
+    synchronized void hashStoredPassword() {
+        if (!PasswordHasher.isHash(password)) {
+            password = PasswordHasher.hash(password);
+        }
     }
 }
 
 class Student extends User {
+    static final int COURSES_PER_PAGE = 20;
+    static final LocalDate DROP_DEADLINE = LocalDate.of(2024, 12, 1);
+    static final IdRegistry<Student> IDS = new IdRegistry<>();
+    private static final int[] NO_COURSES = new int[0];
     private String studentID;
     private int semester;
-    private ArrayList<Course> registeredCourses;
-    private HashMap<Course, String> grades;
-
+    // Dense ID from IDS and its generation, assigned on first use; 0 until then
+    private transient volatile long index;
+    // IDs of the registered courses in registration order; replaced, never modified, on each change
+    private transient volatile int[] registeredCourses;
+    private AtomicInteger registeredCredits;
+    // Replaced, never modified, on each change, so a published Transcript can share it
+    private transient volatile GradeMap grades;
+    // Running totals over graded registered courses, so GPA queries are O(1)
+    private int qualityPoints;
+    private int gradedCredits;
+    // Bitset of passed course IDs from Application.prerequisites, rebuilt after transcript changes
+    private transient volatile long[] passedCourses;
+    // Union of the weekly schedules of the registered courses, by semester; rebuilt after changes
+    private transient HashMap<Integer, WeeklySchedule> timetable;
+    // Waitlist outcomes not yet shown to the student
+    private transient Queue<String> notifications;
+    // Immutable projection for readers, published at the end of every change it covers
+    private transient volatile Transcript transcript;
 
     public Student(String email, String password, String studentID, int semester) {
         super(email, password);
         this.studentID = studentID;
         this.semester = semester;
-        this.registeredCourses = new ArrayList<>();
-        this.grades = new HashMap<>();
+        this.registeredCourses = NO_COURSES;
+        this.registeredCredits = new AtomicInteger();
+        this.grades = new GradeMap();
+        publishTranscript();
+    }
+
+    // Dense ID for primitive rosters and registration rows
+    int getIndex() {
+        long id = index;
+        if (!IDS.isCurrent(id)) {
+            synchronized (IDS) {
+                id = index;
+                if (!IDS.isCurrent(id)) {
+                    id = IDS.register(this);
+                    index = id;
+                }
+            }
+        }
+        return (int) id;
+    }
+
+    // Java serialization (n_data.ser migration, CodecBenchmark) writes courses, not process-local IDs
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(new ArrayList<>(getRegisteredCourses()));
+        out.writeObject(new HashMap<>(getGrades()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        registeredCourses = NO_COURSES;
+        grades = new GradeMap();
+        for (Course course : (List<Course>) in.readObject()) {
+            registeredCourses = append(registeredCourses, course.getIndex());
+        }
+        for (Map.Entry<Course, Grade> grade : ((Map<Course, Grade>) in.readObject()).entrySet()) {
+            grades.put(grade.getKey().getIndex(), grade.getValue().getCode());
+        }
+        publishTranscript();
     }
     public int getSemester() {
         return semester;
@@ -54,78 +133,358 @@ class Student extends User {
 
     public void setSemester(int value) {
         this.semester = value;
+        Application.journal.append(Journal.SEMESTER, studentID, Integer.toString(value));
     }
 
     // Method to set a grade for a specific course
     public void setGrades(String grade, Course course) {
-        this.grades.put(course, grade);  // Adds/updates the grade for the specified course
+        Grade parsed = Grade.fromLabel(grade);
+        if (parsed == null) {
+            throw new IllegalArgumentException("Unknown grade: " + grade);
+        }
+        setGrades(parsed, course);
     }
 
-    public HashMap<Course, String> getGrades() {
-        return this.grades;  // Returns the grades map
+    public void setGrades(Grade grade, Course course) {
+        restoreGrade(course, grade);  // Adds/updates the grade for the specified course
+        Application.journal.append(Journal.GRADE, studentID, course.getCourseCode(), grade.toString());
     }
 
-    public void viewAvailableCourses(Course[] courses, int semester) {
-        System.out.println("Available Courses for Semester " + semester + ":");
-        boolean flag = false;
-        for (Course course : courses) {
-            if (semester == course.getSemester()) {
-                flag = true;
-                System.out.println(course);
+    // Read-only view of the grades as of the last grade change, shared by every reader
+    public Map<Course, Grade> getGrades() {
+        return transcript.getGrades();
+    }
+
+    // The grade for one course without building the grades view; null if not graded
+    public Grade getGrade(Course course) {
+        byte code = grades.get(course.getIndex());
+        return code == GradeMap.NONE ? null : Grade.fromCode(code);
+    }
+
+    // Walks the grades without building the grades view, for bulk readers such as the codec
+    void forEachGrade(BiConsumer<Course, Grade> action) {
+        GradeMap current = grades;
+        for (int slot = 0; slot < current.capacity(); slot++) {
+            if (current.courseAt(slot) >= 0) {
+                action.accept(Course.IDS.get(current.courseAt(slot)), Grade.fromCode(current.gradeAt(slot)));
             }
         }
-        if(!flag){
-            System.out.println("No records");
+    }
+
+    // Registered courses, grades and GPA as of the last change; only reads the published projection
+    public Transcript getTranscript() {
+        return transcript;
+    }
+
+    // O(1): reads the running totals instead of walking the transcript
+    public double getGpa() {
+        return transcript.getGpa();
+    }
+
+    // Every change to the registrations, grades or credits ends here, under the student's monitor
+    private void publishTranscript() {
+        double gpa = gradedCredits > 0 ? (double) qualityPoints / gradedCredits : 0.0;
+        transcript = new Transcript(new CourseList(registeredCourses), grades, gpa);
+    }
 
+    private void tally(Grade grade, int credits, int sign) {
+        if (grade != null) {
+            qualityPoints += sign * grade.getPoints() * credits;
+            gradedCredits += sign * credits;
         }
     }
 
+    // Called by Course.updateDetails for every enrolled student
+    synchronized void courseCreditsChanged(Course course, int oldCredits, int newCredits) {
+        registeredCredits.addAndGet(newCredits - oldCredits);
+        Grade grade = getGrade(course);
+        tally(grade, oldCredits, -1);
+        tally(grade, newCredits, 1);
+        publishTranscript();
+    }
+
+    // Prints one page of the semester's offerings and returns the number of pages
+    public int viewAvailableCourses(int semester, int page) {
+        List<Course> offered = Application.getCoursesInSemester(semester);
+        int pages = (offered.size() + COURSES_PER_PAGE - 1) / COURSES_PER_PAGE;
+        System.out.println("Available Courses for Semester " + semester + ":");
+        if (offered.isEmpty()) {
+            System.out.println("No records");
+            return 0;
+        }
+        int from = Math.min(page - 1, pages - 1) * COURSES_PER_PAGE;
+        for (Course course : offered.subList(from, Math.min(from + COURSES_PER_PAGE, offered.size()))) {
+            System.out.println(course);
+        }
+        if (pages > 1) {
+            System.out.println("Page " + (from / COURSES_PER_PAGE + 1) + " of " + pages);
+        }
+        return pages;
+    }
+
+    // Only a registration refused for lack of seats joins the waitlist; prerequisites, schedule
+    // clashes and the credit limit are reported as usual, even for a full course
     public void registerCourse(Course course) throws CourseFullException{
-        if (course.isFull()) {
-            throw new CourseFullException("Cannot register. The course " + course.getCourseCode() + " is full.");
+        switch (enroll(course)) {
+            case REGISTERED:
+                System.out.println("Registered for course: " + course.getTitle());
+                break;
+            case ALREADY_REGISTERED:
+                System.out.println("Already registered for course: " + course.getTitle());
+                break;
+            case COURSE_FULL:
+                throw waitlisted(course);
+            case PREREQUISITES_NOT_MET:
+                System.out.println("Prerequisite not met for " + course.getTitle());
+                break;
+            case SCHEDULE_CONFLICT:
+                System.out.println("Cannot register for " + course.getTitle() + ": it clashes with your schedule.");
+                break;
+            default:
+                System.out.println("Cannot register for course: " + course.getTitle());
         }
-            // proceed with registration
+    }
 
-        if (!Application.getEnrolledStudents(course).contains(this)) {
-            if (Application.enrolledCourses.containsKey(course)) {
-                Application.enrolledCourses.get(course).add(this);
-            } else {
-                ArrayList<Student> studentList = new ArrayList<>();
-                studentList.add(this);
-                Application.enrolledCourses.put(course, studentList);
+    // Puts the student on the waitlist of a full course and builds the exception that reports it
+    private CourseFullException waitlisted(Course course) {
+        joinWaitlist(course);
+        int position = course.getEnrollment().waitlistPosition(this);
+        return new CourseFullException("Cannot register. The course " + course.getCourseCode() + " is full."
+                + (position > 0 ? " You are number " + position + " on the waitlist." : ""));
+    }
+
+    // Returns false if the student was already waiting; a seat that is free by now is handed out at once.
+    // Joining and its record are one step, so replay rebuilds the queue in the order it was joined.
+    boolean joinWaitlist(Course course) {
+        CourseEnrollment enrollment = course.getEnrollment();
+        synchronized (enrollment) {
+            if (!enrollment.joinWaitlist(this)) {
+                return false;
             }
+            Application.journal.append(Journal.JOIN_WAITLIST, studentID, course.getCourseCode());
+        }
+        if (!Application.journal.isReplaying()) {
+            Metrics.WAITLIST_JOINS.increment();
         }
+        EnrollmentEngine.promote(course);
+        return true;
+    }
 
-        int totalCredits = registeredCourses.stream().mapToInt(Course::getCredits).sum();
-        if ((totalCredits + course.getCredits() <= 20) ) {
-            registeredCourses.add(course);
-            System.out.println("Registered for course: " + course.getTitle());
+    boolean leaveWaitlist(Course course) {
+        CourseEnrollment enrollment = course.getEnrollment();
+        synchronized (enrollment) {
+            if (!enrollment.leaveWaitlist(this)) {
+                return false;
+            }
+            Application.journal.append(Journal.LEAVE_WAITLIST, studentID, course.getCourseCode());
+        }
+        return true;
+    }
+
+    synchronized void addNotification(String message) {
+        if (notifications == null) {
+            notifications = new ArrayDeque<>();
+        }
+        notifications.add(message);
+    }
+
+    // Returns and clears the pending notifications
+    synchronized List<String> takeNotifications() {
+        if (notifications == null || notifications.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> pending = new ArrayList<>(notifications);
+        notifications.clear();
+        return pending;
+    }
+
+    // Applies a registration without console output. Journal replay applies REGISTER records with
+    // EnrollmentEngine.restore, never through here, so the metrics count live registrations only.
+    EnrollmentEngine.Result enroll(Course course) {
+        long start = Metrics.sampledStart();
+        EnrollmentEngine.Result result = EnrollmentEngine.register(this, course); // journals REGISTER
+        if (result == EnrollmentEngine.Result.REGISTERED) {
+            Metrics.REGISTRATIONS.increment();
+        } else if (result == EnrollmentEngine.Result.COURSE_FULL) {
+            Metrics.COURSE_FULL.increment();
         } else {
-            System.out.println("Cannot register for course: " + course.getTitle());
+            Metrics.REGISTRATION_REJECTIONS.increment();
         }
+        Metrics.REGISTER_TIME.recordSince(start);
+        return result;
     }
 
-    private boolean prerequisitesMet(Course course) {
-        for (String prereq : course.getPrerequisites()) {
-            boolean met = false;
-            for (Course completedCourse : registeredCourses) {
-                if (completedCourse.getCourseCode().equals(prereq) && grades.containsKey(completedCourse)
-                        && getGradePoints(grades.get(completedCourse)) >= 4.0) {
-                    met = true;
-                    break;
-                }
-            }
-            if (!met) {
-                System.out.println("Prerequisite not met for " + course.getTitle());
+    // Adds credits to the running total unless that would exceed the limit
+    boolean reserveCredits(int credits, int limit) {
+        while (true) {
+            int current = registeredCredits.get();
+            if (current + credits > limit) {
                 return false;
             }
+            if (registeredCredits.compareAndSet(current, current + credits)) {
+                return true;
+            }
+        }
+    }
+
+    void releaseCredits(int credits) {
+        registeredCredits.addAndGet(-credits);
+    }
+
+    int getRegisteredCredits() {
+        return registeredCredits.get();
+    }
+
+    // Read-only list over the registered courses as of this call; later changes do not show through
+    List<Course> getRegisteredCourses() {
+        return new CourseList(registeredCourses);
+    }
+
+    boolean isRegisteredFor(Course course) {
+        return position(registeredCourses, course.getIndex()) >= 0;
+    }
+
+    private static int position(int[] ids, int id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
         }
+        return -1;
+    }
+
+    private static int[] append(int[] ids, int id) {
+        int[] longer = Arrays.copyOf(ids, ids.length + 1);
+        longer[ids.length] = id;
+        return longer;
+    }
+
+    // Course IDs shown as the courses they stand for
+    private static final class CourseList extends AbstractList<Course> implements RandomAccess {
+        private final int[] ids;
+
+        CourseList(int[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public Course get(int i) {
+            return Course.IDS.get(ids[i]);
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Course && Student.position(ids, ((Course) o).getIndex()) >= 0;
+        }
+    }
+
+    // Loader hooks: rebuild state from a snapshot without journaling it again
+    synchronized void restoreRegistration(Course course) {
+        addRegisteredCourse(course);
+        registeredCredits.addAndGet(course.getCredits());
+    }
+
+    synchronized void restoreGrade(Course course, Grade grade) {
+        GradeMap updated = grades.copy();
+        byte previousCode = updated.put(course.getIndex(), grade.getCode());
+        grades = updated;
+        Grade previous = previousCode == GradeMap.NONE ? null : Grade.fromCode(previousCode);
+        passedCourses = null;
+        if (isRegisteredFor(course)) {
+            tally(previous, course.getCredits(), -1);
+            tally(grade, course.getCredits(), 1);
+        }
+        publishTranscript();
+    }
+
+    // EnrollmentEngine's last step of a registration and first step of a drop. The record is appended
+    // under the student's monitor, after the seat and credits are claimed and before they are released,
+    // so the journal has a student's registrations and drops in the order they happened and never
+    // puts a registration ahead of the drop that freed its seat. The course's published roster
+    // changes here too, in the same order.
+    synchronized boolean commitRegistration(Course course) {
+        if (clashesWith(course)) {
+            return false;
+        }
+        addRegisteredCourse(course);
+        Application.journal.append(Journal.REGISTER, studentID, course.getCourseCode());
+        course.getEnrollment().committed(this);
+        return true;
+    }
+
+    synchronized boolean commitDrop(Course course) {
+        if (!isRegisteredFor(course)) {
+            return false;
+        }
+        removeRegisteredCourse(course);
+        Application.journal.append(Journal.DROP, studentID, course.getCourseCode());
+        course.getEnrollment().dropped(this);
         return true;
     }
 
+    // Adds the course unless it clashes with another registered course in the same semester
+    synchronized boolean addRegisteredCourseWithoutClash(Course course) {
+        if (clashesWith(course)) {
+            return false;
+        }
+        addRegisteredCourse(course);
+        return true;
+    }
+
+    synchronized boolean clashesWith(Course course) {
+        if (timetable == null) {
+            timetable = new HashMap<>();
+            for (Course registered : getRegisteredCourses()) {
+                timetable.merge(registered.getSemester(), registered.getWeeklySchedule(), WeeklySchedule::union);
+            }
+        }
+        WeeklySchedule busy = timetable.get(course.getSemester());
+        return busy != null && busy.overlaps(course.getWeeklySchedule());
+    }
+
+    synchronized void scheduleChanged() {
+        timetable = null;
+    }
+
+    synchronized void addRegisteredCourse(Course course) {
+        registeredCourses = append(registeredCourses, course.getIndex());
+        passedCourses = null;
+        timetable = null;
+        tally(getGrade(course), course.getCredits(), 1);
+        publishTranscript();
+    }
+
+    synchronized void removeRegisteredCourse(Course course) {
+        int[] ids = registeredCourses;
+        int at = position(ids, course.getIndex());
+        if (at >= 0) {
+            int[] shorter = Arrays.copyOf(ids, ids.length - 1);
+            System.arraycopy(ids, at + 1, shorter, at, ids.length - at - 1);
+            registeredCourses = shorter;
+            passedCourses = null;
+            timetable = null;
+            tally(getGrade(course), course.getCredits(), -1);
+            publishTranscript();
+        }
+    }
+
+    long[] getPassedCourses() {
+        long[] passed = passedCourses;
+        if (passed == null) {
+            passed = Application.prerequisites.passedCourses(this);
+            passedCourses = passed;
+        }
+        return passed;
+    }
+
     public void viewSchedule() {
         System.out.println("Your weekly schedule:");
-        for (Course course : registeredCourses) {
+        for (Course course : getRegisteredCourses()) {
             if (this.semester == course.getSemester()) {
                 System.out.println(course.getSchedule());
             }
@@ -133,63 +492,48 @@ class Student extends User {
     }
 
     public double trackProgress() {
+        Transcript record = getTranscript();
         System.out.println("Grades:");
-        for (Course course : registeredCourses) {
-            System.out.println(course.getTitle() + ": " + grades.get(course));
+        for (Course course : record.getCourses()) {
+            Grade grade = record.getGrade(course);
+            System.out.println(course.getTitle() + ": " + (grade == null ? "Not graded yet" : grade));
         }
 
-        double totalPoints = 0;
-        int totalCredits = 0;
-        for (Course course : registeredCourses) {
-            int courseCredits = course.getCredits();
-            totalCredits += courseCredits;
-            totalPoints += getGradePoints(grades.get(course)) * courseCredits;
-        }
-
-        double gpa = (totalCredits > 0) ? totalPoints / totalCredits : 0.0;
+        double gpa = record.getGpa();
         System.out.println("Current GPA: " + gpa);
         return gpa;
     }
 
-    private double getGradePoints(String grade) {
-        switch (grade) {
-            case "A":
-                return 10.0;
-            case "A-":
-                return 9.0;
-            case "B":
-                return 8.0;
-            case "B-":
-                return 7.0;
-            case "C":
-                return 6.0;
-            case "C-":
-                return 5.0;
-            case "D":
-                return 4.0;
-            case "F":
-                return 2.0;
-            default:
-                return 0.0;
-        }
-    }
-
     public void dropCourse(Course course) throws DropDeadlinePassedException {
-        LocalDate dropDeadline = LocalDate.of(2024, 12, 1); // Set the course drop deadline
-        LocalDate currentDate = LocalDate.now();
-
-        if (currentDate.isAfter(dropDeadline)) {
+        if (isDropDeadlinePassed()) {
             throw new DropDeadlinePassedException("Cannot drop course. Drop deadline for " + course.getTitle() + " has passed.");
         }
 
-        if (registeredCourses.contains(course)) {
-            registeredCourses.remove(course);
+        if (withdraw(course)) {
             System.out.println("Course dropped: " + course.getTitle());
+        } else if (leaveWaitlist(course)) {
+            System.out.println("Removed from the waitlist for " + course.getTitle());
         } else {
             System.out.println("You are not registered in this course.");
         }
     }
 
+    public static boolean isDropDeadlinePassed() {
+        return LocalDate.now().isAfter(DROP_DEADLINE);
+    }
+
+    // Applies a drop without the deadline check; also used by journal replay
+    boolean withdraw(Course course) {
+        if (!EnrollmentEngine.drop(this, course)) { // journals DROP
+            return false;
+        }
+        if (!Application.journal.isReplaying()) { // metrics count what happens live, not the log re-applied
+            Metrics.DROPS.increment();
+        }
+        EnrollmentEngine.promote(course); // the freed seat goes to the head of the waitlist
+        return true;
+    }
+
     public void giveFeedback(Course course, Scanner scanner) {
         System.out.println("Enter feedback type: 1 for Numeric (1-5), 2 for Textual");
         int feedbackType = scanner.nextInt();
@@ -199,6 +543,10 @@ class Student extends User {
             System.out.print("Enter numeric rating (1-5): ");
             int rating = scanner.nextInt();
             scanner.nextLine();  // Consume newline
+            if (!CourseFeedback.isValidRating(rating)) {
+                System.out.println("Rating must be between 1 and 5.");
+                return;
+            }
             course.addFeedback(new Feedback<>(rating, this));
         } else if (feedbackType == 2) {
             System.out.print("Enter textual feedback: ");
@@ -211,11 +559,18 @@ class Student extends User {
 
 
     public void submitComplaint(String info) {
-        Complaint complaint = new Complaint(info);
-        Application.complaints.add(complaint);
+        fileComplaint(info);
         System.out.println("Complaint submitted: " + info);
     }
 
+    Complaint fileComplaint(String info) {
+        return fileComplaint(info, Complaint.Priority.NORMAL);
+    }
+
+    Complaint fileComplaint(String info, Complaint.Priority priority) {
+        return Application.complaints.file(getStudentID(), info, priority);
+    }
+
 }
 class TeachingAssistant extends Student {
 
@@ -227,12 +582,12 @@ class TeachingAssistant extends Student {
     // Method to view grades of enrolled students
     public void viewStudentGrades(Course course) {
         System.out.println("Viewing student grades for course: " + course.getTitle());
-        ArrayList<Student> enrolledStudents = Application.getEnrolledStudents(course);
+        Set<Student> enrolledStudents = Application.getRoster(course);
 
         for (Student student : enrolledStudents) {
-            HashMap<Course, String> grades = student.getGrades();  // Assuming a getGrades method in Student
-            if (grades.containsKey(course)) {
-                System.out.println("Student: " + student.getStudentID() + " - Grade: " + grades.get(course));
+            Grade grade = student.getGrade(course);
+            if (grade != null) {
+                System.out.println("Student: " + student.getStudentID() + " - Grade: " + grade);
             } else {
                 System.out.println("Student: " + student.getStudentID() + " - No grade assigned yet.");
             }
@@ -242,9 +597,12 @@ class TeachingAssistant extends Student {
 
     public void assignGrades(Student student, Course course, String grade) {
         System.out.println("Assigning grade for student: " + student.getStudentID() + " in course: " + course.getTitle());
-        if (Application.getEnrolledStudents(course).contains(student)) {
-            student.getGrades().put(course, grade);  // Assuming grades is accessible via a method
-            System.out.println("Grade assigned: " + grade);
+        Grade parsed = Grade.fromLabel(grade);
+        if (parsed == null) {
+            System.out.println("Invalid grade: " + grade);
+        } else if (Application.getEnrolledStudents(course).contains(student)) {
+            student.setGrades(parsed, course);
+            System.out.println("Grade assigned: " + parsed);
         } else {
             System.out.println("Student is not enrolled in the course.");
         }
@@ -260,6 +618,11 @@ class Professor extends User {
 
     public void viewAndUpdateCourse(Course course,int newCredits,String[] newPrerequisites, String newSchedule) {
         if (Application.courses.contains(course) && course.getProfessor().getProfessorID().equals(this.professorID)) {
+            List<String> cycle = PrerequisiteGraph.cycleThrough(course.getCourseCode(), newPrerequisites);
+            if (!cycle.isEmpty()) {
+                System.out.println("Course not updated: the prerequisites would form a cycle " + String.join(" -> ", cycle));
+                return;
+            }
             course.updateDetails( newCredits, newPrerequisites, newSchedule);
             System.out.println("Course details updated: " + course);
         } else {
@@ -268,13 +631,13 @@ class Professor extends User {
     }
 
 
-    public void viewCourseFeedback(Course course) {
-        course.viewFeedback();
+    public int viewCourseFeedback(Course course, int page) {
+        return course.viewFeedback(page);
     }
 
     public void viewEnrolledStudents(Course course) {
         System.out.println("Enrolled Students for course " + course.getTitle() + ":");
-        for (Student student : Application.getEnrolledStudents(course)) {
+        for (Student student : Application.getRoster(course)) {
             System.out.println("Student ID: " + student.getStudentID() + ", Email: " + student.getEmail());
         }
     }
@@ -306,6 +669,8 @@ class Feedback<T> implements Serializable {
     }
 }
 class Course implements Serializable{
+    static final int COMMENTS_PER_PAGE = 20;
+    static final IdRegistry<Course> IDS = new IdRegistry<>();
     private String courseCode;
     private String title;
     private Professor professor;
@@ -313,9 +678,11 @@ class Course implements Serializable{
     private String[] prerequisites;
     private int semester;
     private String schedule;
-    private int maxCapacity ;
-    private ArrayList<Feedback<?>> feedbackList;
-
+    private volatile int maxCapacity ;
+    private transient CourseEnrollment enrollment; // PortalCodec's; Java serialization goes through writeObject
+    private transient CourseFeedback feedback; // likewise
+    private transient volatile WeeklySchedule weeklySchedule; // parsed from schedule on first use
+    private transient volatile long index; // dense ID from IDS and its generation, assigned on first use
 
     public Course(String courseCode, String title, Professor professor, int credits, String[] prerequisites, int semester,
                   String schedule,int maxCapacity) {
@@ -327,28 +694,91 @@ class Course implements Serializable{
         this.semester = semester;
         this.schedule = schedule;
         this.maxCapacity =  maxCapacity;
-        this.feedbackList = new ArrayList<>();
+        this.enrollment = new CourseEnrollment();
+        this.feedback = new CourseFeedback();
     }
 
+    // Ratings go into the running statistics, text into the comment store; neither keeps the Feedback
     public <T> void addFeedback(Feedback<T> feedback) {
-        feedbackList.add(feedback);
+        Object value = feedback.getFeedback();
+        String studentID = feedback.getStudent().getStudentID();
+        if (value instanceof Integer) {
+            this.feedback.addRating((Integer) value);
+            Application.journal.append(Journal.NUMERIC_FEEDBACK, courseCode, studentID, String.valueOf(value));
+            Metrics.RATINGS.increment();
+        } else {
+            this.feedback.addComment(studentID, String.valueOf(value));
+            Application.journal.append(Journal.TEXT_FEEDBACK, courseCode, studentID, String.valueOf(value));
+            Metrics.COMMENTS.increment();
+        }
+    }
+
+    public CourseFeedback getFeedback() {
+        return feedback;
     }
+
+    // Dense ID for grade maps and registration rows
+    int getIndex() {
+        long id = index;
+        if (!IDS.isCurrent(id)) {
+            synchronized (IDS) {
+                id = index;
+                if (!IDS.isCurrent(id)) {
+                    id = IDS.register(this);
+                    index = id;
+                }
+            }
+        }
+        return (int) id;
+    }
+
     public boolean isFull() {
-        return Application.getEnrolledStudents(this).size() >= maxCapacity;
+        return enrollment.getSeatsTaken() >= maxCapacity;
     }
-    // View feedback for the course
-    public void viewFeedback() {
+    // View feedback for the course: rating summary, then one page of comments; returns the page count
+    public int viewFeedback(int page) {
         System.out.println("Feedback for " + courseCode + ":");
-        for (Feedback<?> feedback : feedbackList) {
-            System.out.println(feedback);
+        long ratings = feedback.getRatingCount();
+        if (ratings > 0) {
+            System.out.printf("Average rating %.2f from %d ratings%n", feedback.getAverageRating(), ratings);
+            long[] histogram = feedback.getHistogram();
+            for (int rating = CourseFeedback.MAX_RATING; rating >= CourseFeedback.MIN_RATING; rating--) {
+                System.out.println("  " + rating + ": " + histogram[rating]);
+            }
+        } else {
+            System.out.println("No ratings yet");
         }
+        int comments = feedback.getCommentCount();
+        int pages = (comments + COMMENTS_PER_PAGE - 1) / COMMENTS_PER_PAGE;
+        for (String comment : feedback.getComments(page, COMMENTS_PER_PAGE)) {
+            System.out.println("Feedback from " + comment);
+        }
+        if (pages > 1) {
+            System.out.println("Comments page " + page + " of " + pages);
+        }
+        return pages;
     }
 
 
     public void updateDetails(  int newCredits, String[] newPrerequisites,String newSchedule) {
+        int oldCredits = this.credits;
         this.credits = newCredits;
+        if (oldCredits != newCredits) {
+            for (Student student : Application.getEnrolledStudents(this)) {
+                student.courseCreditsChanged(this, oldCredits, newCredits); // keep running totals in step
+            }
+        }
         this.prerequisites = newPrerequisites;
-        this.schedule = newSchedule;
+        Application.prerequisites.invalidate();
+        if (!Objects.equals(this.schedule, newSchedule)) {
+            this.schedule = newSchedule;
+            this.weeklySchedule = null;
+            for (Student student : Application.getEnrolledStudents(this)) {
+                student.scheduleChanged(); // re-index the timetables this course sits in
+            }
+        }
+        Application.journal.append(Journal.UPDATE_COURSE, courseCode, Integer.toString(newCredits),
+                Journal.joinList(newPrerequisites), newSchedule);
     }
 
     public String getCourseCode() {
@@ -361,6 +791,60 @@ class Course implements Serializable{
     public int getMaxCapacity() {
         return maxCapacity;
     }
+
+    // Raising the capacity promotes waitlisted students into the new seats; lowering it never
+    // removes anyone, the course just stays full until enough students drop
+    public void setMaxCapacity(int maxCapacity) {
+        this.maxCapacity = maxCapacity;
+        Application.journal.append(Journal.SET_CAPACITY, courseCode, Integer.toString(maxCapacity));
+        if (!Application.journal.isReplaying()) {
+            Metrics.CATALOG_CHANGES.increment();
+        }
+        EnrollmentEngine.promote(this);
+    }
+
+    public CourseEnrollment getEnrollment() {
+        return enrollment;
+    }
+
+    // Java serialization (CodecBenchmark) writes the roster and waitlist as students, and the
+    // feedback as its histogram and (student ID, text) pairs, not the enrollment and feedback objects
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(new ArrayList<>(enrollment.getStudentsView()));
+        out.writeObject(enrollment.getWaitlist());
+        out.writeObject(feedback.getHistogram());
+        ArrayList<String> comments = new ArrayList<>();
+        for (int i = 0; i < feedback.getCommentCount(); i++) {
+            comments.add(feedback.getCommenter(i));
+            comments.add(feedback.getComment(i));
+        }
+        out.writeObject(comments);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        enrollment = new CourseEnrollment();
+        for (Student student : (List<Student>) in.readObject()) {
+            enrollment.restore(student);
+        }
+        for (Student student : (List<Student>) in.readObject()) {
+            enrollment.restoreWaitlisted(student);
+        }
+        enrollment.publishRoster();
+        feedback = new CourseFeedback();
+        long[] histogram = (long[]) in.readObject();
+        for (int rating = CourseFeedback.MIN_RATING; rating <= CourseFeedback.MAX_RATING; rating++) {
+            if (histogram[rating] > 0) {
+                feedback.restoreRatings(rating, histogram[rating]);
+            }
+        }
+        List<String> comments = (List<String>) in.readObject();
+        for (int i = 0; i + 1 < comments.size(); i += 2) {
+            feedback.restoreComment(comments.get(i), comments.get(i + 1));
+        }
+    }
     public Professor getProfessor() {
         return professor;
     }
@@ -380,8 +864,18 @@ class Course implements Serializable{
     public String getSchedule() {
         return schedule;
     }
+
+    public WeeklySchedule getWeeklySchedule() {
+        WeeklySchedule parsed = weeklySchedule;
+        if (parsed == null) {
+            parsed = WeeklySchedule.parse(schedule);
+            weeklySchedule = parsed;
+        }
+        return parsed;
+    }
     public void setProfessor(Professor professor){
         this.professor = professor;
+        Application.journal.append(Journal.ASSIGN_PROFESSOR, professor.getProfessorID(), courseCode);
 
     }
     @Override
@@ -390,14 +884,59 @@ class Course implements Serializable{
     }
 }
 
-class Complaint implements Serializable{
-    private String description;
-    private String status;
+class Complaint implements Serializable {
+    enum Status {
+        PENDING,
+        IN_PROGRESS,
+        RESOLVED;
 
-    // Constructor
-    public Complaint(String description) {
+        // Status strings from older data files; anything unrecognised is still pending
+        static Status parse(String value) {
+            Status status = fromName(value);
+            return status == null ? PENDING : status;
+        }
+
+        // Strict, for what an administrator types: null if the value names no status
+        static Status fromName(String value) {
+            for (Status status : values()) {
+                if (status.name().equalsIgnoreCase(value == null ? "" : value.trim())) {
+                    return status;
+                }
+            }
+            return null;
+        }
+    }
+
+    enum Priority {
+        LOW,
+        NORMAL,
+        HIGH
+    }
+
+    private final long id;
+    private final String submitterID; // null for complaints filed before submitters were recorded
+    private final long filedAt; // epoch millis, 0 if unknown
+    private final String description;
+    private Status status = Status.PENDING;
+    private Priority priority = Priority.NORMAL;
+
+    public Complaint(long id, String submitterID, long filedAt, String description) {
+        this.id = id;
+        this.submitterID = submitterID;
+        this.filedAt = filedAt;
         this.description = description;
-        this.status = "PENDING"; // Default status is PENDING
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getSubmitterID() {
+        return submitterID;
+    }
+
+    public long getFiledAt() {
+        return filedAt;
     }
 
     // Getter method for description
@@ -405,14 +944,27 @@ class Complaint implements Serializable{
         return description;
     }
 
-    // Setter method for status
-    public void setStatus(String status) {
+    public Status getStatus() {
+        return status;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    // Only ComplaintQueue and the data file loaders change these, so the indexes stay in step
+    void setStatus(Status status) {
         this.status = status;
     }
 
-    // Getter method for status (optional)
-    public String getStatus() {
-        return status;
+    void setPriority(Priority priority) {
+        this.priority = priority;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + id + " [" + status + ", " + priority + "] "
+                + (submitterID == null ? "" : submitterID + ": ") + description;
     }
 }
 class Administrator extends User {
@@ -421,22 +973,49 @@ class Administrator extends User {
     }
 
     public void addCourse(Course course) {
-        Application.courses.add(course);
+        List<String> cycle = PrerequisiteGraph.cycleThrough(course.getCourseCode(), course.getPrerequisites());
+        if (!cycle.isEmpty()) {
+            System.out.println("Course not added: the prerequisites would form a cycle " + String.join(" -> ", cycle));
+            return;
+        }
+        catalog(course);
         System.out.println("Course added: " + course);
     }
 
     public void deleteCourse(Course course) {
-        Application.courses.remove(course);
+        uncatalog(course);
         System.out.println("Course removed: " + course);
     }
 
+    // The catalog changes behind addCourse and deleteCourse, without the console output; AdminBatch applies them in bulk
+    static void catalog(Course course) {
+        Application.addToCatalog(course);
+        Metrics.CATALOG_CHANGES.increment();
+        Application.journal.append(Journal.ADD_COURSE, course.getCourseCode(), course.getTitle(),
+                course.getProfessor().getProfessorID(), Integer.toString(course.getCredits()),
+                Journal.joinList(course.getPrerequisites()), Integer.toString(course.getSemester()),
+                course.getSchedule(), Integer.toString(course.getMaxCapacity()));
+    }
+
+    static void uncatalog(Course course) {
+        if (Application.removeFromCatalog(course)) {
+            Application.journal.append(Journal.DELETE_COURSE, course.getCourseCode());
+            Metrics.CATALOG_CHANGES.increment();
+        }
+    }
+
     public void updateStudentRecord(Student student, String field, Object value) {
         switch (field) {
             case "semester":
                 student.setSemester((Integer) value);
                 break;
             case "grades":
-                student.setGrades((String) value,Application.courses.get(1));
+                Grade grade = Grade.fromLabel((String) value);
+                if (grade == null) {
+                    System.out.println("Invalid grade: " + value);
+                    return;
+                }
+                student.setGrades(grade, Application.courses.get(1));
                 break;
             default:
                 System.out.println("Invalid field.");
@@ -450,72 +1029,379 @@ class Administrator extends User {
         System.out.println("Professor assigned to course: " + course);
     }
 
-    public void viewComplaints(ArrayList<Complaint> complaints) {
-        System.out.println("Complaints:");
-        for (Complaint complaint : complaints) {
-            System.out.println("Complaint: " + complaint.getInfo() + ", Status: " + complaint.getStatus());
+    // Prints one page of the complaints in a status, oldest first; returns the number of pages
+    public int viewComplaints(Complaint.Status status, int page) {
+        int count = Application.complaints.count(status);
+        int pages = Math.max(1, (count + COMPLAINTS_PER_PAGE - 1) / COMPLAINTS_PER_PAGE);
+        System.out.println(count + " " + status + " complaints (page " + page + " of " + pages + "):");
+        for (Complaint complaint : Application.complaints.page(status, page, COMPLAINTS_PER_PAGE)) {
+            System.out.println(complaint);
         }
+        return pages;
     }
 
-    public void updateComplaintStatus(Complaint complaint, String status) {
-        complaint.setStatus(status);
-        System.out.println("Complaint status updated to: " + status);
+    public void updateComplaintStatus(Complaint complaint, Complaint.Status status) {
+        Application.complaints.updateStatus(complaint, status);
+        System.out.println("Complaint #" + complaint.getId() + " status updated to: " + status);
     }
+
+    // Takes the most urgent pending complaint (oldest first within a priority) and marks it in progress
+    public Complaint takeNextComplaint() {
+        Complaint next = Application.complaints.takeNext();
+        System.out.println(next == null ? "No pending complaints." : "Now handling: " + next);
+        return next;
+    }
+
+    static final int COMPLAINTS_PER_PAGE = 20;
 }
 
 
 class Application {
 
-    public static HashMap<Course, ArrayList<Student>> enrolledCourses = new HashMap<>();
-    public static ArrayList<User> users = new ArrayList<>();
-    public static ArrayList<Course> courses = new ArrayList<>();
-    public static ArrayList<Complaint> complaints = new ArrayList<>();
-
+    public static List<User> users = new ArrayList<>();
+    public static List<Course> courses = new ArrayList<>();
+    public static ComplaintQueue complaints = new ComplaintQueue();
+
+    // -Dportal.dataDir keeps the data files somewhere other than the working directory
+    static final File DATA_DIR = new File(System.getProperty("portal.dataDir", "."));
+    static final File DATA_FILE = new File(DATA_DIR, "n_data.bin");
+    static final File LEGACY_DATA_FILE = new File(DATA_DIR, "n_data.ser");
+
+    // -Dportal.storage=mapped serves users and courses from the mapped data file on demand
+    static final boolean MAPPED_STORAGE = "mapped".equals(System.getProperty("portal.storage"));
+    static MappedStore store;
+
+    // Mutations are journaled to n_data.log and folded into n_data.bin once the log holds at least this many
+    // records and has grown larger than the snapshot itself, so bulk imports do not rewrite the snapshot per batch
+    static final int COMPACTION_THRESHOLD = Integer.getInteger("portal.compactAfter", 10_000);
+    static Journal journal = new Journal(new File(DATA_DIR, "n_data.log"));
+    static final PersistenceWriter writer = new PersistenceWriter();
+    // saveData() waits for the writer once this many journal bytes are waiting to be committed
+    static final int MAX_PENDING_BYTES = Integer.getInteger("portal.maxPendingBytes", 4 << 20);
+    static PortalRepository repository = new PortalRepository();
+    static PrerequisiteGraph prerequisites = new PrerequisiteGraph();
+    private static volatile long snapshotEpoch;
+
+    // Server mode: lookups and registrations run under the read lock (enrollment itself is lock-free),
+    // everything else that mutates shared state, and checkpoints, under the write lock
+    static final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+
+    // Hands the mutations made since the last call to the background writer and returns without
+    // waiting for the disk; flush() waits. Callers are held back only when the writer has fallen
+    // MAX_PENDING_BYTES behind. Once the log is large, the state is captured here for a checkpoint
+    // whose snapshot the writer then writes.
     public static void saveData() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("n_data.ser"))) {
-            oos.writeObject(users);
-            oos.writeObject(courses);
-            oos.writeObject(complaints);
-            oos.writeObject(enrolledCourses);
+        save();
+    }
+
+    // Blocks until every mutation made so far is on disk. Throws UncheckedIOException if the journal
+    // could not be written; the writer keeps retrying.
+    public static void flush() {
+        long start = Metrics.start();
+        writer.await(save());
+        Metrics.FLUSH_TIME.recordSince(start);
+    }
+
+    // flush() for exit paths, where there is no caller to throw to: reports a journal that could not
+    // be written and returns false. A checkpoint after it still tries to write the same records.
+    static boolean tryFlush() {
+        try {
+            flush();
+            return true;
+        } catch (UncheckedIOException e) {
+            System.out.println("Could not write the latest changes to the journal: " + e.getCause());
+            return false;
+        }
+    }
+
+    private static long save() {
+        long ticket = writer.request();
+        Metrics.SAVES.increment();
+        if (journal.pendingBytes() > MAX_PENDING_BYTES) {
+            long start = Metrics.start();
+            try {
+                writer.await(ticket);
+            } catch (UncheckedIOException e) {
+                // the writer is retrying; flush() reports the failure to callers that need durability
+            }
+            Metrics.BACKPRESSURE_TIME.recordSince(start);
+        }
+        if (journal.size() >= COMPACTION_THRESHOLD && journal.bytes() >= DATA_FILE.length() && !journal.isRotated()
+                && stateLock.getReadHoldCount() == 0 && writer.beginSnapshot(false)) {
+            try {
+                writer.submit(capture());
+            } catch (IOException | RuntimeException e) {
+                writer.endSnapshot();
+                e.printStackTrace();
+            }
+        }
+        return ticket;
+    }
+
+    // Background writer: one commit and fsync for everything journaled since its last pass. On failure
+    // the records stay buffered for the next pass.
+    static void commitJournal() throws IOException {
+        long start = Metrics.start();
+        try {
+            int bytes = journal.commit();
+            if (bytes > 0) {
+                Metrics.COMMITS.increment();
+                Metrics.SAVE_BYTES.add(bytes);
+                Metrics.SAVE_TIME.recordSince(start);
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+            Metrics.COMMIT_FAILURES.increment();
+            throw e;
         }
     }
 
-    private static Course findCourseByTitle(String title) {
-        for (Course course : courses) {
-            if (course.getTitle().equalsIgnoreCase(title)) {
-                return course;
+    // Writes a full snapshot and starts a fresh journal epoch, after any background checkpoint finishes
+    public static void checkpoint() {
+        writer.beginSnapshot(true);
+        try {
+            if (!journal.isRotated()) {
+                install(capture());
+                return;
             }
+            // An earlier snapshot failed, or loadData() found two log segments: fold both under the lock
+            stateLock.writeLock().lock();
+            try {
+                long start = Metrics.start();
+                journal.commit();
+                PortalCodec.Encoded encoded = encode(journal.epoch() + 1);
+                PortalHistory.keepBase(DATA_FILE, snapshotEpoch);
+                Metrics.CHECKPOINT_BYTES.add(encoded.install());
+                journal.reset(encoded.epoch);
+                snapshotEpoch = encoded.epoch;
+                Metrics.CHECKPOINT_TIME.recordSince(start);
+            } finally {
+                stateLock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            writer.endSnapshot();
+        }
+    }
+
+    // Encodes the state into n_data.bin.tmp and rotates the journal under the write lock, so the
+    // snapshot can be synced and installed outside it while later mutations go to the new log segment
+    private static PortalCodec.Encoded capture() throws IOException {
+        stateLock.writeLock().lock();
+        try {
+            PortalCodec.Encoded encoded = encode(journal.epoch() + 1);
+            journal.rotate(encoded.epoch);
+            return encoded;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    private static PortalCodec.Encoded encode(long epoch) throws IOException {
+        PortalCodec.Encoded encoded = PortalCodec.encode(DATA_FILE, users, courses, complaints.all(), epoch);
+        if (store != null) {
+            // Encoding decoded every record, so the old mapping is no longer needed
+            store = null;
+            repository.rebuild(users, courses);
+        }
+        return encoded;
+    }
+
+    // Writes a captured snapshot over the data file and drops the log segment it covers. If this
+    // fails, both segments stay and loadData() replays them on top of the previous snapshot.
+    static void install(PortalCodec.Encoded encoded) {
+        long start = Metrics.start();
+        try {
+            PortalHistory.keepBase(DATA_FILE, snapshotEpoch); // the snapshot the archived segments start from
+            Metrics.CHECKPOINT_BYTES.add(encoded.install());
+            journal.finishRotation();
+            snapshotEpoch = encoded.epoch;
+            Metrics.CHECKPOINT_TIME.recordSince(start);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static Course findCourseByTitle(String title) {
+        return repository.courseByTitle(title); // null if course not found
+    }
+
+    static Student findStudentByID(String id) {
+        return repository.studentByID(id); // null if student not found
+    }
+
+    static Professor findProfessorByID(String id) {
+        return repository.professorByID(id);
+    }
+
+    static Course findCourseByCode(String code) {
+        return repository.courseByCode(code);
+    }
+
+    // GPA of every student by student ID, computed in parallel from the running totals
+    public static Map<String, Double> computeAllGpas() {
+        return users.parallelStream()
+                .filter(user -> user instanceof Student)
+                .map(user -> (Student) user)
+                .collect(Collectors.toConcurrentMap(Student::getStudentID, Student::getGpa, (a, b) -> a));
+    }
+
+    static void addUser(User user) {
+        users.add(user);
+        repository.index(user);
+    }
+
+    static void addToCatalog(Course course) {
+        courses.add(course);
+        repository.index(course);
+        prerequisites.invalidate();
+    }
+
+    static boolean removeFromCatalog(Course course) {
+        if (!courses.remove(course)) {
+            return false;
         }
-        return null; // Course not found
+        repository.unindex(course, courses);
+        prerequisites.invalidate();
+        return true;
     }
 
-    private static Student findStudentByID(String id) {
+    // Every pair of registered courses in the same semester whose meeting times overlap
+    public static List<String> findScheduleConflicts() {
+        List<String> conflicts = new ArrayList<>();
         for (User user : users) {
-            if (user instanceof Student && ((Student) user).getStudentID().equals(id)) {
-                return (Student) user;
+            if (!(user instanceof Student)) {
+                continue;
+            }
+            Student student = (Student) user;
+            List<Course> registered = student.getRegisteredCourses();
+            for (int i = 0; i < registered.size(); i++) {
+                Course first = registered.get(i);
+                for (int j = i + 1; j < registered.size(); j++) {
+                    Course second = registered.get(j);
+                    if (first.getSemester() == second.getSemester()
+                            && first.getWeeklySchedule().overlaps(second.getWeeklySchedule())) {
+                        conflicts.add(student.getStudentID() + ": " + first.getCourseCode() + " (" + first.getSchedule()
+                                + ") clashes with " + second.getCourseCode() + " (" + second.getSchedule() + ")");
+                    }
+                }
             }
         }
-        return null; // Student not found
+        return conflicts;
     }
 
-    public static ArrayList<Student> getEnrolledStudents(Course course) {
-        return enrolledCourses.getOrDefault(course, new ArrayList<>());
+    // Read-only view of the catalog courses offered in a semester
+    public static List<Course> getCoursesInSemester(int semester) {
+        return repository.coursesInSemester(semester);
     }
 
-    @SuppressWarnings("unchecked")
-    public static void loadData() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream("n_data.ser"))) {
-            users = (ArrayList<User>) ois.readObject();
-            courses = (ArrayList<Course>) ois.readObject();
-            complaints = (ArrayList<Complaint>) ois.readObject();
-            enrolledCourses = (HashMap<Course, ArrayList<Student>>) ois.readObject();
-        } catch (FileNotFoundException e) {
-            System.out.println("Data file not found. Starting with fresh data.");
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
+    // Read-only view of a course's live roster; O(1) contains() and size(), for checks before a write
+    public static Set<Student> getEnrolledStudents(Course course) {
+        return course == null ? Collections.emptySet() : course.getEnrollment().getStudentsView();
+    }
+
+    // Immutable copy of a course's roster, for readers; shared until the roster next changes
+    public static Set<Student> getRoster(Course course) {
+        return course == null ? Collections.emptySet() : course.getEnrollment().getRoster();
+    }
+
+    // Drops the dense IDs of the students and courses being replaced, so they can be collected.
+    // Their rosters and grade maps hold IDs of the old generation, so none of them may be used again.
+    static void releaseIds() {
+        Student.IDS.clear();
+        Course.IDS.clear();
+    }
+
+    // Returns false if a data file exists but could not be read; the caller must not start, or the
+    // next checkpoint would replace the user's data with whatever is in memory
+    public static boolean loadData() {
+        releaseIds();
+        if (!DATA_FILE.exists() && LEGACY_DATA_FILE.exists()) {
+            return migrateLegacyData();
         }
+        long start = Metrics.start();
+        try {
+            if (MAPPED_STORAGE) {
+                store = MappedStore.open(DATA_FILE);
+                users = new LazyRecordList<>(store.getUserCount(), store::user, store::recordOf);
+                courses = new LazyRecordList<>(store.getCatalogSize(), store::course, store::recordOf);
+                complaints = new ComplaintQueue(store.complaints());
+                snapshotEpoch = store.getEpoch();
+                repository.attach(store);
+            } else {
+                PortalCodec.Snapshot snapshot = PortalCodec.read(DATA_FILE);
+                users = snapshot.users;
+                courses = snapshot.courses;
+                complaints = new ComplaintQueue(snapshot.complaints);
+                snapshotEpoch = snapshot.epoch;
+                repository.rebuild(users, courses);
+            }
+            journal.replay(snapshotEpoch);
+        } catch (NoSuchFileException e) {
+            return loadWithoutSnapshot();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not load " + DATA_FILE + " and its journal: " + e);
+            return false;
+        }
+        if (journal.isRotated()) {
+            checkpoint(); // stopped while a snapshot was being written; fold both log segments now
+        }
+        Metrics.LOAD_TIME.recordSince(start);
+        return true;
+    }
+
+    // No n_data.bin: a new portal, or one whose first checkpoint never reached the disk. A log that
+    // starts at epoch 0 was written on top of the sample data, so it is replayed onto a fresh copy of
+    // it; a later log continues a snapshot that has gone missing, and the portal refuses to start.
+    // main() checkpoints the result.
+    private static boolean loadWithoutSnapshot() {
+        try {
+            long oldest = journal.oldestEpoch();
+            if (oldest > 0) {
+                System.out.println("Could not load " + DATA_FILE + ": the file is missing, and the journal continues"
+                        + " from it (epoch " + oldest + ").");
+                return false;
+            }
+            System.out.println(oldest < 0 ? "Data file not found. Starting with fresh data."
+                    : "Data file not found. Replaying the journal onto fresh data.");
+            users = new ArrayList<>();
+            courses = new ArrayList<>();
+            complaints = new ComplaintQueue();
+            snapshotEpoch = 0;
+            setupData();
+            journal.replay(0);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not replay the journal onto fresh data: " + e);
+            return false;
+        }
+        return true;
+    }
+
+    // One-shot conversion of the original portal's Java-serialized n_data.ser into n_data.bin. The old
+    // file is renamed only once the new snapshot is on disk.
+    private static boolean migrateLegacyData() {
+        System.out.println("Migrating " + LEGACY_DATA_FILE + " to " + DATA_FILE + "...");
+        LegacyData legacy;
+        try {
+            legacy = LegacyData.read(LEGACY_DATA_FILE);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not read " + LEGACY_DATA_FILE + ": " + e);
+            return false;
+        }
+        users = legacy.users;
+        courses = legacy.courses;
+        complaints = new ComplaintQueue(legacy.complaints);
+        snapshotEpoch = 0;
+        repository.rebuild(users, courses);
+        checkpoint();
+        if (!DATA_FILE.exists()) {
+            System.out.println("Could not write " + DATA_FILE + "; " + LEGACY_DATA_FILE + " is unchanged.");
+            return false;
+        }
+        LEGACY_DATA_FILE.renameTo(new File(LEGACY_DATA_FILE.getPath() + ".migrated"));
+        System.out.println("Migrated " + users.size() + " users, " + courses.size() + " courses and "
+                + legacy.complaints.size() + " complaints.");
+        return true;
     }
 
     private static void setupData() {
@@ -541,19 +1427,52 @@ class Application {
         courses.add(new Course("CS201", "Algorithms", prof2, 4, new String[]{"CS102"}, 3, "Mon-Wed 10:00-11:30", 150));
         courses.add(new Course("CS202", "Operating Systems", prof2, 4, new String[]{"CS201"}, 2, "Tue-Thu 12:00-1:30", 150));
         courses.add(new Course("CS203", "Computer Networks", prof2, 2, new String[]{"CS201"}, 3, "Fri 10:00-12:00", 150));
+        for (User user : users) {
+            user.hashStoredPassword();
+        }
+        repository.rebuild(users, courses);
 
 
     }
 
     public static void main(String[] args) {
+        if (args.length > 1 && args[0].equals("--shard")) {
+            try {
+                EnrollmentShard.run(Integer.parseInt(args[1]));
+            } catch (IOException e) {
+                System.out.println("Could not start the shard: " + e.getMessage());
+            }
+            return;
+        }
+        boolean serverMode = args.length > 0 && args[0].equals("--server");
+        Metrics.registerMBean();
+        Metrics.startDump(Long.getLong("portal.metricsInterval", serverMode ? 60 : 0), System.out);
         // Setup initial data
-        loadData();
-        File file = new File("n_data.ser");
-        if (!file.exists()) {
-            setupData();
-            saveData();
+        if (!loadData()) {
+            System.out.println("Not starting, so that the data files in " + DATA_DIR.getAbsolutePath()
+                    + " are not overwritten. Restore or move them and try again.");
+            System.exit(1);
+        }
+        if (!DATA_FILE.exists()) {
+            checkpoint(); // loadData() set up fresh data
+        }
+        if (serverMode) {
+            try {
+                PortalServer server = new PortalServer(args.length > 1 ? Integer.parseInt(args[1]) : PortalServer.DEFAULT_PORT);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    server.stop();
+                    tryFlush();
+                    checkpoint();
+                }));
+                server.start();
+            } catch (IOException e) {
+                System.out.println("Could not start the server: " + e.getMessage());
+            }
+            return;
         }
 
+        // Saves are written in the background; don't lose the last ones if the console is killed
+        Runtime.getRuntime().addShutdownHook(new Thread(Application::tryFlush));
         Scanner scanner = new Scanner(System.in);
         while (true) {
             System.out.println("1. Sign up as Student");
@@ -584,7 +1503,8 @@ class Application {
                     break;
 
                 case 6:
-                    saveData();
+                    tryFlush();
+                    checkpoint();
                     System.out.println("Exiting...");
                     return; // Ends the program
                 default:
@@ -608,8 +1528,9 @@ class Application {
         scanner.nextLine(); // consume newline
 
         // Create new student and add to users list
-        Student newStudent = new Student(email, password, studentID, semester);
-        users.add(newStudent);
+        Student newStudent = new Student(email, PasswordHasher.hash(password), studentID, semester);
+        addUser(newStudent);
+        journal.append(Journal.ADD_STUDENT, email, newStudent.getPassword(), studentID, Integer.toString(semester));
 
         System.out.println("Student account created successfully!");
         saveData(); // Save the updated user list to file
@@ -625,8 +1546,9 @@ class Application {
         String professorID = scanner.nextLine();
 
         // Create new professor and add to users list
-        Professor newProfessor = new Professor(email, password, professorID);
-        users.add(newProfessor);
+        Professor newProfessor = new Professor(email, PasswordHasher.hash(password), professorID);
+        addUser(newProfessor);
+        journal.append(Journal.ADD_PROFESSOR, email, newProfessor.getPassword(), professorID);
 
         System.out.println("Professor account created successfully!");
         saveData(); // Save the updated user list to file
@@ -639,217 +1561,191 @@ class Application {
         String password = scanner.nextLine();
         try {
             boolean found = false;
-            for (User user : users) {
-                if (user instanceof Student && user.login(email, password)) {
-                    found = true;
-                    Student student = (Student) user;
-                    while (true) {
-                        System.out.println("1. View available courses");
-                        System.out.println("2. Register for a course");
-                        System.out.println("3. View schedule");
-                        System.out.println("4. Track progress");
-                        System.out.println("5. Drop a course");
-                        System.out.println("6. Submit a complaint");
-                        System.out.println("7. Give feedback on a course");
-                        System.out.println("8. TA");
-                        System.out.println("9. Logout");
-                        System.out.print("Choose an option: ");
-                        int choose = scanner.nextInt();
-                        scanner.nextLine(); // consume newline
+            Student student = repository.studentByEmail(email);
+            if (student != null && student.login(email, password)) {
+                found = true;
+                for (String notification : student.takeNotifications()) {
+                    System.out.println("Notification: " + notification);
+                }
+                while (true) {
+                    System.out.println("1. View available courses");
+                    System.out.println("2. Register for a course");
+                    System.out.println("3. View schedule");
+                    System.out.println("4. Track progress");
+                    System.out.println("5. Drop a course");
+                    System.out.println("6. Submit a complaint");
+                    System.out.println("7. Give feedback on a course");
+                    System.out.println("8. TA");
+                    System.out.println("9. Logout");
+                    System.out.print("Choose an option: ");
+                    int choose = scanner.nextInt();
+                    scanner.nextLine(); // consume newline
 
-                        switch (choose) {
-                            case 1:
-                                System.out.print("Enter semester number: ");
-                                int choice = scanner.nextInt();
-                                student.viewAvailableCourses(courses.toArray(new Course[0]), choice);
-                                break;
-                            case 2:
-                                System.out.print("Enter course code: ");
-                                String code = scanner.nextLine().trim();  // Get the course code from the user and trim whitespace
-
-                                // Find the course in the available courses list
-                                Course selectedCourse = null;
-                                for (Course course : courses) {
-                                    if (course.getCourseCode().equalsIgnoreCase(code)) {  // Compare ignoring case
-                                        selectedCourse = course;  // If course found, store it
-                                        break;  // Exit the loop
-                                    }
+                    switch (choose) {
+                        case 1:
+                            System.out.print("Enter semester number: ");
+                            int choice = scanner.nextInt();
+                            scanner.nextLine(); // consume newline
+                            int page = 1;
+                            int pages = student.viewAvailableCourses(choice, page);
+                            while (page < pages) {
+                                System.out.print("Press Enter for the next page, or q to stop: ");
+                                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                                    break;
                                 }
+                                student.viewAvailableCourses(choice, ++page);
+                            }
+                            break;
+                        case 2:
+                            System.out.print("Enter course code: ");
+                            String code = scanner.nextLine().trim();  // Get the course code from the user and trim whitespace
 
-                                // Check if the course exists and try to register the student
-                                if (selectedCourse != null) {
-                                    try{
-                                        student.registerCourse(selectedCourse);
-                                        saveData();
+                            // Find the course in the available courses list
+                            Course selectedCourse = findCourseByCode(code);
+
+                            // Check if the course exists and try to register the student
+                            if (selectedCourse != null) {
+                                try{
+                                    student.registerCourse(selectedCourse);
+                                    saveData();
 
-                                    }
-                                    catch (CourseFullException e){
-                                        System.out.println(e.getMessage());
-                                    }
-                                    // Attempt to register
-                                } else {
-                                    System.out.println("Course with code " + code + " not found.");  // If no course found with the code
                                 }
-                                break;
-                            case 3:
-                                student.viewSchedule();
-                                break;
-                            case 4:
-                                student.trackProgress();
-                                break;
-                            case 5:
-                                System.out.print("Enter course code: ");
-                                String coded = scanner.nextLine().trim();  // Get the course code from the user and trim whitespace
-
-                                // Find the course in the available courses list
-                                Course selectedCoursed = null;
-                                for (Course course : courses) {
-                                    if (course.getCourseCode().equalsIgnoreCase(coded)) {  // Compare ignoring case
-                                        selectedCoursed = course;  // If course found, store it
-                                        break;  // Exit the loop
-                                    }
+                                catch (CourseFullException e){
+                                    System.out.println(e.getMessage());
+                                    saveData(); // the waitlist entry
                                 }
-
-                                // Check if the course exists and try to register the student
-                                if (selectedCoursed != null) {
-                                    try {
-                                        student.dropCourse(selectedCoursed);
-                                        saveData();// Attempt to register
-                                    } catch (DropDeadlinePassedException e) {
-                                        System.out.println(e.getMessage());  // Handle case where the course is full
-                                    }
-                                } else {
-                                    System.out.println("Course with code " + coded + " not found.");  // If no course found with the code
+                                // Attempt to register
+                            } else {
+                                System.out.println("Course with code " + code + " not found.");  // If no course found with the code
+                            }
+                            break;
+                        case 3:
+                            student.viewSchedule();
+                            break;
+                        case 4:
+                            student.trackProgress();
+                            break;
+                        case 5:
+                            System.out.print("Enter course code: ");
+                            String coded = scanner.nextLine().trim();  // Get the course code from the user and trim whitespace
+
+                            // Find the course in the available courses list
+                            Course selectedCoursed = findCourseByCode(coded);
+
+                            // Check if the course exists and try to register the student
+                            if (selectedCoursed != null) {
+                                try {
+                                    student.dropCourse(selectedCoursed);
+                                    saveData();// Attempt to register
+                                } catch (DropDeadlinePassedException e) {
+                                    System.out.println(e.getMessage());  // Handle case where the course is full
                                 }
-                                break;
+                            } else {
+                                System.out.println("Course with code " + coded + " not found.");  // If no course found with the code
+                            }
+                            break;
 
-                            case 6:
-                                System.out.print("Enter complaint: ");
-                                String description = scanner.nextLine();
-                                student.submitComplaint(description);
-                                break;
-                            case 7:
-                                System.out.print("Enter course code: ");
-                                String codef = scanner.nextLine().trim();  // Get the course code from the user and trim whitespace
-
-                                // Find the course in the available courses list
-                                Course selectedCoursef = null;
-                                for (Course course : courses) {
-                                    if (course.getCourseCode().equalsIgnoreCase(codef)) {  // Compare ignoring case
-                                        selectedCoursef = course;  // If course found, store it
-                                        break;  // Exit the loop
-                                    }
-                                }
+                        case 6:
+                            System.out.print("Enter complaint: ");
+                            String description = scanner.nextLine();
+                            student.submitComplaint(description);
+                            break;
+                        case 7:
+                            System.out.print("Enter course code: ");
+                            String codef = scanner.nextLine().trim();  // Get the course code from the user and trim whitespace
 
-                                // Check if the course exists and try to register the student
-                                if (selectedCoursef != null) {
-                                    student.giveFeedback(selectedCoursef, scanner);
-                                    saveData();
-                                } else {
-                                    System.out.println("Course with code " + codef + " not found.");  // If no course found with the code
-                                }
-                                break;
-                                // Example: Giving feedback on the first course in the list
-                            case 8 :
-                                Student stud = new TeachingAssistant(student.getEmail(), student.getPassword(), student.getStudentID(), student.getSemester());
-                                if (stud instanceof TeachingAssistant) {
-                                    TeachingAssistant ta = (TeachingAssistant) stud;
-
-                                    // Start TA menu loop
-                                    while (true) {
-                                        System.out.println("=== Teaching Assistant Menu ===");
-                                        System.out.println("1. View student grades");
-                                        System.out.println("2. Assign grades to students");
-                                        System.out.println("3. Logout as TA");
-                                        System.out.print("Choose an option: ");
-                                        int taChoice = scanner.nextInt();
-                                        scanner.nextLine(); // Consume newline
-
-                                        switch (taChoice) {
-                                            case 1:
-                                                // Viewing grades for a specific course
-                                                System.out.print("Enter course title to view student grades: ");
-                                                String courseTitle = scanner.nextLine();
-                                                // Use helper method to find course
-                                                Course courseToView = null;
-                                                // Loop through the list of courses to find the matching course
-                                                for (Course course : courses) {
-                                                    if (course.getTitle().equalsIgnoreCase(courseTitle)) {
-                                                        courseToView = course; // Course found
-                                                        break;
-                                                    }
-                                                }
+                            // Find the course in the available courses list
+                            Course selectedCoursef = findCourseByCode(codef);
 
-                                                if (courseToView != null) {
-                                                    ta.viewStudentGrades(courseToView); // TA views student grades for the found course
+                            // Check if the course exists and try to register the student
+                            if (selectedCoursef != null) {
+                                student.giveFeedback(selectedCoursef, scanner);
+                                saveData();
+                            } else {
+                                System.out.println("Course with code " + codef + " not found.");  // If no course found with the code
+                            }
+                            break;
+                            // Example: Giving feedback on the first course in the list
+                        case 8 :
+                            Student stud = new TeachingAssistant(student.getEmail(), student.getPassword(), student.getStudentID(), student.getSemester());
+                            if (stud instanceof TeachingAssistant) {
+                                TeachingAssistant ta = (TeachingAssistant) stud;
+
+                                // Start TA menu loop
+                                while (true) {
+                                    System.out.println("=== Teaching Assistant Menu ===");
+                                    System.out.println("1. View student grades");
+                                    System.out.println("2. Assign grades to students");
+                                    System.out.println("3. Logout as TA");
+                                    System.out.println("4. Import grades from CSV file");
+                                    System.out.print("Choose an option: ");
+                                    int taChoice = scanner.nextInt();
+                                    scanner.nextLine(); // Consume newline
+
+                                    switch (taChoice) {
+                                        case 1:
+                                            // Viewing grades for a specific course
+                                            System.out.print("Enter course title to view student grades: ");
+                                            String courseTitle = scanner.nextLine();
+                                            // Use helper method to find course
+                                            Course courseToView = findCourseByTitle(courseTitle);
+
+                                            if (courseToView != null) {
+                                                ta.viewStudentGrades(courseToView); // TA views student grades for the found course
+                                            } else {
+                                                System.out.println("Course not found.");
+                                            }
+                                            break;
+
+                                        case 2:
+                                            // Assigning grades to a specific student
+                                            System.out.print("Enter student ID to assign grade: ");
+                                            String studentID = scanner.nextLine();
+                                            // Use helper method to find student
+                                            Student studentToGrade = findStudentByID(studentID);
+
+                                            if (studentToGrade != null) {
+                                                System.out.print("Enter course title: ");
+                                                String courseTitleToAssign = scanner.nextLine();
+                                                Course courseToAssign = findCourseByTitle(courseTitleToAssign);
+
+                                                if (courseToAssign != null) {
+                                                    System.out.print("Enter grade to assign: ");
+                                                    String grade = scanner.nextLine();
+                                                    ta.assignGrades(studentToGrade, courseToAssign, grade); // Assign grade to student
+                                                    System.out.println("Grade assigned successfully.");
                                                 } else {
                                                     System.out.println("Course not found.");
                                                 }
-                                                break;
-
-                                            case 2:
-                                                // Assigning grades to a specific student
-                                                System.out.print("Enter student ID to assign grade: ");
-                                                String studentID = scanner.nextLine();
-                                                // Use helper method to find student
-                                                Student studentToGrade = null;
-                                                // Loop through the list of students to find the matching student by ID
-                                                for (User currentuser : users) { // Assuming 'users' contains all types of users (e.g., Student, Professor, etc.)
-                                                    if (currentuser instanceof Student) { // Check if the user is a Student
-                                                        Student studentcheck = (Student) currentuser; // Safely cast the user to a Student
-                                                        if (studentcheck.getStudentID().equalsIgnoreCase(studentID)) {
-                                                            studentToGrade = studentcheck; // Student found
-                                                            break;
-                                                        }
-                                                    }
-                                                }
-
-                                                if (studentToGrade != null) {
-                                                    System.out.print("Enter course title: ");
-                                                    String courseTitleToAssign = scanner.nextLine();
-                                                    Course courseToAssign = null;
-                                                    // Loop through the courses list to find the course to assign a grade to
-                                                    for (Course course : courses) {
-                                                        if (course.getTitle().equalsIgnoreCase(courseTitleToAssign)) {
-                                                            courseToAssign = course; // Course found
-                                                            break;
-                                                        }
-                                                    }
-
-                                                    if (courseToAssign != null) {
-                                                        System.out.print("Enter grade to assign: ");
-                                                        String grade = scanner.nextLine();
-                                                        ta.assignGrades(studentToGrade, courseToAssign, grade); // Assign grade to student
-                                                        System.out.println("Grade assigned successfully.");
-                                                    } else {
-                                                        System.out.println("Course not found.");
-                                                    }
-                                                } else {
-                                                    System.out.println("Student not found.");
-                                                }
-                                                break;
-
-                                            case 3:
-                                                // Save data and log out as TA
-                                                saveData();
-                                                return; // Exit the TA menu
-
-                                            default:
-                                                System.out.println("Invalid option.");
-                                        }
+                                            } else {
+                                                System.out.println("Student not found.");
+                                            }
+                                            break;
+
+                                        case 3:
+                                            // Save data and log out as TA
+                                            saveData();
+                                            return; // Exit the TA menu
+
+                                        case 4:
+                                            importGrades(scanner, course -> true);
+                                            break;
+
+                                        default:
+                                            System.out.println("Invalid option.");
                                     }
-                                }else{
-                                    System.out.println("Student not found.");
                                 }
+                            }else{
+                                System.out.println("Student not found.");
+                            }
 
 
-                        // If we reach here, no valid TA was found
-                            case 9:
-                                saveData();
-                                return; // Exit the loop and return to the main menu
-                            default:
-                                System.out.println("Invalid option.");
-                        }
+                    // If we reach here, no valid TA was found
+                        case 9:
+                            saveData();
+                            return; // Exit the loop and return to the main menu
+                        default:
+                            System.out.println("Invalid option.");
                     }
                 }
             }
@@ -872,169 +1768,260 @@ class Application {
         String password = scanner.nextLine();
         try {
             boolean found = false;
-            for (User user : users) {
+            Professor professor = repository.professorByEmail(email);
+            if (professor != null && professor.login(email, password)) {
                 found = true;
-                if (user instanceof Professor && user.login(email, password)) {
-                    Professor professor = (Professor) user;
-                    while (true) {
-                        System.out.println("1. Update course");
-                        System.out.println("2. View enrolled students");
-                        System.out.println("3. View course feedback");
-                        System.out.println("4. Logout");
-                        System.out.print("Choose an option: ");
-                        int choose = scanner.nextInt();
-                        scanner.nextLine(); // consume newline
-
-                        switch (choose) {
-                            case 1:
-                                System.out.print("Enter course code: ");
-                                String courseCode = scanner.nextLine();
-                                Course courseToUpdate = null;
-
-                                // Search for the course by course code
-                                for (Course course : courses) {
-                                    if (course.getCourseCode().equalsIgnoreCase(courseCode)) {
-                                        courseToUpdate = course;
-                                        break;
-                                    }
-                                }
-                                System.out.print("Enter new credits: ");
-                                int credits = scanner.nextInt();
-                                scanner.nextLine(); // consume newline
-                                System.out.print("Enter new schedule: ");
-                                String schedule = scanner.nextLine();
-                                scanner.nextLine();
-                                System.out.print("Enter new prerequisites (comma-separated): ");
-                                String[] prerequisites = scanner.nextLine().split(","); // Process as array
-
-                                professor.viewAndUpdateCourse(courseToUpdate, credits, prerequisites, schedule);
-                                break;
-                            case 2:
-                                System.out.print("Enter course code: ");
-                                String courseCodev = scanner.nextLine();
-                                Course courseToUpdatev = null;
-
-                                // Search for the course by course code
-                                for (Course course : courses) {
-                                    if (course.getCourseCode().equalsIgnoreCase(courseCodev)) {
-                                        courseToUpdatev = course;
-                                        break;
-                                    }
-                                }
-                                professor.viewEnrolledStudents(courseToUpdatev); // Example registration
-                                break;
-                            case 3:
-                                // Example: View feedback on the first course
-                                System.out.print("Enter course code: ");
-                                String courseCodef = scanner.nextLine();
-                                Course courseToUpdatef = null;
-
-                                // Search for the course by course code
-                                for (Course course : courses) {
-                                    if (course.getCourseCode().equalsIgnoreCase(courseCodef)) {
-                                        courseToUpdatef = course;
-                                        break;
-                                    }
-                                }
-                                professor.viewCourseFeedback(courseToUpdatef);
-                                break;
-                            case 4:
-                                saveData();
-                                return; // Exit the loop and return to the main menu
-                            default:
-                                System.out.println("Invalid option.");
-                        }
-                    }
-                }
-            }
-            if (!found) {
-                throw new InvalidLoginException("Invalid email or password. Please try again.");
-            }
-        } catch (InvalidLoginException e) {
-            System.out.println(e.getMessage());
-        }
-
-
-    }
-
-    private static void loginAsAdministrator(Scanner scanner) {
-        System.out.print("Enter email: ");
-        String email = scanner.nextLine();
-        System.out.print("Enter password: ");
-        String password = scanner.nextLine();
-
-        for (User user : users) {
-            if (user instanceof Administrator && user.login(email, password)) {
-                Administrator admin = (Administrator) user;
                 while (true) {
-                    System.out.println("1. Add course");
-                    System.out.println("2. Delete course");
-                    System.out.println("3. Update student record");
-                    System.out.println("4. Assign professor to course");
-                    System.out.println("5. View complaints");
-                    System.out.println("6. Update complaint status");
-                    System.out.println("7. Logout");
+                    System.out.println("1. Update course");
+                    System.out.println("2. View enrolled students");
+                    System.out.println("3. View course feedback");
+                    System.out.println("4. Logout");
+                    System.out.println("5. Import grades from CSV file");
+                    System.out.print("Choose an option: ");
                     int choose = scanner.nextInt();
                     scanner.nextLine(); // consume newline
 
                     switch (choose) {
                         case 1:
                             System.out.print("Enter course code: ");
-                            String courseC = scanner.nextLine();
-                            System.out.print("Enter course title: ");
-                            String courseTitle = scanner.nextLine();
+                            String courseCode = scanner.nextLine();
+                            Course courseToUpdate = findCourseByCode(courseCode);
                             System.out.print("Enter new credits: ");
                             int credits = scanner.nextInt();
+                            scanner.nextLine(); // consume newline
                             System.out.print("Enter new schedule: ");
                             String schedule = scanner.nextLine();
+                            scanner.nextLine();
                             System.out.print("Enter new prerequisites (comma-separated): ");
-                            String[] prerequisites = scanner.nextLine().split(",");
-                            System.out.print("Enter semester: ");
-                            int semester = scanner.nextInt();
-                            System.out.print("Enter capacity: ");
-                            int capacity = scanner.nextInt();
-                            Course addon = new Course(courseC, courseTitle, (Professor) users.get(4),credits,prerequisites,semester,schedule,capacity );
-
+                            String[] prerequisites = scanner.nextLine().split(","); // Process as array
 
-                            admin.addCourse(addon);
+                            professor.viewAndUpdateCourse(courseToUpdate, credits, prerequisites, schedule);
                             break;
                         case 2:
                             System.out.print("Enter course code: ");
-                            String courseCode = scanner.nextLine();
-                            Course coursedelete = null;
-
-                            // Search for the course by course code
-                            for (Course course : courses) {
-                                if (course.getCourseCode().equalsIgnoreCase(courseCode)) {
-                                    coursedelete = course;
+                            String courseCodev = scanner.nextLine();
+                            Course courseToUpdatev = findCourseByCode(courseCodev);
+                            professor.viewEnrolledStudents(courseToUpdatev); // Example registration
+                            break;
+                        case 3:
+                            // Example: View feedback on the first course
+                            System.out.print("Enter course code: ");
+                            String courseCodef = scanner.nextLine();
+                            Course courseToUpdatef = findCourseByCode(courseCodef);
+                            int feedbackPage = 1;
+                            int feedbackPages = professor.viewCourseFeedback(courseToUpdatef, feedbackPage);
+                            while (feedbackPage < feedbackPages) {
+                                System.out.print("Press Enter for more comments, or q to stop: ");
+                                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
                                     break;
                                 }
+                                professor.viewCourseFeedback(courseToUpdatef, ++feedbackPage);
                             }
-                            admin.deleteCourse(coursedelete);
-                            break;
-                        case 3:
-                            // Example: Update student record
-                            admin.updateStudentRecord((Student) users.get(0), "semester", 3);
                             break;
                         case 4:
-                            admin.assignProfessorToCourse((Professor) users.get(4), courses.get(0));
-                            break;
-                        case 5:
-                            admin.viewComplaints(complaints);
-                            break;
-                        case 6:
-                            System.out.print("Enter complaint number: ");
-                            int choice = scanner.nextInt();
-                            admin.updateComplaintStatus(complaints.get(choice - 1), "RESOLVED");
-                            break;
-                        case 7:
                             saveData();
                             return; // Exit the loop and return to the main menu
+                        case 5:
+                            // Professors may only grade their own courses
+                            importGrades(scanner, course -> course.getProfessor() == professor);
+                            break;
                         default:
                             System.out.println("Invalid option.");
                     }
                 }
             }
+            if (!found) {
+                throw new InvalidLoginException("Invalid email or password. Please try again.");
+            }
+        } catch (InvalidLoginException e) {
+            System.out.println(e.getMessage());
+        }
+
+
+    }
+
+    private static void importGrades(Scanner scanner, Predicate<Course> allowedCourses) {
+        System.out.print("Enter path of grade file (studentID,courseCode,grade): ");
+        String path = scanner.nextLine().trim();
+        try {
+            GradeImporter.Result result = GradeImporter.importFile(Paths.get(path), allowedCourses);
+            System.out.println(result);
+            for (int i = 0; i < Math.min(20, result.rejected.size()); i++) {
+                System.out.println("  " + result.rejected.get(i));
+            }
+            if (result.rejected.size() > 20) {
+                System.out.println("  ... and " + (result.rejected.size() - 20) + " more");
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static void runBatch(Scanner scanner) {
+        System.out.print("Enter path of command file: ");
+        String path = scanner.nextLine().trim();
+        System.out.print("Apply the valid commands if some are rejected? (y/n): ");
+        boolean partial = scanner.nextLine().trim().equalsIgnoreCase("y");
+        try {
+            AdminBatch.Result result = AdminBatch.runFile(Paths.get(path), partial);
+            System.out.println(result);
+            int shown = 0;
+            for (AdminBatch.Item item : result.items) {
+                if (item.status == AdminBatch.Status.REJECTED && shown++ < 20) {
+                    System.out.println("  " + item);
+                }
+            }
+            if (shown > 20) {
+                System.out.println("  ... and " + (shown - 20) + " more");
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static void loginAsAdministrator(Scanner scanner) {
+        System.out.print("Enter email: ");
+        String email = scanner.nextLine();
+        System.out.print("Enter password: ");
+        String password = scanner.nextLine();
+
+        Administrator admin = repository.administratorByEmail(email);
+        if (admin != null && admin.login(email, password)) {
+            while (true) {
+                System.out.println("1. Add course");
+                System.out.println("2. Delete course");
+                System.out.println("3. Update student record");
+                System.out.println("4. Assign professor to course");
+                System.out.println("5. View pending complaints");
+                System.out.println("6. Update complaint status");
+                System.out.println("7. Students eligible for a course");
+                System.out.println("8. Schedule conflict report");
+                System.out.println("9. Change course capacity");
+                System.out.println("10. Handle next complaint");
+                System.out.println("11. Run batch commands from file");
+                System.out.println("12. Logout");
+                int choose = scanner.nextInt();
+                scanner.nextLine(); // consume newline
+
+                switch (choose) {
+                    case 1:
+                        System.out.print("Enter course code: ");
+                        String courseC = scanner.nextLine();
+                        System.out.print("Enter course title: ");
+                        String courseTitle = scanner.nextLine();
+                        System.out.print("Enter new credits: ");
+                        int credits = scanner.nextInt();
+                        System.out.print("Enter new schedule: ");
+                        String schedule = scanner.nextLine();
+                        System.out.print("Enter new prerequisites (comma-separated): ");
+                        String[] prerequisites = scanner.nextLine().split(",");
+                        System.out.print("Enter semester: ");
+                        int semester = scanner.nextInt();
+                        System.out.print("Enter capacity: ");
+                        int capacity = scanner.nextInt();
+                        Course addon = new Course(courseC, courseTitle, (Professor) users.get(4),credits,prerequisites,semester,schedule,capacity );
+
+
+                        admin.addCourse(addon);
+                        break;
+                    case 2:
+                        System.out.print("Enter course code: ");
+                        String courseCode = scanner.nextLine();
+                        Course coursedelete = findCourseByCode(courseCode);
+                        admin.deleteCourse(coursedelete);
+                        break;
+                    case 3:
+                        // Example: Update student record
+                        admin.updateStudentRecord((Student) users.get(0), "semester", 3);
+                        break;
+                    case 4:
+                        admin.assignProfessorToCourse((Professor) users.get(4), courses.get(0));
+                        break;
+                    case 5:
+                        int page = 1;
+                        int pages = admin.viewComplaints(Complaint.Status.PENDING, page);
+                        while (page < pages) {
+                            System.out.print("Press Enter for the next page, or q to stop: ");
+                            if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                                break;
+                            }
+                            admin.viewComplaints(Complaint.Status.PENDING, ++page);
+                        }
+                        break;
+                    case 6:
+                        System.out.print("Enter complaint ID: ");
+                        Complaint complaint = complaints.get(scanner.nextLong());
+                        scanner.nextLine(); // consume newline
+                        if (complaint == null) {
+                            System.out.println("Complaint not found.");
+                            break;
+                        }
+                        System.out.print("Enter new status (PENDING, IN_PROGRESS, RESOLVED): ");
+                        Complaint.Status status = Complaint.Status.fromName(scanner.nextLine());
+                        while (status == null) {
+                            System.out.print("Unknown status. Enter PENDING, IN_PROGRESS or RESOLVED: ");
+                            status = Complaint.Status.fromName(scanner.nextLine());
+                        }
+                        admin.updateComplaintStatus(complaint, status);
+                        saveData();
+                        break;
+                    case 7:
+                        System.out.print("Enter course code: ");
+                        Course target = findCourseByCode(scanner.nextLine());
+                        if (target == null) {
+                            System.out.println("Course not found.");
+                            break;
+                        }
+                        List<Student> eligible = Application.prerequisites.eligibleStudents(target, users);
+                        System.out.println(eligible.size() + " students eligible for " + target.getCourseCode() + ":");
+                        for (Student student : eligible) {
+                            System.out.println(student.getStudentID() + " (semester " + student.getSemester() + ")");
+                        }
+                        break;
+                    case 8:
+                        List<String> conflicts = findScheduleConflicts();
+                        System.out.println(conflicts.size() + " conflicting enrollments:");
+                        for (String conflict : conflicts) {
+                            System.out.println(conflict);
+                        }
+                        break;
+                    case 9:
+                        System.out.print("Enter course code: ");
+                        Course resized = findCourseByCode(scanner.nextLine());
+                        if (resized == null) {
+                            System.out.println("Course not found.");
+                            break;
+                        }
+                        System.out.print("Enter new capacity: ");
+                        int newCapacity = scanner.nextInt();
+                        scanner.nextLine(); // consume newline
+                        resized.setMaxCapacity(newCapacity);
+                        saveData();
+                        System.out.println("Capacity of " + resized + " is now " + newCapacity + " ("
+                                + resized.getEnrollment().getSeatsTaken() + " seats taken, "
+                                + resized.getEnrollment().getWaitlist().size() + " waitlisted).");
+                        break;
+                    case 10:
+                        Complaint next = admin.takeNextComplaint();
+                        if (next == null) {
+                            break;
+                        }
+                        System.out.print("Mark it resolved now? (y/n): ");
+                        if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                            admin.updateComplaintStatus(next, Complaint.Status.RESOLVED);
+                        }
+                        saveData();
+                        break;
+                    case 11:
+                        runBatch(scanner);
+                        break;
+                    case 12:
+                        saveData();
+                        return; // Exit the loop and return to the main menu
+                    default:
+                        System.out.println("Invalid option.");
+                }
+            }
         }
         System.out.println("Invalid login credentials.");
 
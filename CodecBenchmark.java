@@ -0,0 +1,100 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+// Compares save/load time and file size of Java serialization against PortalCodec.
+// Usage: java CodecBenchmark [students] [courses] [rounds]
+class CodecBenchmark {
+    private static final Grade[] GRADES = Grade.values();
+
+    public static void main(String[] args) throws Exception {
+        int studentCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int courseCount = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        ArrayList<User> users = new ArrayList<>();
+        ArrayList<Course> courses = new ArrayList<>();
+        ArrayList<Complaint> complaints = new ArrayList<>();
+        buildDataset(users, courses, complaints, studentCount, courseCount);
+
+        File serFile = File.createTempFile("portal", ".ser");
+        File binFile = File.createTempFile("portal", ".bin");
+        serFile.deleteOnExit();
+        binFile.deleteOnExit();
+
+        long serSave = Long.MAX_VALUE, serLoad = Long.MAX_VALUE, binSave = Long.MAX_VALUE, binLoad = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(serFile))) {
+                oos.writeObject(users);
+                oos.writeObject(courses);
+                oos.writeObject(complaints);
+            }
+            serSave = Math.min(serSave, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(serFile))) {
+                ois.readObject();
+                ois.readObject();
+                ois.readObject();
+            }
+            serLoad = Math.min(serLoad, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            PortalCodec.write(binFile, users, courses, complaints, 1);
+            binSave = Math.min(binSave, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            PortalCodec.read(binFile);
+            binLoad = Math.min(binLoad, System.nanoTime() - start);
+        }
+
+        System.out.println("Dataset: " + studentCount + " students, " + courseCount + " courses (best of " + rounds + ")");
+        System.out.printf("%-20s %12s %12s %14s%n", "format", "save ms", "load ms", "size bytes");
+        System.out.printf("%-20s %12.1f %12.1f %14d%n", "java serialization", serSave / 1e6, serLoad / 1e6, serFile.length());
+        System.out.printf("%-20s %12.1f %12.1f %14d%n", "portal codec", binSave / 1e6, binLoad / 1e6, binFile.length());
+    }
+
+    private static void buildDataset(ArrayList<User> users, ArrayList<Course> courses, ArrayList<Complaint> complaints,
+                                     int studentCount, int courseCount) throws IOException {
+        Random random = new Random(42);
+        ArrayList<Professor> professors = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, courseCount / 5); i++) {
+            Professor professor = new Professor("prof" + i + "@university.com", "pass" + i, "P" + i);
+            professors.add(professor);
+            users.add(professor);
+        }
+        for (int i = 0; i < courseCount; i++) {
+            String[] prerequisites = i == 0 ? new String[0] : new String[]{"C" + random.nextInt(i)};
+            courses.add(new Course("C" + i, "Course " + i, professors.get(i % professors.size()), 2 + random.nextInt(3),
+                    prerequisites, 1 + random.nextInt(8), "Mon-Wed 10:00-11:30", 500));
+        }
+        for (int i = 0; i < studentCount; i++) {
+            Student student = new Student("student" + i + "@university.com", "password" + i, "S" + i, 1 + random.nextInt(8));
+            users.add(student);
+            for (int c = 0; c < 5; c++) {
+                Course course = courses.get(random.nextInt(courseCount));
+                if (student.getRegisteredCourses().contains(course)) {
+                    continue;
+                }
+                course.getEnrollment().restore(student);
+                student.restoreRegistration(course);
+                student.restoreGrade(course, GRADES[random.nextInt(GRADES.length)]);
+                if (random.nextInt(10) == 0) {
+                    course.getFeedback().restoreRatings(1 + random.nextInt(5), 1);
+                }
+            }
+            if (random.nextInt(50) == 0) {
+                complaints.add(new Complaint(complaints.size() + 1, student.getStudentID(), 0, "Complaint from student " + i));
+            }
+        }
+        for (Course course : courses) {
+            course.getEnrollment().publishRoster();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Every complaint, indexed by ID and by status. Each status keeps its complaints in a
+// LinkedHashMap keyed by ID, in the order they entered that status, so a status change is a
+// remove and a put and paging through PENDING never touches resolved complaints.
+// Pending complaints also sit in a priority queue (highest priority, then oldest) for admins
+// working the backlog. Entries are not removed from the heap when a complaint changes; a stale
+// entry is recognised and dropped when it reaches the head, and the heap is rebuilt once stale
+// entries outnumber live ones.
+class ComplaintQueue {
+    private static final Comparator<Entry> MOST_URGENT = Comparator
+            .comparing((Entry entry) -> entry.priority).reversed()
+            .thenComparingLong(entry -> entry.complaint.getFiledAt())
+            .thenComparingLong(entry -> entry.complaint.getId());
+
+    // A heap entry is live while it is still the complaint's current entry in `queued`
+    private static class Entry {
+        final Complaint complaint;
+        final Complaint.Priority priority;
+
+        Entry(Complaint complaint) {
+            this.complaint = complaint;
+            this.priority = complaint.getPriority();
+        }
+    }
+
+    private final HashMap<Long, Complaint> byID = new HashMap<>();
+    private final EnumMap<Complaint.Status, LinkedHashMap<Long, Complaint>> byStatus = new EnumMap<>(Complaint.Status.class);
+    private final PriorityQueue<Entry> pending = new PriorityQueue<>(MOST_URGENT);
+    private final HashMap<Long, Entry> queued = new HashMap<>();
+    private long nextID = 1;
+
+    public ComplaintQueue() {
+        for (Complaint.Status status : Complaint.Status.values()) {
+            byStatus.put(status, new LinkedHashMap<>());
+        }
+    }
+
+    // Indexes complaints loaded from a data file; ones without an ID get the next free one
+    public ComplaintQueue(List<Complaint> complaints) {
+        this();
+        for (Complaint complaint : complaints) {
+            if (complaint.getId() > 0) {
+                nextID = Math.max(nextID, complaint.getId() + 1);
+            }
+        }
+        for (Complaint complaint : complaints) {
+            if (complaint.getId() <= 0) {
+                Complaint numbered = new Complaint(nextID++, complaint.getSubmitterID(), complaint.getFiledAt(),
+                        complaint.getInfo());
+                numbered.setStatus(complaint.getStatus());
+                numbered.setPriority(complaint.getPriority());
+                complaint = numbered;
+            }
+            if (complaint.getStatus() == null) {
+                complaint.setStatus(Complaint.Status.PENDING);
+            }
+            if (complaint.getPriority() == null) {
+                complaint.setPriority(Complaint.Priority.NORMAL);
+            }
+            index(complaint);
+        }
+    }
+
+    public synchronized Complaint file(String submitterID, String description, Complaint.Priority priority) {
+        long filedAt = System.currentTimeMillis();
+        Metrics.COMPLAINTS_FILED.increment();
+        Application.journal.append(Journal.FILE_COMPLAINT, Long.toString(nextID), submitterID,
+                Long.toString(filedAt), priority.name(), description);
+        return restore(nextID, submitterID, filedAt, priority, description);
+    }
+
+    // Journal replay: re-files a complaint under its recorded ID
+    synchronized Complaint restore(long id, String submitterID, long filedAt, Complaint.Priority priority,
+            String description) {
+        Complaint complaint = new Complaint(id, submitterID, filedAt, description);
+        complaint.setPriority(priority);
+        nextID = Math.max(nextID, id + 1);
+        index(complaint);
+        return complaint;
+    }
+
+    // Complaints journaled before IDs existed are numbered in filing order
+    synchronized void restoreLegacy(String description) {
+        restore(nextID, null, 0, Complaint.Priority.NORMAL, description);
+    }
+
+    private void index(Complaint complaint) {
+        byID.put(complaint.getId(), complaint);
+        byStatus.get(complaint.getStatus()).put(complaint.getId(), complaint);
+        if (complaint.getStatus() == Complaint.Status.PENDING) {
+            enqueue(complaint);
+        }
+    }
+
+    public synchronized Complaint get(long id) {
+        return byID.get(id);
+    }
+
+    public synchronized int size() {
+        return byID.size();
+    }
+
+    public synchronized int count(Complaint.Status status) {
+        return byStatus.get(status).size();
+    }
+
+    // Complaints in a status on one page (1-based), in the order they entered the status
+    public synchronized List<Complaint> page(Complaint.Status status, int page, int pageSize) {
+        LinkedHashMap<Long, Complaint> index = byStatus.get(status);
+        int from = Math.max(0, page - 1) * pageSize;
+        if (from >= index.size()) {
+            return Collections.emptyList();
+        }
+        List<Complaint> entries = new ArrayList<>(pageSize);
+        Iterator<Complaint> iterator = index.values().iterator();
+        for (int i = 0; i < from; i++) {
+            iterator.next();
+        }
+        while (iterator.hasNext() && entries.size() < pageSize) {
+            entries.add(iterator.next());
+        }
+        return entries;
+    }
+
+    // Every complaint in ID order, for writing a snapshot
+    public synchronized List<Complaint> all() {
+        List<Complaint> all = new ArrayList<>(byID.values());
+        all.sort(Comparator.comparingLong(Complaint::getId));
+        return all;
+    }
+
+    public synchronized void updateStatus(Complaint complaint, Complaint.Status status) {
+        Complaint.Status previous = complaint.getStatus();
+        if (previous == status) {
+            return;
+        }
+        byStatus.get(previous).remove(complaint.getId());
+        complaint.setStatus(status);
+        byStatus.get(status).put(complaint.getId(), complaint);
+        if (status == Complaint.Status.PENDING) {
+            enqueue(complaint);
+        } else {
+            unqueue(complaint);
+        }
+        Application.journal.append(Journal.UPDATE_COMPLAINT, Long.toString(complaint.getId()), status.name(),
+                complaint.getPriority().name());
+        if (!Application.journal.isReplaying()) { // replayed updates were counted when they happened
+            Metrics.COMPLAINT_UPDATES.increment();
+        }
+    }
+
+    public synchronized void updatePriority(Complaint complaint, Complaint.Priority priority) {
+        if (complaint.getPriority() == priority) {
+            return;
+        }
+        complaint.setPriority(priority);
+        if (complaint.getStatus() == Complaint.Status.PENDING) {
+            enqueue(complaint);
+        }
+        Application.journal.append(Journal.UPDATE_COMPLAINT, Long.toString(complaint.getId()),
+                complaint.getStatus().name(), priority.name());
+        if (!Application.journal.isReplaying()) {
+            Metrics.COMPLAINT_UPDATES.increment();
+        }
+    }
+
+    // The most urgent pending complaint, moved to IN_PROGRESS; null when nothing is pending
+    public synchronized Complaint takeNext() {
+        Entry entry;
+        while ((entry = pending.poll()) != null) {
+            if (queued.get(entry.complaint.getId()) == entry) {
+                queued.remove(entry.complaint.getId());
+                updateStatus(entry.complaint, Complaint.Status.IN_PROGRESS);
+                return entry.complaint;
+            }
+        }
+        return null;
+    }
+
+    // The complaint takeNext() would return, without taking it
+    public synchronized Complaint peekNext() {
+        Entry entry;
+        while ((entry = pending.peek()) != null && queued.get(entry.complaint.getId()) != entry) {
+            pending.poll();
+        }
+        return entry == null ? null : entry.complaint;
+    }
+
+    private void enqueue(Complaint complaint) {
+        Entry entry = new Entry(complaint);
+        queued.put(complaint.getId(), entry);
+        pending.add(entry);
+        compact();
+    }
+
+    private void unqueue(Complaint complaint) {
+        queued.remove(complaint.getId());
+        compact();
+    }
+
+    private void compact() {
+        if (pending.size() > 64 && pending.size() > 2 * queued.size()) {
+            pending.clear();
+            pending.addAll(queued.values());
+        }
+    }
+}
@@ -0,0 +1,298 @@
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Enrollment state of one course: a seat counter checked against maxCapacity with CAS,
+// an IntSet of the dense IDs of the students holding those seats, and a lock-free FIFO waitlist.
+// A waitlisted student stays in the waitlisted set while EnrollmentEngine.promote is
+// trying them, so the course counts as having a waitlist until they are placed or removed.
+// Readers that list the roster take getRoster(), an immutable sorted array of the IDs of the
+// students whose registration has committed. Writers publish it: each committed registration or
+// drop swaps in a copy with one ID more or less, so readers only read a volatile field. A seat
+// claimed by a registration that later fails never reaches it.
+class CourseEnrollment {
+    private final AtomicInteger seatsTaken = new AtomicInteger();
+    private final IntSet students = new IntSet();
+    private final Set<Student> studentsView = new StudentSet(students);
+    private final AtomicReference<Roster> roster = new AtomicReference<>(Roster.EMPTY);
+    private final ConcurrentLinkedDeque<Student> waitlist = new ConcurrentLinkedDeque<>();
+    private final Set<Student> waitlisted = ConcurrentHashMap.newKeySet();
+    private volatile Supplier<List<Student>> pendingRoster;
+    private volatile Supplier<List<Student>> pendingWaitlist;
+
+    // Claims a seat unless the course already has maxCapacity of them
+    public boolean tryReserveSeat(int maxCapacity) {
+        while (true) {
+            int taken = seatsTaken.get();
+            if (taken >= maxCapacity) {
+                return false;
+            }
+            if (seatsTaken.compareAndSet(taken, taken + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Loader hook for MappedStore: the seat count is known now, the students are decoded on first use
+    void defer(int seats, Supplier<List<Student>> roster, Supplier<List<Student>> waiting) {
+        seatsTaken.set(seats);
+        pendingWaitlist = waiting;
+        pendingRoster = roster;
+    }
+
+    private IntSet loaded() {
+        if (pendingRoster != null) {
+            synchronized (this) {
+                if (pendingRoster != null) {
+                    for (Student student : pendingRoster.get()) {
+                        students.add(student.getIndex());
+                    }
+                    if (pendingWaitlist != null) {
+                        for (Student student : pendingWaitlist.get()) {
+                            restoreWaitlisted(student);
+                        }
+                        pendingWaitlist = null;
+                    }
+                    publishRoster();
+                    pendingRoster = null;
+                }
+            }
+        }
+        return students;
+    }
+
+    // Student IDs shown as the students they stand for; iteration walks a copy of the IDs
+    private static final class StudentSet extends AbstractSet<Student> {
+        private final IntSet ids;
+
+        StudentSet(IntSet ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Student && ids.contains(((Student) o).getIndex());
+        }
+
+        @Override
+        public int size() {
+            return ids.size();
+        }
+
+        @Override
+        public Iterator<Student> iterator() {
+            return students(ids.toArray());
+        }
+    }
+
+    // Immutable roster over sorted student IDs; with and without return changed copies
+    private static final class Roster extends AbstractSet<Student> {
+        static final Roster EMPTY = new Roster(new int[0]);
+        private final int[] ids;
+
+        Roster(int[] ids) {
+            this.ids = ids;
+        }
+
+        Roster with(int id) {
+            int at = Arrays.binarySearch(ids, id);
+            if (at >= 0) {
+                return this;
+            }
+            at = -at - 1;
+            int[] longer = new int[ids.length + 1];
+            System.arraycopy(ids, 0, longer, 0, at);
+            longer[at] = id;
+            System.arraycopy(ids, at, longer, at + 1, ids.length - at);
+            return new Roster(longer);
+        }
+
+        Roster without(int id) {
+            int at = Arrays.binarySearch(ids, id);
+            if (at < 0) {
+                return this;
+            }
+            int[] shorter = new int[ids.length - 1];
+            System.arraycopy(ids, 0, shorter, 0, at);
+            System.arraycopy(ids, at + 1, shorter, at, ids.length - at - 1);
+            return new Roster(shorter);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Student && Arrays.binarySearch(ids, ((Student) o).getIndex()) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+
+        @Override
+        public Iterator<Student> iterator() {
+            return students(ids);
+        }
+    }
+
+    private static Iterator<Student> students(int[] ids) {
+        return new Iterator<Student>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < ids.length;
+            }
+
+            @Override
+            public Student next() {
+                if (next == ids.length) {
+                    throw new NoSuchElementException();
+                }
+                return Student.IDS.get(ids[next++]);
+            }
+        };
+    }
+
+    // Loader hook: takes a seat without the capacity check. Loaders publish the roster once they are done.
+    void restore(Student student) {
+        if (addStudent(student)) {
+            seatsTaken.incrementAndGet();
+        }
+    }
+
+    public void releaseSeat() {
+        seatsTaken.decrementAndGet();
+    }
+
+    public int getSeatsTaken() {
+        return seatsTaken.get();
+    }
+
+    // Roster claims, for EnrollmentEngine and EnrollmentShard only; the seat count is theirs to keep.
+    // They change the live set; the published roster changes with committed() and dropped().
+    boolean addStudent(Student student) {
+        return loaded().add(student.getIndex());
+    }
+
+    boolean removeStudent(Student student) {
+        return loaded().remove(student.getIndex());
+    }
+
+    // Publishes a registration once it has committed. Callers serialize a student's committed() and
+    // dropped() calls for one course, so they reach the roster in the order they happened.
+    void committed(Student student) {
+        int id = student.getIndex();
+        loaded();
+        Roster current;
+        do {
+            current = roster.get();
+        } while (!roster.compareAndSet(current, current.with(id)));
+    }
+
+    void dropped(Student student) {
+        int id = student.getIndex();
+        loaded();
+        Roster current;
+        do {
+            current = roster.get();
+        } while (!roster.compareAndSet(current, current.without(id)));
+    }
+
+    // Publishes the whole live set, for loaders once they have restored every seat
+    void publishRoster() {
+        int[] ids = students.toArray();
+        Arrays.sort(ids);
+        roster.set(new Roster(ids));
+    }
+
+    // Live read-only roster, for membership checks that must see the latest registration
+    public Set<Student> getStudentsView() {
+        loaded();
+        return studentsView;
+    }
+
+    // Immutable roster as of the last committed registration or drop; never blocks or copies
+    public Set<Student> getRoster() {
+        loaded();
+        return roster.get();
+    }
+
+    // Appends the student unless they are already waiting; lock-free
+    public boolean joinWaitlist(Student student) {
+        loaded();
+        if (!waitlisted.add(student)) {
+            return false;
+        }
+        waitlist.addLast(student);
+        return true;
+    }
+
+    public boolean leaveWaitlist(Student student) {
+        loaded();
+        if (!waitlisted.remove(student)) {
+            return false;
+        }
+        waitlist.remove(student);
+        return true;
+    }
+
+    public boolean hasWaitlist() {
+        loaded();
+        return !waitlisted.isEmpty();
+    }
+
+    public boolean isWaitlisted(Student student) {
+        loaded();
+        return waitlisted.contains(student);
+    }
+
+    // 1-based place in the queue, or 0 if the student is not waiting; walks the queue
+    public int waitlistPosition(Student student) {
+        loaded();
+        int position = 1;
+        for (Student waiting : waitlist) {
+            if (waiting == student) {
+                return position;
+            }
+            position++;
+        }
+        return 0;
+    }
+
+    // Waiting students in queue order
+    public List<Student> getWaitlist() {
+        loaded();
+        return new ArrayList<>(waitlist);
+    }
+
+    // ---- for EnrollmentEngine.promote ----
+
+    Student pollWaitlist() {
+        loaded();
+        return waitlist.pollFirst();
+    }
+
+    void returnToWaitlistHead(Student student) {
+        waitlist.addFirst(student);
+    }
+
+    void removedFromWaitlist(Student student) {
+        waitlisted.remove(student);
+    }
+
+    // Loader hook: re-queues a student in file order
+    void restoreWaitlisted(Student student) {
+        if (waitlisted.add(student)) {
+            waitlist.addLast(student);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Feedback on one course, split by kind. Ratings (1-5) only update a count, a sum and a
+// histogram, so summary statistics are O(1) and no per-rating objects are kept. Comments go to
+// an append-only store of (studentID, text) pairs that is read one page at a time.
+class CourseFeedback {
+    static final int MIN_RATING = 1;
+    static final int MAX_RATING = 5;
+
+    private final long[] histogram = new long[MAX_RATING + 1]; // by rating, index 0 unused
+    private long ratingCount;
+    private long ratingSum;
+    private final ArrayList<String> commenters = new ArrayList<>(); // student IDs
+    private final ArrayList<String> comments = new ArrayList<>();
+    private volatile Runnable pendingComments;
+
+    public static boolean isValidRating(int rating) {
+        return rating >= MIN_RATING && rating <= MAX_RATING;
+    }
+
+    public synchronized void addRating(int rating) {
+        if (!isValidRating(rating)) {
+            throw new IllegalArgumentException("Rating must be between " + MIN_RATING + " and " + MAX_RATING);
+        }
+        histogram[rating]++;
+        ratingCount++;
+        ratingSum += rating;
+    }
+
+    public synchronized void addComment(String studentID, String text) {
+        loaded();
+        commenters.add(studentID);
+        comments.add(text);
+    }
+
+    public synchronized long getRatingCount() {
+        return ratingCount;
+    }
+
+    public synchronized double getAverageRating() {
+        return ratingCount == 0 ? 0.0 : (double) ratingSum / ratingCount;
+    }
+
+    // Number of ratings for each value, index 0 unused
+    public synchronized long[] getHistogram() {
+        return histogram.clone();
+    }
+
+    public synchronized int getCommentCount() {
+        loaded();
+        return comments.size();
+    }
+
+    // "studentID: text" entries of one page (1-based), oldest first
+    public synchronized List<String> getComments(int page, int pageSize) {
+        loaded();
+        List<String> entries = new ArrayList<>(pageSize);
+        int from = Math.max(0, page - 1) * pageSize;
+        for (int i = from; i < Math.min(from + pageSize, comments.size()); i++) {
+            entries.add(commenters.get(i) + ": " + comments.get(i));
+        }
+        return entries;
+    }
+
+    // Raw access for PortalCodec
+    synchronized String getCommenter(int index) {
+        loaded();
+        return commenters.get(index);
+    }
+
+    synchronized String getComment(int index) {
+        loaded();
+        return comments.get(index);
+    }
+
+    // Loader hooks: ratings outside 1-5 from older data files are clamped instead of rejected
+    synchronized void restoreRatings(int rating, long count) {
+        int clamped = Math.max(MIN_RATING, Math.min(MAX_RATING, rating));
+        histogram[clamped] += count;
+        ratingCount += count;
+        ratingSum += clamped * count;
+    }
+
+    synchronized void restoreComment(String studentID, String text) {
+        commenters.add(studentID);
+        comments.add(text);
+    }
+
+    // MappedStore: comments are decoded the first time they are read, by calling restoreComment
+    void deferComments(Runnable loader) {
+        pendingComments = loader;
+    }
+
+    private void loaded() {
+        Runnable loader = pendingComments;
+        if (loader != null) {
+            pendingComments = null;
+            loader.run();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Deterministic institution-scale data for load tests, benchmarks and capacity planning: the same
+// sizes and seed always produce the same students, courses (grouped into departments and levels,
+// with prerequisite chains and weekly schedules), enrollments, grades, feedback and complaints.
+// Records are created straight into Application's lists, without staging a second copy, and are
+// then written with a single checkpoint.
+// Every account shares one password hash, derived once, because hashing per user would take hours.
+// Usage: java DatasetGenerator [students] [courses] [seed] [dataDir]
+class DatasetGenerator {
+    static final String PASSWORD = "password";
+    static final String ADMIN_EMAIL = "admin@university.com";
+    static final int LEVELS = 4;
+    static final int COURSES_PER_LEVEL = 100; // per department, so codes stay three digits
+    static final int CREDIT_BUDGET = 14; // leaves room under EnrollmentEngine.MAX_CREDITS to register more
+
+    private static final String[] DEPARTMENTS = {"CS", "MA", "PH", "CH", "BI", "EC", "HI", "EN"};
+    private static final String[] DEPARTMENT_NAMES = {"Computer Science", "Mathematics", "Physics", "Chemistry",
+            "Biology", "Economics", "History", "English"};
+    private static final String[] MEETING_DAYS = {"Mon-Wed", "Tue-Thu", "Mon-Wed-Fri", "Fri", "Mon", "Thu"};
+    private static final Grade[] GRADES = Grade.values();
+    private static final int[] GRADE_WEIGHTS = {15, 15, 20, 15, 12, 8, 7, 8}; // in Grade order
+    private static final String[] COMMENTS = {"Great lectures", "Too much homework", "Clear explanations",
+            "Exams were hard but fair", "Would take again", "The pace was too fast", "Helpful office hours",
+            "Labs need better equipment"};
+    private static final String[] COMPLAINTS = {"Projector in the lecture hall is broken",
+            "Wi-Fi drops in the library", "Grade not updated after regrade request",
+            "Course materials missing from the portal", "Registration page timed out", "Lab room too crowded"};
+    private static final long BASE_TIME = 1_735_689_600_000L; // 2025-01-01, fixed so output is reproducible
+    private static final long YEAR_MILLIS = 365L * 24 * 60 * 60 * 1000;
+
+    public static void main(String[] args) {
+        int studentCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int courseCount = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        if (args.length > 3) {
+            System.setProperty("portal.dataDir", args[3]); // before Application is first touched
+        }
+        if (Application.DATA_FILE.exists()) {
+            System.out.println(Application.DATA_FILE + " already exists; remove it or choose another data directory.");
+            return;
+        }
+
+        long start = System.nanoTime();
+        Summary summary = generate(studentCount, courseCount, seed);
+        long generated = System.nanoTime();
+        Application.checkpoint();
+        long written = System.nanoTime();
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc(); // so the heap figure is the live data, comparable between versions
+        System.out.println("Generated " + summary);
+        System.out.printf("Generation %.1f s, checkpoint %.1f s, %s is %d bytes, heap in use %d MB%n",
+                (generated - start) / 1e9, (written - generated) / 1e9, Application.DATA_FILE,
+                Application.DATA_FILE.length(), (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+        System.out.println("Every account's password is \"" + PASSWORD + "\"; administrator " + ADMIN_EMAIL);
+    }
+
+    // Counts of what generate() created
+    static class Summary {
+        int students;
+        int professors;
+        int courses;
+        long enrollments;
+        long grades;
+        long ratings;
+        long comments;
+        int complaints;
+
+        @Override
+        public String toString() {
+            return students + " students, " + professors + " professors, " + courses + " courses, "
+                    + enrollments + " enrollments (" + grades + " graded), " + ratings + " ratings, "
+                    + comments + " comments, " + complaints + " complaints";
+        }
+    }
+
+    // Replaces the portal's in-memory state with a generated dataset. Nothing is journaled;
+    // call Application.checkpoint() to persist it.
+    static Summary generate(int studentCount, int courseCount, long seed) {
+        int departmentCount = Math.max(DEPARTMENTS.length,
+                (courseCount + LEVELS * COURSES_PER_LEVEL - 1) / (LEVELS * COURSES_PER_LEVEL));
+        if (departmentCount > DEPARTMENTS.length * 26) {
+            throw new IllegalArgumentException("At most " + DEPARTMENTS.length * 26 * LEVELS * COURSES_PER_LEVEL + " courses");
+        }
+        Application.releaseIds(); // the generated data replaces the portal's state
+        Random random = new Random(seed);
+        Summary summary = new Summary();
+        byte[] salt = new byte[16];
+        random.nextBytes(salt);
+        String password = PasswordHasher.hash(PASSWORD, salt);
+        List<User> users = new ArrayList<>(studentCount + courseCount / 4 + 2);
+        List<Course> courses = new ArrayList<>(courseCount);
+
+        List<Professor> professors = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, courseCount / 4); i++) {
+            Professor professor = new Professor("prof" + i + "@university.com", password, "P" + i);
+            professors.add(professor);
+            users.add(professor);
+        }
+        users.add(new Administrator(ADMIN_EMAIL, password));
+        summary.professors = professors.size();
+
+        // byLevel[department][level - 1] lists that department's courses at the level
+        List<List<List<Course>>> byLevel = new ArrayList<>();
+        for (int d = 0; d < departmentCount; d++) {
+            List<List<Course>> levels = new ArrayList<>();
+            for (int level = 0; level < LEVELS; level++) {
+                levels.add(new ArrayList<>());
+            }
+            byLevel.add(levels);
+        }
+        int perDepartment = (courseCount + departmentCount - 1) / departmentCount;
+        int perLevel = (perDepartment + LEVELS - 1) / LEVELS;
+        int averageDemand = Math.max(1, (int) ((long) studentCount * 4 / Math.max(1, courseCount)));
+        for (int i = 0; i < courseCount; i++) {
+            int department = i % departmentCount;
+            int index = i / departmentCount;
+            int level = 1 + index / perLevel;
+            List<Course> lower = level > 1 ? byLevel.get(department).get(level - 2) : List.of();
+            String[] prerequisites = prerequisites(lower, random);
+            String prefix = DEPARTMENTS[department % DEPARTMENTS.length]
+                    + (department < DEPARTMENTS.length ? "" : String.valueOf((char) ('A' + department / DEPARTMENTS.length)));
+            int number = level * 100 + index % perLevel;
+            String title = DEPARTMENT_NAMES[department % DEPARTMENTS.length]
+                    + (department < DEPARTMENTS.length ? "" : " " + (char) ('A' + department / DEPARTMENTS.length))
+                    + " " + number;
+            int capacity = Math.max(20, (int) (averageDemand * levelShare(level) * LEVELS * (1.5 + random.nextDouble())));
+            Course course = new Course(prefix + number, title, professors.get(i % professors.size()), 2 + random.nextInt(3),
+                    prerequisites, 2 * level - 1 + random.nextInt(2), schedule(random), capacity);
+            byLevel.get(department).get(level - 1).add(course);
+            courses.add(course);
+        }
+        summary.courses = courses.size();
+
+        List<Complaint> complaints = new ArrayList<>();
+        for (int i = 0; i < studentCount; i++) {
+            Student student = new Student("student" + i + "@university.com", password, "S" + i, 1 + random.nextInt(8));
+            users.add(student);
+            enroll(student, byLevel.get(i % departmentCount), byLevel.get(random.nextInt(departmentCount)), random, summary);
+            if (random.nextInt(50) == 0) {
+                complaints.add(complaint(complaints.size() + 1, student,
+                        BASE_TIME - YEAR_MILLIS + (long) i * YEAR_MILLIS / studentCount, random));
+            }
+        }
+        for (Course course : courses) {
+            course.getEnrollment().publishRoster();
+        }
+        summary.students = studentCount;
+        summary.complaints = complaints.size();
+
+        Application.users = users;
+        Application.courses = courses;
+        Application.complaints = new ComplaintQueue(complaints);
+        Application.repository.rebuild(users, courses);
+        Application.prerequisites.invalidate();
+        return summary;
+    }
+
+    // Fraction of enrollments landing on a level: students pick uniformly among the levels open to
+    // them, and a student in semester s may take levels 1 to (s + 1) / 2, so introductory courses
+    // see most of the demand
+    private static double levelShare(int level) {
+        double share = 0;
+        for (int open = level; open <= LEVELS; open++) {
+            share += 1.0 / open;
+        }
+        return share / LEVELS;
+    }
+
+    // Usually one course from the level below, sometimes two, sometimes none
+    private static String[] prerequisites(List<Course> lower, Random random) {
+        if (lower.isEmpty()) {
+            return new String[0];
+        }
+        int roll = random.nextInt(10);
+        int count = roll == 0 ? 0 : roll < 8 ? 1 : Math.min(2, lower.size());
+        Set<String> codes = new HashSet<>();
+        List<String> chosen = new ArrayList<>();
+        while (chosen.size() < count) {
+            String code = lower.get(random.nextInt(lower.size())).getCourseCode();
+            if (codes.add(code)) {
+                chosen.add(code);
+            }
+        }
+        return chosen.toArray(new String[0]);
+    }
+
+    private static String schedule(Random random) {
+        int start = 8 * 60 + 30 * random.nextInt(20); // 8:00 to 17:30
+        int end = start + (random.nextBoolean() ? 50 : 75);
+        return MEETING_DAYS[random.nextInt(MEETING_DAYS.length)] + " " + time(start) + "-" + time(end);
+    }
+
+    private static String time(int minutes) {
+        return minutes / 60 + ":" + String.format("%02d", minutes % 60);
+    }
+
+    // Courses from earlier semesters are graded (and may get feedback); the rest are this
+    // semester's registrations. Prerequisites, capacity, clashes and the credit budget are respected.
+    private static void enroll(Student student, List<List<Course>> major, List<List<Course>> elective,
+                               Random random, Summary summary) {
+        Set<String> passed = new HashSet<>();
+        int credits = 0;
+        int maxLevel = Math.min(LEVELS, (student.getSemester() + 1) / 2);
+        for (int attempt = 0; attempt < 10 && credits < CREDIT_BUDGET; attempt++) {
+            List<Course> pool = (random.nextInt(10) < 7 ? major : elective).get(random.nextInt(maxLevel));
+            if (pool.isEmpty()) {
+                continue;
+            }
+            Course course = pool.get(random.nextInt(pool.size()));
+            if (credits + course.getCredits() > CREDIT_BUDGET
+                    || student.getRegisteredCourses().contains(course)
+                    || course.getEnrollment().getSeatsTaken() >= course.getMaxCapacity()
+                    || !passedAll(course.getPrerequisites(), passed)
+                    || student.clashesWith(course)) {
+                continue;
+            }
+            boolean past = course.getSemester() < student.getSemester();
+            course.getEnrollment().restore(student);
+            student.restoreRegistration(course);
+            credits += course.getCredits();
+            summary.enrollments++;
+            if (past) {
+                Grade grade = grade(random);
+                student.restoreGrade(course, grade);
+                summary.grades++;
+                if (grade != Grade.F) {
+                    passed.add(course.getCourseCode());
+                }
+                feedback(student, course, grade, random, summary);
+            }
+        }
+        student.scheduleChanged(); // the clash checks above built a timetable the loader would not have
+    }
+
+    private static boolean passedAll(String[] prerequisites, Set<String> passed) {
+        for (String code : prerequisites) {
+            if (!code.isBlank() && !passed.contains(code)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Grade grade(Random random) {
+        int roll = random.nextInt(100);
+        for (int i = 0; i < GRADES.length; i++) {
+            roll -= GRADE_WEIGHTS[i];
+            if (roll < 0) {
+                return GRADES[i];
+            }
+        }
+        return Grade.B;
+    }
+
+    // Three in ten graded students rate the course, roughly in line with their grade; one in twenty comments
+    private static void feedback(Student student, Course course, Grade grade, Random random, Summary summary) {
+        if (random.nextInt(10) < 3) {
+            int rating = 3 + (grade.getPoints() - 6) / 2 + random.nextInt(3) - 1;
+            course.getFeedback().restoreRatings(rating, 1); // clamps to 1-5
+            summary.ratings++;
+        }
+        if (random.nextInt(20) == 0) {
+            course.getFeedback().restoreComment(student.getStudentID(), COMMENTS[random.nextInt(COMMENTS.length)]);
+            summary.comments++;
+        }
+    }
+
+    // Older complaints are more likely to have been dealt with
+    private static Complaint complaint(long id, Student student, long filedAt, Random random) {
+        Complaint complaint = new Complaint(id, student.getStudentID(), filedAt, COMPLAINTS[random.nextInt(COMPLAINTS.length)]);
+        int roll = random.nextInt(100);
+        complaint.setPriority(roll < 30 ? Complaint.Priority.LOW : roll < 85 ? Complaint.Priority.NORMAL : Complaint.Priority.HIGH);
+        double age = (double) (BASE_TIME - filedAt) / YEAR_MILLIS;
+        double open = random.nextDouble();
+        complaint.setStatus(open > age + 0.2 ? Complaint.Status.PENDING
+                : open > age ? Complaint.Status.IN_PROGRESS : Complaint.Status.RESOLVED);
+        return complaint;
+    }
+}
@@ -0,0 +1,158 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Lock-free registration: the roster slot (a CAS on the course's IntSet), the seat and the student's
+// credits are each claimed with an atomic operation and released in reverse order if a later step
+// fails, so concurrent registrations can never oversell a course or push a student past the credit
+// limit. Only the last step, Student.commitRegistration, holds the student's own monitor, so
+// registrations for one course by different students never wait for each other.
+// While a course has a waitlist, freed seats go to the head of the queue (promote) rather than
+// to whoever registers next.
+// Student.commitRegistration and commitDrop journal each change at the point it takes effect.
+// Journal replay applies the REGISTER records with restore() instead of re-running the checks, and
+// does not promote: promotions and the waitlist departures they cause have their own records.
+class EnrollmentEngine {
+    static final int MAX_CREDITS = 20;
+
+    enum Result {
+        REGISTERED,
+        ALREADY_REGISTERED,
+        COURSE_FULL,
+        CREDIT_LIMIT,
+        PREREQUISITES_NOT_MET,
+        SCHEDULE_CONFLICT
+    }
+
+    // What happened to a waitlisted student when a seat opened up
+    static class WaitlistEvent {
+        final Student student;
+        final Course course;
+        final Result result; // REGISTERED when promoted, otherwise why they left the waitlist
+
+        WaitlistEvent(Student student, Course course, Result result) {
+            this.student = student;
+            this.course = course;
+            this.result = result;
+        }
+
+        boolean isPromotion() {
+            return result == Result.REGISTERED;
+        }
+
+        @Override
+        public String toString() {
+            return isPromotion()
+                    ? "A seat opened up in " + course + " and you have been registered from the waitlist."
+                    : "You were removed from the waitlist for " + course + " (" + result + ").";
+        }
+    }
+
+    private static final List<Consumer<WaitlistEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    public static void addWaitlistListener(Consumer<WaitlistEvent> listener) {
+        listeners.add(listener);
+    }
+
+    public static Result register(Student student, Course course) {
+        return register(student, course, false);
+    }
+
+    private static Result register(Student student, Course course, boolean fromWaitlist) {
+        if (!Application.prerequisites.isEligible(student, course)) {
+            return Result.PREREQUISITES_NOT_MET;
+        }
+        CourseEnrollment enrollment = course.getEnrollment();
+        if (!enrollment.addStudent(student)) {
+            return Result.ALREADY_REGISTERED;
+        }
+        if ((!fromWaitlist && enrollment.hasWaitlist()) || !enrollment.tryReserveSeat(course.getMaxCapacity())) {
+            enrollment.removeStudent(student);
+            return Result.COURSE_FULL;
+        }
+        if (!student.reserveCredits(course.getCredits(), MAX_CREDITS)) {
+            enrollment.releaseSeat();
+            enrollment.removeStudent(student);
+            return Result.CREDIT_LIMIT;
+        }
+        if (!student.commitRegistration(course)) {
+            student.releaseCredits(course.getCredits());
+            enrollment.releaseSeat();
+            enrollment.removeStudent(student);
+            return Result.SCHEDULE_CONFLICT;
+        }
+        return Result.REGISTERED;
+    }
+
+    // Returns false if the student does not hold a seat in the course. The student's record goes
+    // first, with the DROP record, and the seat last, so nobody takes the seat before the drop is journaled.
+    public static boolean drop(Student student, Course course) {
+        if (!student.commitDrop(course)) {
+            return false;
+        }
+        student.releaseCredits(course.getCredits());
+        CourseEnrollment enrollment = course.getEnrollment();
+        enrollment.removeStudent(student);
+        enrollment.releaseSeat();
+        return true;
+    }
+
+    // Journal replay of a REGISTER record. The registration succeeded when it was recorded, so it is
+    // applied without the capacity, waitlist, credit and clash checks; they could only disagree with
+    // what happened. A promoted student also leaves the waitlist here.
+    static void restore(Student student, Course course) {
+        CourseEnrollment enrollment = course.getEnrollment();
+        enrollment.leaveWaitlist(student);
+        if (!student.isRegisteredFor(course)) {
+            enrollment.restore(student);
+            student.restoreRegistration(course);
+            enrollment.committed(student);
+        }
+    }
+
+    // Sharded mode: a registration the shards have made, copied into the coordinator's state and
+    // journal so rosters, grading, transcripts, seat counts and n_data.bin include it. The shards
+    // have checked it already, so it is applied like a replayed record. Drops are mirrored with drop().
+    static void mirrorRegistration(Student student, Course course) {
+        synchronized (student) {
+            if (student.isRegisteredFor(course)) {
+                return;
+            }
+            restore(student, course);
+            Application.journal.append(Journal.REGISTER, student.getStudentID(), course.getCourseCode());
+        }
+    }
+
+    // Hands free seats to the head of the waitlist until the course is full or nobody is waiting.
+    // Runs after a drop, a capacity increase or a new waitlist entry; safe to run concurrently.
+    // A promotion is journaled as the student's REGISTER, a student turned away as LEAVE_WAITLIST;
+    // replay applies those records and never promotes by itself.
+    public static void promote(Course course) {
+        if (Application.journal.isReplaying()) {
+            return;
+        }
+        CourseEnrollment enrollment = course.getEnrollment();
+        while (enrollment.getSeatsTaken() < course.getMaxCapacity()) {
+            Student next = enrollment.pollWaitlist();
+            if (next == null) {
+                return;
+            }
+            Result result = register(next, course, true);
+            if (result == Result.COURSE_FULL) {
+                enrollment.returnToWaitlistHead(next); // a concurrent promotion took the seat
+                return;
+            }
+            enrollment.removedFromWaitlist(next);
+            if (result == Result.REGISTERED) {
+                Metrics.PROMOTIONS.increment();
+            } else {
+                Application.journal.append(Journal.LEAVE_WAITLIST, next.getStudentID(), course.getCourseCode());
+            }
+            WaitlistEvent event = new WaitlistEvent(next, course, result);
+            next.addNotification(event.toString());
+            for (Consumer<WaitlistEvent> listener : listeners) {
+                listener.accept(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+
+// One partition of the enrollment store, run as its own process with
+// "java -Dportal.shards=... Application --shard <index>". Of the courses and students the
+// ShardRing places on it, a shard owns:
+//  - per course: the seat counter and roster (seat / unseat)
+//  - per student: the credits they hold across every shard and the courses behind them, which is
+//    where the credit limit and schedule clashes are checked (hold / release)
+// Every change goes to the shard's own log, n_shard<index>.log, and is committed before the reply.
+// If the commit fails the change is undone and its reverse record is logged behind it, so the
+// caller's error reply is true whenever the two records reach the disk; a seat or credits being
+// given up are not released to others until the commit succeeds.
+// The catalog comes from the portal's n_data.bin, read-only. Shards do not check prerequisites:
+// their grades would be those of n_data.bin when they started, so grades given since would not
+// count. The coordinator checks them against its live grades before it asks for the hold. On first
+// start the shard seeds its log with the registrations in that snapshot; from then on its log is
+// the authority, and restarts clear the snapshot's registrations for what the shard owns and replay it.
+// Students signed up after the snapshot are created here on first use; courses added after it
+// need the shard restarted. The coordinator mirrors every outcome into its own state and journal,
+// so n_data.bin stays current for its rosters, grading and transcripts and for the catalog the
+// shards read.
+// Waitlists are not sharded: in sharded mode a full course is refused with COURSE_FULL and
+// the student is not queued.
+class EnrollmentShard {
+    static final byte SEAT = 1;
+    static final byte UNSEAT = 2;
+    static final byte HOLD = 3;
+    static final byte RELEASE = 4;
+
+    private final int index;
+    private final ShardRing ring;
+    private final Journal log;
+    private final HttpServer server;
+
+    EnrollmentShard(int index, ShardRing ring) throws IOException {
+        this.index = index;
+        this.ring = ring;
+        this.log = new Journal(new File(Application.DATA_DIR, "n_shard" + index + ".log"), this::apply, false);
+        String address = ring.address(index);
+        int port = Integer.parseInt(address.substring(address.lastIndexOf(':') + 1));
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.setExecutor(PortalServer.newExecutor());
+        route("/seat", this::seat);
+        route("/unseat", this::unseat);
+        route("/hold", this::hold);
+        route("/release", this::release);
+        route("/status", fields -> status());
+    }
+
+    static void run(int index) throws IOException {
+        ShardRing ring = ShardRing.fromProperty();
+        if (ring == null || index < 0 || index >= ring.size()) {
+            System.out.println("Set -Dportal.shards=host:port,... with an address for shard " + index);
+            return;
+        }
+        EnrollmentShard shard = new EnrollmentShard(index, ring);
+        shard.load();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shard.server.stop(1)));
+        shard.server.start();
+        System.out.println("Enrollment shard " + index + " of " + ring.size() + " listening on " + ring.address(index));
+    }
+
+    private void load() throws IOException {
+        PortalCodec.Snapshot snapshot = PortalCodec.read(Application.DATA_FILE);
+        Application.users = snapshot.users;
+        Application.courses = snapshot.courses;
+        Application.repository.rebuild(Application.users, Application.courses);
+        boolean seeded = new File(Application.DATA_DIR, "n_shard" + index + ".log").exists();
+        if (seeded) {
+            clearOwned();
+        }
+        log.replay(0);
+        for (Course course : Application.courses) {
+            course.getEnrollment().publishRoster();
+        }
+        if (!seeded) {
+            seed();
+        }
+        System.out.println("Shard " + index + ": " + log.size() + " log records");
+    }
+
+    // Forgets the snapshot's registrations for everything this shard owns; its log replaces them
+    private void clearOwned() {
+        for (Course course : Application.courses) {
+            if (ownsCourse(course.getCourseCode())) {
+                CourseEnrollment enrollment = course.getEnrollment();
+                for (Student student : new ArrayList<>(enrollment.getStudentsView())) {
+                    if (enrollment.removeStudent(student)) {
+                        enrollment.releaseSeat();
+                    }
+                }
+            }
+        }
+        for (User user : Application.users) {
+            if (user instanceof Student && ownsStudent(((Student) user).getStudentID())) {
+                Student student = (Student) user;
+                for (Course course : new ArrayList<>(student.getRegisteredCourses())) {
+                    student.removeRegisteredCourse(course);
+                    student.releaseCredits(course.getCredits());
+                }
+            }
+        }
+    }
+
+    // Writes the snapshot's registrations for what this shard owns as its first log records
+    private void seed() throws IOException {
+        for (Course course : Application.courses) {
+            if (ownsCourse(course.getCourseCode())) {
+                for (Student student : course.getEnrollment().getStudentsView()) {
+                    log.append(SEAT, student.getStudentID(), course.getCourseCode());
+                }
+            }
+        }
+        for (User user : Application.users) {
+            if (user instanceof Student && ownsStudent(((Student) user).getStudentID())) {
+                for (Course course : ((Student) user).getRegisteredCourses()) {
+                    log.append(HOLD, ((Student) user).getStudentID(), course.getCourseCode());
+                }
+            }
+        }
+        log.commit();
+    }
+
+    private boolean ownsCourse(String courseCode) {
+        return ring.shardOfCourse(courseCode) == index;
+    }
+
+    private boolean ownsStudent(String studentID) {
+        return ring.shardOfStudent(studentID) == index;
+    }
+
+    // ---- operations ----
+
+    // Claims a seat for the student unless the course is full; the coordinator checked prerequisites
+    private Object seat(Map<String, Object> fields) throws IOException {
+        Student student = student(fields);
+        Course course = ownedCourse(fields);
+        EnrollmentEngine.Result result;
+        CourseEnrollment enrollment = course.getEnrollment();
+        if (!enrollment.addStudent(student)) {
+            result = EnrollmentEngine.Result.ALREADY_REGISTERED;
+        } else if (!enrollment.tryReserveSeat(course.getMaxCapacity())) {
+            enrollment.removeStudent(student);
+            result = EnrollmentEngine.Result.COURSE_FULL;
+        } else {
+            log.append(SEAT, student.getStudentID(), course.getCourseCode());
+            commit(() -> {
+                enrollment.removeStudent(student);
+                enrollment.releaseSeat();
+                log.append(UNSEAT, student.getStudentID(), course.getCourseCode());
+            });
+            enrollment.committed(student);
+            result = EnrollmentEngine.Result.REGISTERED;
+        }
+        return Json.object("result", result.name(), "seatsTaken", enrollment.getSeatsTaken());
+    }
+
+    // The seat is released once the drop is on disk, so a failed commit can give it back
+    private Object unseat(Map<String, Object> fields) throws IOException {
+        Student student = student(fields);
+        Course course = ownedCourse(fields);
+        CourseEnrollment enrollment = course.getEnrollment();
+        boolean dropped = enrollment.removeStudent(student);
+        if (dropped) {
+            log.append(UNSEAT, student.getStudentID(), course.getCourseCode());
+            commit(() -> {
+                enrollment.addStudent(student);
+                log.append(SEAT, student.getStudentID(), course.getCourseCode());
+            });
+            enrollment.dropped(student);
+            enrollment.releaseSeat();
+        }
+        return Json.object("dropped", dropped);
+    }
+
+    // Adds the course's credits to the student's total unless that passes the credit limit or
+    // the course clashes with one they hold on any shard
+    private Object hold(Map<String, Object> fields) throws IOException {
+        Student student = ownedStudent(fields);
+        Course course = course(fields);
+        EnrollmentEngine.Result result;
+        synchronized (student) {
+            if (student.getRegisteredCourses().contains(course)) {
+                result = EnrollmentEngine.Result.ALREADY_REGISTERED;
+            } else if (!student.reserveCredits(course.getCredits(), EnrollmentEngine.MAX_CREDITS)) {
+                result = EnrollmentEngine.Result.CREDIT_LIMIT;
+            } else if (!student.addRegisteredCourseWithoutClash(course)) {
+                student.releaseCredits(course.getCredits());
+                result = EnrollmentEngine.Result.SCHEDULE_CONFLICT;
+            } else {
+                log.append(HOLD, student.getStudentID(), course.getCourseCode());
+                result = EnrollmentEngine.Result.REGISTERED;
+            }
+        }
+        if (result == EnrollmentEngine.Result.REGISTERED) {
+            commit(() -> {
+                synchronized (student) {
+                    releaseHold(student, course);
+                    log.append(RELEASE, student.getStudentID(), course.getCourseCode());
+                }
+            });
+        }
+        return Json.object("result", result.name(), "credits", student.getRegisteredCredits());
+    }
+
+    // The credits are released once the release is on disk, so a failed commit can give them back
+    private Object release(Map<String, Object> fields) throws IOException {
+        Student student = ownedStudent(fields);
+        Course course = course(fields);
+        boolean released;
+        synchronized (student) {
+            released = student.getRegisteredCourses().contains(course);
+            if (released) {
+                student.removeRegisteredCourse(course);
+                log.append(RELEASE, student.getStudentID(), course.getCourseCode());
+            }
+        }
+        if (released) {
+            commit(() -> {
+                synchronized (student) {
+                    student.addRegisteredCourse(course);
+                    log.append(HOLD, student.getStudentID(), course.getCourseCode());
+                }
+            });
+            student.releaseCredits(course.getCredits());
+        }
+        return Json.object("released", released, "credits", student.getRegisteredCredits());
+    }
+
+    // Commits the records appended so far. On failure, undo reverts the operation and appends the
+    // reverse record, which stays queued behind the first for the next commit, and the error goes
+    // to the caller.
+    private void commit(Runnable undo) throws IOException {
+        try {
+            log.commit();
+        } catch (IOException | RuntimeException e) {
+            undo.run();
+            throw e;
+        }
+    }
+
+    private static boolean releaseHold(Student student, Course course) {
+        synchronized (student) {
+            if (!student.getRegisteredCourses().contains(course)) {
+                return false;
+            }
+            student.removeRegisteredCourse(course);
+        }
+        student.releaseCredits(course.getCredits());
+        return true;
+    }
+
+    private Object status() {
+        int courses = 0;
+        int seats = 0;
+        for (Course course : Application.courses) {
+            if (ownsCourse(course.getCourseCode())) {
+                courses++;
+                seats += course.getEnrollment().getSeatsTaken();
+            }
+        }
+        int students = 0;
+        long credits = 0;
+        for (User user : Application.users) {
+            if (user instanceof Student && ownsStudent(((Student) user).getStudentID())) {
+                students++;
+                credits += ((Student) user).getRegisteredCredits();
+            }
+        }
+        return Json.object("shard", index, "shards", ring.size(), "courses", courses, "seatsTaken", seats,
+                "students", students, "creditsHeld", credits, "logRecords", log.size());
+    }
+
+    // Replays one record of this shard's log
+    private void apply(byte type, String[] f) throws IOException {
+        Student student = student(f[0]);
+        Course course = Application.findCourseByCode(f[1]);
+        if (course == null) {
+            throw new IOException("Shard log names unknown course " + f[1]);
+        }
+        switch (type) {
+            case SEAT:
+                course.getEnrollment().restore(student);
+                break;
+            case UNSEAT:
+                if (course.getEnrollment().removeStudent(student)) {
+                    course.getEnrollment().releaseSeat();
+                }
+                break;
+            case HOLD:
+                if (!student.getRegisteredCourses().contains(course)) {
+                    student.restoreRegistration(course);
+                }
+                break;
+            case RELEASE:
+                releaseHold(student, course);
+                break;
+            default:
+                throw new IOException("Unknown shard log record type " + type);
+        }
+    }
+
+    // ---- lookups ----
+
+    private Student student(Map<String, Object> fields) {
+        return student(field(fields, "studentID"));
+    }
+
+    // Students signed up on the coordinator after the snapshot start out with nothing registered
+    private static synchronized Student student(String studentID) {
+        Student student = Application.findStudentByID(studentID);
+        if (student == null) {
+            student = new Student(studentID + "@shard", "", studentID, 1);
+            Application.addUser(student);
+        }
+        return student;
+    }
+
+    private Student ownedStudent(Map<String, Object> fields) {
+        Student student = student(fields);
+        if (!ownsStudent(student.getStudentID())) {
+            throw new IllegalStateException("Student " + student.getStudentID() + " belongs to shard "
+                    + ring.shardOfStudent(student.getStudentID()));
+        }
+        return student;
+    }
+
+    private static Course course(Map<String, Object> fields) {
+        String code = field(fields, "courseCode");
+        Course course = Application.findCourseByCode(code);
+        if (course == null) {
+            throw new IllegalArgumentException("Course with code " + code + " not found");
+        }
+        return course;
+    }
+
+    private Course ownedCourse(Map<String, Object> fields) {
+        Course course = course(fields);
+        if (!ownsCourse(course.getCourseCode())) {
+            throw new IllegalStateException("Course " + course.getCourseCode() + " belongs to shard "
+                    + ring.shardOfCourse(course.getCourseCode()));
+        }
+        return course;
+    }
+
+    private static String field(Map<String, Object> fields, String name) {
+        Object value = fields.get(name);
+        if (value == null || value.toString().isBlank()) {
+            throw new IllegalArgumentException("Missing field: " + name);
+        }
+        return value.toString();
+    }
+
+    // ---- plumbing ----
+
+    private interface Operation {
+        Object handle(Map<String, Object> fields) throws IOException;
+    }
+
+    // JSON in, JSON out: 400 for bad input, 409 for a request routed to the wrong shard
+    private void route(String path, Operation operation) {
+        Metrics.Histogram latency = Metrics.histogram("shard" + path, "Shard " + path + " handling time");
+        server.createContext(path, exchange -> {
+            long start = Metrics.start();
+            int status = 200;
+            Object response;
+            try {
+                response = operation.handle(PortalServer.fields(exchange));
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                response = Json.object("error", e.getMessage());
+            } catch (IllegalStateException e) {
+                status = 409;
+                response = Json.object("error", e.getMessage());
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                status = 500;
+                response = Json.object("error", "Internal error");
+            }
+            send(exchange, status, response);
+            latency.recordSince(start);
+        });
+    }
+
+    private static void send(HttpExchange exchange, int status, Object response) throws IOException {
+        byte[] body = Json.write(response).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Races threads for the seats of small courses and checks that EnrollmentEngine never oversells:
+// after every round seatsTaken equals the roster size, which is at most the capacity, and the
+// roster, the students' registrations and their credits agree, as do the published roster and
+// transcripts readers see.
+//  - race: each round, N threads released together register N new students for a new course of
+//    capacity K; exactly min(N, K) must get a seat
+//  - churn: N threads register and drop students of one course of capacity K at random for a while
+// Runs in memory against a scratch data directory; nothing is written to the portal's data.
+// Usage: java EnrollmentStress [threads] [capacity] [rounds] [churnMillis]
+class EnrollmentStress {
+    private static final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        long churnMillis = args.length > 3 ? Long.parseLong(args[3]) : 3000;
+        System.setProperty("portal.dataDir", Files.createTempDirectory("portal-stress").toString()); // before Application is initialized
+
+        Professor professor = new Professor("stress@university.com", "", "PSTRESS");
+        for (int round = 0; round < rounds; round++) {
+            Course course = course("RACE" + round, professor, capacity);
+            List<Student> students = students("R" + round + "-", threads);
+            AtomicInteger registered = new AtomicInteger();
+            race(threads, thread -> {
+                if (students.get(thread).enroll(course) == EnrollmentEngine.Result.REGISTERED) {
+                    registered.incrementAndGet();
+                }
+            });
+            check("race round " + round + ": " + registered.get() + " of " + threads + " registered",
+                    registered.get() == Math.min(threads, capacity));
+            checkCourse("race round " + round, course, students);
+        }
+
+        Course course = course("CHURN", professor, capacity);
+        List<Student> students = students("C-", threads * 2);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger operations = new AtomicInteger();
+        Thread stopper = new Thread(() -> {
+            try {
+                Thread.sleep(churnMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            stop.set(true);
+        });
+        stopper.start();
+        race(threads, thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (!stop.get()) {
+                Student student = students.get(random.nextInt(students.size()));
+                if (random.nextBoolean()) {
+                    student.enroll(course);
+                } else {
+                    student.withdraw(course);
+                }
+                operations.incrementAndGet();
+                if (course.getEnrollment().getSeatsTaken() > capacity) {
+                    check("churn: seats taken within capacity while running", false);
+                }
+            }
+        });
+        stopper.join();
+        checkCourse("churn after " + operations.get() + " operations", course, students);
+
+        System.out.println(failures.isEmpty() ? "All enrollment stress checks passed."
+                : failures.size() + " checks failed: " + failures);
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    private interface Body {
+        void run(int thread) throws Exception;
+    }
+
+    // Starts one thread per index, releases them together and waits for all of them
+    private static void race(int threads, Body body) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> started = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    body.run(thread);
+                } catch (Exception e) {
+                    check("thread " + thread + " failed: " + e, false);
+                }
+            });
+            worker.start();
+            started.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : started) {
+            worker.join();
+        }
+    }
+
+    private static void checkCourse(String stage, Course course, List<Student> students) {
+        CourseEnrollment enrollment = course.getEnrollment();
+        Set<Student> roster = new HashSet<>(enrollment.getStudentsView());
+        check(stage + ": seatsTaken " + enrollment.getSeatsTaken() + " == roster " + roster.size()
+                        + " <= capacity " + course.getMaxCapacity(),
+                enrollment.getSeatsTaken() == roster.size() && roster.size() <= course.getMaxCapacity());
+        int mismatched = 0;
+        for (Student student : students) {
+            boolean registered = student.isRegisteredFor(course);
+            if (registered != roster.contains(student)
+                    || student.getRegisteredCredits() != (registered ? course.getCredits() : 0)) {
+                mismatched++;
+            }
+        }
+        check(stage + ": roster, registrations and credits agree (" + mismatched + " students differ)", mismatched == 0);
+        int stale = 0;
+        for (Student student : students) {
+            if (student.getTranscript().getCourses().contains(course) != roster.contains(student)) {
+                stale++;
+            }
+        }
+        check(stage + ": published roster matches (" + enrollment.getRoster().size() + " of " + roster.size() + ")",
+                enrollment.getRoster().equals(roster));
+        check(stage + ": published transcripts match (" + stale + " students differ)", stale == 0);
+    }
+
+    private static Course course(String code, Professor professor, int capacity) {
+        Course course = new Course(code, "Stress " + code, professor, 3, new String[0], 1, "Mon 9:00-9:50", capacity);
+        Application.addToCatalog(course);
+        return course;
+    }
+
+    private static List<Student> students(String prefix, int count) {
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Student student = new Student(prefix + i + "@stress.test", "", prefix + i, 1);
+            Application.addUser(student);
+            students.add(student);
+        }
+        return students;
+    }
+
+    private static synchronized void check(String name, boolean passed) {
+        if (!passed) {
+            System.out.println("FAIL " + name);
+            failures.add(name);
+        }
+    }
+}
@@ -0,0 +1,434 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Materialized views over the event stream: the catalog, each course's roster, each student's
+// transcript and each complaint's status, keyed by the IDs the events carry. They are built from a
+// snapshot plus the events after it, and replay in parallel: the state and the events are split by
+// PortalEvent.partition, so every course's events apply in order on one thread and every student's
+// on one thread, and the partitions are merged afterwards.
+class EventViews {
+    static final int MAGIC = 0x50565731; // "PVW1"
+
+    static class CourseView {
+        String title;
+        String professorID;
+        int credits;
+        String prerequisites;
+        int semester;
+        String schedule;
+        int maxCapacity;
+    }
+
+    final Map<String, CourseView> catalog = new HashMap<>();
+    final Map<String, Set<String>> enrollments = new HashMap<>(); // course code -> student IDs
+    final Map<String, Map<String, String>> transcripts = new HashMap<>(); // student ID -> course code -> grade
+    final Map<Long, String> complaints = new TreeMap<>(); // complaint ID -> status
+    long nextComplaint = 1;
+    long epoch; // the first journal segment these views do not include
+    long lastTime; // time of the newest event applied
+
+    // Views of the state a snapshot file holds
+    static EventViews of(PortalCodec.Snapshot snapshot) {
+        EventViews views = new EventViews();
+        views.epoch = snapshot.epoch;
+        for (User user : snapshot.users) {
+            if (user instanceof Student) {
+                Student student = (Student) user;
+                Map<String, String> transcript = new HashMap<>();
+                student.forEachGrade((course, grade) -> transcript.put(course.getCourseCode(), grade.toString()));
+                views.transcripts.put(student.getStudentID(), transcript);
+            }
+        }
+        for (Course course : snapshot.courses) {
+            CourseView view = new CourseView();
+            view.title = course.getTitle();
+            view.professorID = course.getProfessor() == null ? "" : course.getProfessor().getProfessorID();
+            view.credits = course.getCredits();
+            view.prerequisites = Journal.joinList(course.getPrerequisites());
+            view.semester = course.getSemester();
+            view.schedule = course.getSchedule();
+            view.maxCapacity = course.getMaxCapacity();
+            views.catalog.put(course.getCourseCode(), view);
+            Set<String> roster = new HashSet<>();
+            for (Student student : course.getEnrollment().getStudentsView()) {
+                roster.add(student.getStudentID());
+            }
+            views.enrollments.put(course.getCourseCode(), roster);
+        }
+        for (Complaint complaint : snapshot.complaints) {
+            views.complaints.put(complaint.getId(), complaint.getStatus().name());
+            views.nextComplaint = Math.max(views.nextComplaint, complaint.getId() + 1);
+        }
+        return views;
+    }
+
+    public void apply(PortalEvent event) {
+        lastTime = Math.max(lastTime, event.time);
+        switch (event.type) {
+            case STUDENT_ADDED:
+                transcripts.putIfAbsent(event.get("studentID"), new HashMap<>());
+                break;
+            case COURSE_ADDED: {
+                CourseView view = new CourseView();
+                view.title = event.get("title");
+                view.professorID = event.get("professorID");
+                view.credits = event.getInt("credits");
+                view.prerequisites = event.get("prerequisites");
+                view.semester = event.getInt("semester");
+                view.schedule = event.get("schedule");
+                view.maxCapacity = event.getInt("maxCapacity");
+                catalog.put(event.get("courseCode"), view);
+                enrollments.putIfAbsent(event.get("courseCode"), new HashSet<>());
+                break;
+            }
+            case COURSE_DELETED:
+                catalog.remove(event.get("courseCode"));
+                enrollments.remove(event.get("courseCode"));
+                break;
+            case COURSE_UPDATED: {
+                CourseView view = catalog.get(event.get("courseCode"));
+                if (view != null) {
+                    view.credits = event.getInt("credits");
+                    view.prerequisites = event.get("prerequisites");
+                    view.schedule = event.get("schedule");
+                }
+                break;
+            }
+            case PROFESSOR_ASSIGNED: {
+                CourseView view = catalog.get(event.get("courseCode"));
+                if (view != null) {
+                    view.professorID = event.get("professorID");
+                }
+                break;
+            }
+            case CAPACITY_SET: {
+                CourseView view = catalog.get(event.get("courseCode"));
+                if (view != null) {
+                    view.maxCapacity = event.getInt("maxCapacity");
+                }
+                break;
+            }
+            case REGISTERED:
+                enrollments.computeIfAbsent(event.get("courseCode"), code -> new HashSet<>()).add(event.get("studentID"));
+                break;
+            case DROPPED: {
+                Set<String> roster = enrollments.get(event.get("courseCode"));
+                if (roster != null) {
+                    roster.remove(event.get("studentID"));
+                }
+                break;
+            }
+            case GRADED:
+                transcripts.computeIfAbsent(event.get("studentID"), id -> new HashMap<>())
+                        .put(event.get("courseCode"), event.get("grade"));
+                break;
+            case LEGACY_COMPLAINT:
+                complaints.put(nextComplaint++, Complaint.Status.PENDING.name());
+                break;
+            case LEGACY_COMPLAINT_STATUS: // the old record holds the list index, IDs were assigned from 1 in order
+                complaints.put(Long.parseLong(event.get("index")) + 1, Complaint.Status.parse(event.get("status")).name());
+                break;
+            case COMPLAINT_FILED: {
+                long id = Long.parseLong(event.get("complaintID"));
+                complaints.put(id, Complaint.Status.PENDING.name());
+                nextComplaint = Math.max(nextComplaint, id + 1);
+                break;
+            }
+            case COMPLAINT_UPDATED:
+                complaints.put(Long.parseLong(event.get("complaintID")), event.get("status"));
+                break;
+            default:
+                break; // professors, semesters, feedback and waitlists have no view
+        }
+    }
+
+    // Applies the events in order and returns the result: on this thread when threads is 1,
+    // otherwise on one partition per thread, leaving this object as it was
+    public EventViews replay(List<PortalEvent> events, int threads) throws InterruptedException {
+        if (threads <= 1) {
+            for (PortalEvent event : events) {
+                apply(event);
+            }
+            return this;
+        }
+        EventViews[] partitions = split(threads);
+        List<List<PortalEvent>> queues = new ArrayList<>(threads);
+        for (int p = 0; p < threads; p++) {
+            queues.add(new ArrayList<>(events.size() / threads + 16));
+        }
+        for (PortalEvent event : events) {
+            queues.get(event.partition(threads)).add(event);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> running = new ArrayList<>(threads);
+            for (int p = 0; p < threads; p++) {
+                EventViews partition = partitions[p];
+                List<PortalEvent> queue = queues.get(p);
+                running.add(pool.submit(() -> {
+                    for (PortalEvent event : queue) {
+                        partition.apply(event);
+                    }
+                }));
+            }
+            for (Future<?> partition : running) {
+                partition.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replay failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        EventViews merged = new EventViews();
+        merged.epoch = epoch;
+        merged.lastTime = lastTime;
+        for (EventViews partition : partitions) {
+            merged.catalog.putAll(partition.catalog);
+            merged.enrollments.putAll(partition.enrollments);
+            merged.transcripts.putAll(partition.transcripts);
+            merged.complaints.putAll(partition.complaints);
+            merged.nextComplaint = Math.max(merged.nextComplaint, partition.nextComplaint);
+            merged.lastTime = Math.max(merged.lastTime, partition.lastTime);
+        }
+        return merged;
+    }
+
+    // Copies each course, student and the complaints to the partition their events replay on
+    private EventViews[] split(int partitions) {
+        EventViews[] parts = new EventViews[partitions];
+        for (int p = 0; p < partitions; p++) {
+            parts[p] = new EventViews();
+        }
+        for (Map.Entry<String, CourseView> course : catalog.entrySet()) {
+            parts[PortalEvent.partition(PortalEvent.Key.COURSE, course.getKey(), partitions)].catalog
+                    .put(course.getKey(), copy(course.getValue()));
+        }
+        for (Map.Entry<String, Set<String>> roster : enrollments.entrySet()) {
+            parts[PortalEvent.partition(PortalEvent.Key.COURSE, roster.getKey(), partitions)].enrollments
+                    .put(roster.getKey(), new HashSet<>(roster.getValue()));
+        }
+        for (Map.Entry<String, Map<String, String>> transcript : transcripts.entrySet()) {
+            parts[PortalEvent.partition(PortalEvent.Key.STUDENT, transcript.getKey(), partitions)].transcripts
+                    .put(transcript.getKey(), new HashMap<>(transcript.getValue()));
+        }
+        EventViews complaintPartition = parts[PortalEvent.partition(PortalEvent.Key.COMPLAINT, "", partitions)];
+        complaintPartition.complaints.putAll(complaints);
+        complaintPartition.nextComplaint = nextComplaint;
+        return parts;
+    }
+
+    private static CourseView copy(CourseView view) {
+        CourseView copy = new CourseView();
+        copy.title = view.title;
+        copy.professorID = view.professorID;
+        copy.credits = view.credits;
+        copy.prerequisites = view.prerequisites;
+        copy.semester = view.semester;
+        copy.schedule = view.schedule;
+        copy.maxCapacity = view.maxCapacity;
+        return copy;
+    }
+
+    public int enrollmentCount() {
+        int count = 0;
+        for (Set<String> roster : enrollments.values()) {
+            count += roster.size();
+        }
+        return count;
+    }
+
+    public Map<String, Object> summary() {
+        int grades = 0;
+        for (Map<String, String> transcript : transcripts.values()) {
+            grades += transcript.size();
+        }
+        Map<String, Integer> byStatus = new TreeMap<>();
+        for (String status : complaints.values()) {
+            byStatus.merge(status, 1, Integer::sum);
+        }
+        return Json.object("epoch", epoch, "courses", catalog.size(), "enrollments", enrollmentCount(),
+                "students", transcripts.size(), "grades", grades, "complaints", byStatus);
+    }
+
+    // Where these views disagree with the portal's objects; empty when they match
+    public List<String> compareWith(Collection<User> users, Collection<Course> courses, Collection<Complaint> filed) {
+        List<String> differences = new ArrayList<>();
+        if (catalog.size() != courses.size()) {
+            differences.add("catalog has " + catalog.size() + " courses, the portal " + courses.size());
+        }
+        for (Course course : courses) {
+            String code = course.getCourseCode();
+            CourseView view = catalog.get(code);
+            String professorID = course.getProfessor() == null ? "" : course.getProfessor().getProfessorID();
+            if (view == null) {
+                differences.add(code + " is missing from the catalog");
+            } else if (!view.title.equals(course.getTitle()) || !view.professorID.equals(professorID)
+                    || view.credits != course.getCredits() || view.semester != course.getSemester()
+                    || !view.schedule.equals(course.getSchedule()) || view.maxCapacity != course.getMaxCapacity()
+                    || !view.prerequisites.equals(Journal.joinList(course.getPrerequisites()))) {
+                differences.add(code + " differs in the catalog");
+            }
+            Set<String> roster = new HashSet<>();
+            for (Student student : course.getEnrollment().getStudentsView()) {
+                roster.add(student.getStudentID());
+            }
+            if (!roster.equals(enrollments.getOrDefault(code, Set.of()))) {
+                differences.add(code + " roster: portal " + roster.size() + " students, view "
+                        + enrollments.getOrDefault(code, Set.of()).size());
+            }
+        }
+        for (User user : users) {
+            if (user instanceof Student) {
+                Student student = (Student) user;
+                Map<String, String> transcript = new HashMap<>();
+                student.forEachGrade((course, grade) -> transcript.put(course.getCourseCode(), grade.toString()));
+                if (!transcript.equals(transcripts.getOrDefault(student.getStudentID(), Map.of()))) {
+                    differences.add(student.getStudentID() + " transcript differs");
+                }
+            }
+        }
+        for (Complaint complaint : filed) {
+            if (!complaint.getStatus().name().equals(complaints.get(complaint.getId()))) {
+                differences.add("complaint " + complaint.getId() + " status differs");
+            }
+        }
+        if (filed.size() != complaints.size()) {
+            differences.add("views have " + complaints.size() + " complaints, the portal " + filed.size());
+        }
+        return differences;
+    }
+
+    // ---- view snapshots ----
+
+    public void write(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeLong(epoch);
+            out.writeLong(lastTime);
+            out.writeLong(nextComplaint);
+            out.writeInt(catalog.size());
+            for (Map.Entry<String, CourseView> course : catalog.entrySet()) {
+                CourseView view = course.getValue();
+                out.writeUTF(course.getKey());
+                out.writeUTF(view.title);
+                out.writeUTF(view.professorID);
+                out.writeInt(view.credits);
+                out.writeUTF(view.prerequisites);
+                out.writeInt(view.semester);
+                out.writeUTF(view.schedule);
+                out.writeInt(view.maxCapacity);
+            }
+            out.writeInt(enrollments.size());
+            for (Map.Entry<String, Set<String>> roster : enrollments.entrySet()) {
+                out.writeUTF(roster.getKey());
+                out.writeInt(roster.getValue().size());
+                for (String studentID : roster.getValue()) {
+                    out.writeUTF(studentID);
+                }
+            }
+            out.writeInt(transcripts.size());
+            for (Map.Entry<String, Map<String, String>> transcript : transcripts.entrySet()) {
+                out.writeUTF(transcript.getKey());
+                out.writeInt(transcript.getValue().size());
+                for (Map.Entry<String, String> grade : transcript.getValue().entrySet()) {
+                    out.writeUTF(grade.getKey());
+                    out.writeUTF(grade.getValue());
+                }
+            }
+            out.writeInt(complaints.size());
+            for (Map.Entry<Long, String> complaint : complaints.entrySet()) {
+                out.writeLong(complaint.getKey());
+                out.writeUTF(complaint.getValue());
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        PortalCodec.replace(temp, file);
+    }
+
+    static EventViews read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a view snapshot");
+            }
+            EventViews views = new EventViews();
+            views.epoch = in.readLong();
+            views.lastTime = in.readLong();
+            views.nextComplaint = in.readLong();
+            for (int i = in.readInt(); i > 0; i--) {
+                String code = in.readUTF();
+                CourseView view = new CourseView();
+                view.title = in.readUTF();
+                view.professorID = in.readUTF();
+                view.credits = in.readInt();
+                view.prerequisites = in.readUTF();
+                view.semester = in.readInt();
+                view.schedule = in.readUTF();
+                view.maxCapacity = in.readInt();
+                views.catalog.put(code, view);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String code = in.readUTF();
+                Set<String> roster = new HashSet<>();
+                for (int n = in.readInt(); n > 0; n--) {
+                    roster.add(in.readUTF());
+                }
+                views.enrollments.put(code, roster);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String studentID = in.readUTF();
+                Map<String, String> transcript = new HashMap<>();
+                for (int n = in.readInt(); n > 0; n--) {
+                    transcript.put(in.readUTF(), in.readUTF());
+                }
+                views.transcripts.put(studentID, transcript);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                views.complaints.put(in.readLong(), in.readUTF());
+            }
+            return views;
+        }
+    }
+
+    // The newest view snapshot with no event after `until`, or null if there is none
+    static EventViews latestSnapshot(long until) {
+        File[] files = PortalHistory.DIR.listFiles((dir, name) -> name.startsWith("views.") && name.endsWith(".bin"));
+        if (files == null) {
+            return null;
+        }
+        Arrays.sort(files, Comparator.comparingLong(PortalHistory::epochOf).reversed());
+        for (File file : files) {
+            try {
+                EventViews views = read(file);
+                if (views.lastTime <= until) {
+                    return views;
+                }
+            } catch (IOException e) {
+                System.out.println("Skipping unreadable view snapshot " + file.getName() + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,53 @@
+// Letter grades with their grade points. Stored as the enum (or its byte code on disk)
+// instead of the label string.
+enum Grade {
+    A("A", 10),
+    A_MINUS("A-", 9),
+    B("B", 8),
+    B_MINUS("B-", 7),
+    C("C", 6),
+    C_MINUS("C-", 5),
+    D("D", 4),
+    F("F", 2);
+
+    private static final Grade[] BY_CODE = values();
+
+    private final String label;
+    private final int points;
+
+    Grade(String label, int points) {
+        this.label = label;
+        this.points = points;
+    }
+
+    public int getPoints() {
+        return points;
+    }
+
+    public byte getCode() {
+        return (byte) ordinal();
+    }
+
+    public static Grade fromCode(byte code) {
+        return BY_CODE[code];
+    }
+
+    // Returns null for anything that is not a known grade label
+    public static Grade fromLabel(String label) {
+        if (label == null) {
+            return null;
+        }
+        String trimmed = label.trim().toUpperCase();
+        for (Grade grade : BY_CODE) {
+            if (grade.label.equals(trimmed)) {
+                return grade;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+// Streams a grade export (studentID,courseCode,grade per line) into the portal.
+// Rows are validated against enrollment as they are read and applied in batches, with one
+// journal commit per batch instead of a save per grade.
+class GradeImporter {
+    static final int BATCH_SIZE = 10_000;
+
+    static class Result {
+        int applied;
+        final List<String> rejected = new ArrayList<>();
+
+        @Override
+        public String toString() {
+            return applied + " grades imported, " + rejected.size() + " rows rejected";
+        }
+    }
+
+    public static Result importFile(Path file, Predicate<Course> allowedCourses) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importGrades(reader, allowedCourses);
+        }
+    }
+
+    public static Result importGrades(BufferedReader reader, Predicate<Course> allowedCourses) throws IOException {
+        Result result = new Result();
+        Student[] students = new Student[BATCH_SIZE];
+        Course[] courses = new Course[BATCH_SIZE];
+        Grade[] grades = new Grade[BATCH_SIZE];
+        int pending = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || (lineNumber == 1 && line.toLowerCase().startsWith("studentid"))) {
+                continue; // blank line or header
+            }
+            int first = line.indexOf(',');
+            int second = first < 0 ? -1 : line.indexOf(',', first + 1);
+            if (second < 0) {
+                result.rejected.add("line " + lineNumber + ": expected studentID,courseCode,grade");
+                continue;
+            }
+            String studentID = line.substring(0, first).trim();
+            String courseCode = line.substring(first + 1, second).trim();
+            Student student = Application.findStudentByID(studentID);
+            Course course = Application.findCourseByCode(courseCode);
+            Grade grade = Grade.fromLabel(line.substring(second + 1));
+            String problem = null;
+            if (student == null) {
+                problem = "unknown student " + studentID;
+            } else if (course == null) {
+                problem = "unknown course " + courseCode;
+            } else if (!allowedCourses.test(course)) {
+                problem = "not allowed to grade " + courseCode;
+            } else if (grade == null) {
+                problem = "invalid grade " + line.substring(second + 1).trim();
+            } else if (!Application.getEnrolledStudents(course).contains(student)) {
+                problem = studentID + " is not enrolled in " + courseCode;
+            }
+            if (problem != null) {
+                result.rejected.add("line " + lineNumber + ": " + problem);
+                continue;
+            }
+            students[pending] = student;
+            courses[pending] = course;
+            grades[pending] = grade;
+            if (++pending == BATCH_SIZE) {
+                apply(students, courses, grades, pending, result);
+                pending = 0;
+            }
+        }
+        apply(students, courses, grades, pending, result);
+        return result;
+    }
+
+    private static void apply(Student[] students, Course[] courses, Grade[] grades, int count, Result result) {
+        if (count == 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            students[i].setGrades(grades[i], courses[i]);
+        }
+        Application.saveData(); // one commit for the whole batch
+        result.applied += count;
+    }
+}
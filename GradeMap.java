@@ -0,0 +1,86 @@
+// Course ID -> grade code, as an open-addressing table of ints and bytes. A student's grades cost
+// five bytes a slot instead of a HashMap entry, its key and its table slot. Not thread-safe; Student
+// never changes a map it has published: it puts into a copy and swaps the copy in.
+final class GradeMap {
+    static final byte NONE = -1;
+
+    private int[] keys = new int[4]; // course ID + 1; 0 marks a free slot
+    private byte[] values = new byte[4];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public GradeMap copy() {
+        GradeMap copy = new GradeMap();
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    // The grade code for the course, or NONE
+    public byte get(int course) {
+        int slot = find(course);
+        return keys[slot] == 0 ? NONE : values[slot];
+    }
+
+    // Returns the previous grade code, or NONE
+    public byte put(int course, byte grade) {
+        int slot = find(course);
+        if (keys[slot] != 0) {
+            byte previous = values[slot];
+            values[slot] = grade;
+            return previous;
+        }
+        keys[slot] = course + 1;
+        values[slot] = grade;
+        if (++size * 4 > keys.length * 3) {
+            grow();
+        }
+        return NONE;
+    }
+
+    // Slot count, for walking the table with courseAt and gradeAt
+    public int capacity() {
+        return keys.length;
+    }
+
+    // Course ID in the slot, or -1 if the slot is free
+    public int courseAt(int slot) {
+        return keys[slot] - 1;
+    }
+
+    public byte gradeAt(int slot) {
+        return values[slot];
+    }
+
+    private int find(int course) {
+        int mask = keys.length - 1;
+        int slot = mix(course) & mask;
+        while (keys[slot] != 0 && keys[slot] != course + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        byte[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new byte[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = find(oldKeys[i] - 1);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
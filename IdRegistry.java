@@ -0,0 +1,42 @@
+import java.util.Arrays;
+
+// Dense int IDs for objects of one kind, handed out in registration order, so relationships
+// between students and courses can be stored as int arrays and looked up by array index.
+// IDs live only as long as the process; files store codes and student IDs, never these.
+// clear() starts a new generation when the portal's state is replaced, so the old objects can be
+// collected; an object caches its ID together with the generation it was issued in.
+final class IdRegistry<T> {
+    private volatile Object[] items = new Object[64];
+    private int size;
+    private volatile int generation = 1; // 0 in a cached ID means never registered
+
+    // Registers the item and returns its generation and ID packed into a long for the item to cache
+    synchronized long register(T item) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+        }
+        items[size] = item;
+        return (long) generation << 32 | size++;
+    }
+
+    // True if an ID cached by register() is from the current generation
+    boolean isCurrent(long cached) {
+        return (int) (cached >>> 32) == generation;
+    }
+
+    // The object with the given ID; callers only hold IDs of the current generation
+    @SuppressWarnings("unchecked")
+    T get(int id) {
+        return (T) items[id];
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized void clear() {
+        items = new Object[64];
+        size = 0;
+        generation++;
+    }
+}
@@ -0,0 +1,193 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// A set of non-negative ints as one open-addressing AtomicIntegerArray, used for course rosters of
+// dense student IDs: four to eight bytes a member instead of a ConcurrentHashMap node.
+// Lock-free: add claims a free slot with CAS and remove turns the member's slot into a tombstone
+// with CAS. Slots never become free again, so a value has at most one live slot per table.
+// When the table fills up with members and tombstones, one thread copies the members into a new
+// table: it freezes every old slot with an atomic swap, so nothing lands in the old table after it has been
+// copied, and operations that meet a frozen slot wait for the new table, which is rare and short.
+final class IntSet {
+    private static final int FREE = 0;
+    private static final int REMOVED = -1;
+    private static final int MOVED = -2;
+
+    private static final class Table {
+        final AtomicIntegerArray slots; // value + 1, or FREE, REMOVED or MOVED
+        final AtomicInteger used = new AtomicInteger(); // slots holding a member or a tombstone
+        volatile Table next; // set once every slot is MOVED and the members are in next
+
+        Table(int length) {
+            slots = new AtomicIntegerArray(length);
+        }
+    }
+
+    private volatile Table table;
+    private final AtomicInteger size = new AtomicInteger();
+
+    IntSet() {
+        table = new Table(8);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean contains(int value) {
+        Table t = table;
+        retry:
+        while (true) {
+            AtomicIntegerArray slots = t.slots;
+            int mask = slots.length() - 1;
+            int slot = GradeMap.mix(value) & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                int member = slots.get(slot);
+                if (member == value + 1) {
+                    return true;
+                }
+                if (member == FREE) {
+                    return false;
+                }
+                if (member == MOVED) {
+                    t = moved(t);
+                    continue retry;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+    }
+
+    public boolean add(int value) {
+        Table t = table;
+        retry:
+        while (true) {
+            AtomicIntegerArray slots = t.slots;
+            int mask = slots.length() - 1;
+            int slot = GradeMap.mix(value) & mask;
+            for (int probes = 0; probes <= mask; ) {
+                int member = slots.get(slot);
+                if (member == value + 1) {
+                    return false;
+                }
+                if (member == MOVED) {
+                    t = moved(t);
+                    continue retry;
+                }
+                if (member == FREE) {
+                    if (t.used.get() * 4 >= slots.length() * 3) {
+                        t = grow(t);
+                        continue retry;
+                    }
+                    if (slots.compareAndSet(slot, FREE, value + 1)) {
+                        t.used.incrementAndGet();
+                        size.incrementAndGet();
+                        return true;
+                    }
+                    continue; // someone took the slot; look at it again
+                }
+                slot = (slot + 1) & mask;
+                probes++;
+            }
+            t = grow(t);
+        }
+    }
+
+    public boolean remove(int value) {
+        Table t = table;
+        retry:
+        while (true) {
+            AtomicIntegerArray slots = t.slots;
+            int mask = slots.length() - 1;
+            int slot = GradeMap.mix(value) & mask;
+            for (int probes = 0; probes <= mask; ) {
+                int member = slots.get(slot);
+                if (member == value + 1) {
+                    if (slots.compareAndSet(slot, member, REMOVED)) {
+                        size.decrementAndGet();
+                        return true;
+                    }
+                    continue; // removed or frozen meanwhile; look at it again
+                }
+                if (member == FREE) {
+                    return false;
+                }
+                if (member == MOVED) {
+                    t = moved(t);
+                    continue retry;
+                }
+                slot = (slot + 1) & mask;
+                probes++;
+            }
+            return false;
+        }
+    }
+
+    // The members in no particular order; members added or removed meanwhile may or may not show up
+    public int[] toArray() {
+        Table t = table;
+        retry:
+        while (true) {
+            AtomicIntegerArray slots = t.slots;
+            int[] values = new int[slots.length()];
+            int n = 0;
+            for (int slot = 0; slot < slots.length(); slot++) {
+                int member = slots.get(slot);
+                if (member == MOVED) {
+                    t = moved(t);
+                    continue retry;
+                }
+                if (member > 0) {
+                    values[n++] = member - 1;
+                }
+            }
+            return Arrays.copyOf(values, n);
+        }
+    }
+
+    // The table that replaced t, once its copy is complete
+    private static Table moved(Table t) {
+        Table next;
+        while ((next = t.next) == null) {
+            Thread.onSpinWait();
+        }
+        return next;
+    }
+
+    // Copies the members of a full table into a new one sized for them, dropping the tombstones
+    private Table grow(Table t) {
+        synchronized (t) {
+            if (t.next != null) {
+                return t.next;
+            }
+            AtomicIntegerArray slots = t.slots;
+            int[] members = new int[slots.length()];
+            int n = 0;
+            for (int slot = 0; slot < slots.length(); slot++) {
+                int member = slots.getAndSet(slot, MOVED);
+                if (member > 0) {
+                    members[n++] = member;
+                }
+            }
+            int length = 8;
+            while (length * 3 < (n + 1) * 8) { // at most 3/8 full, so the next grow is far off
+                length *= 2;
+            }
+            Table next = new Table(length);
+            int mask = length - 1;
+            for (int i = 0; i < n; i++) {
+                int slot = GradeMap.mix(members[i] - 1) & mask;
+                while (next.slots.get(slot) != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                next.slots.set(slot, members[i]);
+            }
+            next.used.set(n);
+            table = next;
+            t.next = next;
+            return next;
+        }
+    }
+}
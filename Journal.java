@@ -0,0 +1,559 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Append-only log of portal mutations (write-ahead log).
+// Records are buffered in memory and written with a single fsync per commit (group commit).
+// Application.loadData() replays the log on top of the last snapshot, and Application.checkpoint()
+// folds it back into a fresh snapshot and starts a new epoch. While a checkpoint's snapshot is
+// being written, new records go to a second segment (n_data.log.next) that replaces the log once
+// the snapshot is on disk.
+class Journal {
+    static final int MAGIC = 0x504A4C32; // "PJL2": every record carries the time it was appended
+    static final int MAGIC_V1 = 0x504A4C31; // "PJL1": records without times, still replayed
+    static final int MAX_RECORD = 1 << 24; // 255 fields of up to 64 KB; a longer length is a torn write
+
+    static final byte ADD_STUDENT = 1;
+    static final byte ADD_PROFESSOR = 2;
+    static final byte ADD_COURSE = 3;
+    static final byte DELETE_COURSE = 4;
+    static final byte UPDATE_COURSE = 5;
+    static final byte ASSIGN_PROFESSOR = 6;
+    static final byte REGISTER = 7;
+    static final byte DROP = 8;
+    static final byte GRADE = 9;
+    static final byte SEMESTER = 10;
+    static final byte NUMERIC_FEEDBACK = 11;
+    static final byte TEXT_FEEDBACK = 12;
+    static final byte COMPLAINT = 13; // before complaint IDs; replay only
+    static final byte COMPLAINT_STATUS = 14; // before complaint IDs; replay only
+    static final byte JOIN_WAITLIST = 15;
+    static final byte LEAVE_WAITLIST = 16;
+    static final byte SET_CAPACITY = 17;
+    static final byte FILE_COMPLAINT = 18;
+    static final byte UPDATE_COMPLAINT = 19;
+
+    // Re-applies one record during replay
+    interface Applier {
+        void apply(byte type, String[] fields) throws IOException;
+    }
+
+    private final File file;
+    private final Applier applier;
+    private final File next; // records made while a snapshot is being written, see rotate()
+    private final Object commitLock = new Object();
+    private File torn; // segment a failed commit may have left a partial write in, see commit()
+    private long tornLength;
+    private File active;
+    private long epoch;
+    private boolean timed = true; // false while appending to a PJL1 segment left by an older version
+    private final boolean archived;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(buffer);
+    private int pendingRecords;
+    private int committedRecords;
+    private long committedBytes;
+    private boolean replaying;
+
+    // The portal's journal; segments retired by checkpoints go to PortalHistory when it is enabled
+    public Journal(File file) {
+        this(file, Journal::applyPortal, PortalHistory.ENABLED);
+    }
+
+    // A log with its own record types, such as an EnrollmentShard's
+    public Journal(File file, Applier applier, boolean archived) {
+        this.file = file;
+        this.applier = applier;
+        this.archived = archived;
+        this.next = new File(file.getPath() + ".next");
+        this.active = file;
+    }
+
+    // Number of records written since the last checkpoint
+    public synchronized int size() {
+        return committedRecords + pendingRecords;
+    }
+
+    // Bytes of committed records since the last checkpoint
+    public synchronized long bytes() {
+        return committedBytes;
+    }
+
+    // Bytes buffered and not yet committed
+    public synchronized int pendingBytes() {
+        return buffer.size();
+    }
+
+    // Epoch of the oldest segment on disk, or -1 if there is none. Without a snapshot only a log that
+    // starts at epoch 0 can be replayed: it holds every change since the portal was first set up.
+    public long oldestEpoch() throws IOException {
+        long oldest = -1;
+        for (File segment : new File[]{next, file}) {
+            if (segment.length() >= 12) {
+                try (DataInputStream in = new DataInputStream(new FileInputStream(segment))) {
+                    in.readInt();
+                    oldest = in.readLong();
+                }
+            }
+        }
+        return oldest;
+    }
+
+    // Epoch of the segment new records go to; a snapshot needs a higher one to supersede it
+    public synchronized long epoch() {
+        return epoch;
+    }
+
+    // True between rotate() and finishRotation(), or after a replay that found two segments
+    public synchronized boolean isRotated() {
+        return active == next;
+    }
+
+    // True while loadData() re-applies the log; side effects such as notifications are skipped
+    public synchronized boolean isReplaying() {
+        return replaying;
+    }
+
+    public synchronized boolean hasPending() {
+        return pendingRecords > 0;
+    }
+
+    // Buffers one record; nothing reaches the disk until commit()
+    public synchronized void append(byte type, String... fields) {
+        if (replaying) {
+            return; // replayed mutations are already in the log
+        }
+        try {
+            ByteArrayOutputStream record = new ByteArrayOutputStream(32);
+            DataOutputStream data = new DataOutputStream(record);
+            data.writeByte(type);
+            if (timed) {
+                data.writeLong(System.currentTimeMillis());
+            }
+            data.writeByte(fields.length);
+            for (String field : fields) {
+                data.writeUTF(field == null ? "" : field);
+            }
+            byte[] body = record.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeInt((int) crc.getValue());
+            pendingRecords++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // in-memory streams do not fail
+        }
+    }
+
+    // Runs a group of mutations that must reach the disk together: commit() cannot take the buffer
+    // while their records are being appended, so they land in the same write. Appends from other
+    // threads carry on; the writer waits. Callers hold Application.stateLock's write lock.
+    public void atomically(Runnable mutations) {
+        synchronized (commitLock) {
+            mutations.run();
+        }
+    }
+
+    // Writes every buffered record and forces them to disk with one fsync; returns the bytes written.
+    // The buffer is swapped out under the monitor and written outside it, so append() never waits
+    // for the disk; commitLock keeps commits, rotations and resets in order. If the write or the
+    // fsync fails, the segment is cut back to its length before the attempt and the records go back
+    // in front of the buffer, so the retry does not land behind a torn record that replay would stop at.
+    public int commit() throws IOException {
+        synchronized (commitLock) {
+            repairTornWrite();
+            byte[] records;
+            int count;
+            File target;
+            long segmentEpoch;
+            synchronized (this) {
+                if (pendingRecords == 0) {
+                    return 0;
+                }
+                records = buffer.toByteArray();
+                count = pendingRecords;
+                target = active;
+                segmentEpoch = epoch;
+                buffer.reset();
+                pendingRecords = 0;
+            }
+            try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                long length = channel.size();
+                try {
+                    if (length == 0) {
+                        writeFully(channel, header(segmentEpoch));
+                    }
+                    writeFully(channel, ByteBuffer.wrap(records));
+                    channel.force(false);
+                } catch (IOException e) {
+                    torn = target;
+                    tornLength = length;
+                    try {
+                        repairTornWrite();
+                    } catch (IOException repair) {
+                        e.addSuppressed(repair); // tried again before the next commit
+                    }
+                    throw e;
+                }
+            } catch (IOException e) {
+                synchronized (this) { // put the records back in front of newer ones for the next attempt
+                    byte[] newer = buffer.toByteArray();
+                    buffer.reset();
+                    buffer.write(records);
+                    buffer.write(newer);
+                    pendingRecords += count;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                committedRecords += count;
+                committedBytes += records.length;
+            }
+            return records.length;
+        }
+    }
+
+    // Cuts a segment back to its length before a failed commit; called under commitLock
+    private void repairTornWrite() throws IOException {
+        if (torn == null) {
+            return;
+        }
+        if (torn.exists()) {
+            try (FileChannel channel = FileChannel.open(torn.toPath(), StandardOpenOption.WRITE)) {
+                if (channel.size() > tornLength) {
+                    channel.truncate(tornLength);
+                    channel.force(true);
+                }
+            }
+        }
+        torn = null;
+    }
+
+    // Called under the write lock as a snapshot with the given epoch is captured: commits what is
+    // buffered to the current segment and sends later records to a new one, so the snapshot can be
+    // written without holding the lock. Until finishRotation() both segments are replayed on load.
+    public void rotate(long nextEpoch) throws IOException {
+        synchronized (commitLock) {
+            commit();
+            synchronized (this) {
+                writeHeader(next, nextEpoch);
+                active = next;
+                epoch = nextEpoch;
+                timed = true;
+                committedRecords = 0;
+                committedBytes = 0;
+            }
+        }
+    }
+
+    // The snapshot is on disk: the new segment becomes the log and the old one is dropped
+    public void finishRotation() throws IOException {
+        synchronized (commitLock) {
+            archive(file);
+            PortalCodec.replace(next, file);
+            synchronized (this) {
+                active = file;
+            }
+        }
+    }
+
+    // Starts an empty log for a new epoch; called once a snapshot covering every segment is on disk
+    public void reset(long epoch) throws IOException {
+        synchronized (commitLock) {
+            archive(file);
+            archive(next);
+            File temp = new File(file.getPath() + ".tmp");
+            writeHeader(temp, epoch);
+            PortalCodec.replace(temp, file);
+            next.delete();
+            synchronized (this) {
+                active = file;
+                this.epoch = epoch;
+                timed = true;
+                committedRecords = 0;
+                committedBytes = 0;
+                pendingRecords = 0;
+                buffer.reset();
+            }
+        }
+    }
+
+    // Re-applies the records written after the snapshot with the given epoch. A segment whose epoch
+    // is lower is already folded into the snapshot; if a snapshot was being written when the portal
+    // stopped, both segments are current and are replayed oldest first. Throws if a segment cannot
+    // be read or a record cannot be applied, such as one naming a student the snapshot lacks; the
+    // segments are then left as they are.
+    public void replay(long snapshotEpoch) throws IOException {
+        synchronized (commitLock) {
+            synchronized (this) {
+                committedRecords = 0;
+                committedBytes = 0;
+                long fileEpoch = replaySegment(file, snapshotEpoch);
+                long nextEpoch = replaySegment(next, Math.max(snapshotEpoch, fileEpoch));
+                try {
+                    if (nextEpoch >= 0) {
+                        active = next;
+                        epoch = nextEpoch; // the next checkpoint folds both segments
+                    } else if (fileEpoch >= 0) {
+                        next.delete();
+                        active = file;
+                        epoch = fileEpoch;
+                    } else {
+                        reset(snapshotEpoch);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    // Applies one segment if its epoch is at least minEpoch and returns that epoch, or -1 if the
+    // segment is missing, stale or has no complete header. A torn record at the tail is cut off.
+    private long replaySegment(File segment, long minEpoch) throws IOException {
+        if (!segment.exists()) {
+            return -1;
+        }
+        long segmentEpoch;
+        long validLength;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+            int magic = in.readInt();
+            if ((magic != MAGIC && magic != MAGIC_V1) || (segmentEpoch = in.readLong()) < minEpoch) {
+                return -1; // already folded into the snapshot
+            }
+            timed = magic == MAGIC;
+            replaying = true;
+            validLength = 12 + scan(in, timed, (type, time, fields, length) -> {
+                try {
+                    applier.apply(type, fields);
+                } catch (IOException | RuntimeException e) {
+                    throw new IOException("Cannot replay record " + (committedRecords + 1) + " of " + segment
+                            + ": " + e.getMessage(), e);
+                }
+                committedRecords++;
+                committedBytes += length;
+            });
+        } catch (EOFException e) {
+            return -1; // header never fully written
+        } finally {
+            replaying = false;
+        }
+        if (validLength < segment.length()) {
+            try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return segmentEpoch;
+    }
+
+    private interface RecordVisitor {
+        void visit(byte type, long time, String[] fields, int length) throws IOException;
+    }
+
+    // Visits each intact record in order and returns the bytes they take; stops at the end or at a
+    // torn write (a short or corrupt record at the tail)
+    private static long scan(DataInputStream in, boolean timed, RecordVisitor visitor) throws IOException {
+        long valid = 0;
+        while (true) {
+            byte[] body;
+            try {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_RECORD) {
+                    return valid;
+                }
+                body = new byte[length];
+                in.readFully(body);
+                int checksum = in.readInt();
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    return valid;
+                }
+            } catch (EOFException e) {
+                return valid;
+            }
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+            byte type = record.readByte();
+            long time = timed ? record.readLong() : 0;
+            String[] fields = new String[record.readUnsignedByte()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = record.readUTF();
+            }
+            visitor.visit(type, time, fields, 8 + body.length);
+            valid += 8 + body.length;
+        }
+    }
+
+    // Reads a portal journal segment, live or archived, as events; returns its epoch, or -1 if it is
+    // not a journal segment
+    static long read(File segment, Consumer<PortalEvent> events) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment), 1 << 16))) {
+            int magic = in.readInt();
+            if (magic != MAGIC && magic != MAGIC_V1) {
+                return -1;
+            }
+            long segmentEpoch = in.readLong();
+            scan(in, magic == MAGIC, (type, time, fields, length) ->
+                    events.accept(new PortalEvent(PortalEvent.Type.of(type), time, segmentEpoch, fields)));
+            return segmentEpoch;
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+
+    // Hands a segment that a snapshot has superseded to PortalHistory instead of deleting it
+    private void archive(File segment) throws IOException {
+        if (archived && segment.length() > 12) {
+            PortalHistory.archive(segment);
+        }
+    }
+
+    private static void writeHeader(File segment, long epoch) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header(epoch));
+            channel.force(true);
+        }
+    }
+
+    // A write to a nearly full disk can be short without failing; the next attempt reports the error
+    private static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    private static ByteBuffer header(long epoch) {
+        ByteBuffer header = ByteBuffer.allocate(12);
+        header.putInt(MAGIC).putLong(epoch).flip();
+        return header;
+    }
+
+    private static void applyPortal(byte type, String[] f) throws IOException {
+        switch (type) {
+            case ADD_STUDENT:
+                Application.addUser(new Student(f[0], f[1], f[2], Integer.parseInt(f[3])));
+                break;
+            case ADD_PROFESSOR:
+                Application.addUser(new Professor(f[0], f[1], f[2]));
+                break;
+            case ADD_COURSE:
+                Application.addToCatalog(new Course(f[0], f[1], professor(f[2]),
+                        Integer.parseInt(f[3]), splitList(f[4]), Integer.parseInt(f[5]), f[6], Integer.parseInt(f[7])));
+                break;
+            case DELETE_COURSE:
+                Application.removeFromCatalog(course(f[0]));
+                break;
+            case UPDATE_COURSE:
+                course(f[0]).updateDetails(Integer.parseInt(f[1]), splitList(f[2]), f[3]);
+                break;
+            case ASSIGN_PROFESSOR:
+                course(f[1]).setProfessor(professor(f[0]));
+                break;
+            case REGISTER:
+                EnrollmentEngine.restore(student(f[0]), course(f[1]));
+                break;
+            case DROP:
+                student(f[0]).withdraw(course(f[1]));
+                break;
+            case GRADE:
+                student(f[0]).setGrades(f[2], course(f[1]));
+                break;
+            case SEMESTER:
+                student(f[0]).setSemester(Integer.parseInt(f[1]));
+                break;
+            case NUMERIC_FEEDBACK:
+                course(f[0]).getFeedback().restoreRatings(Integer.parseInt(f[2]), 1);
+                break;
+            case TEXT_FEEDBACK:
+                course(f[0]).getFeedback().restoreComment(f[1], f[2]);
+                break;
+            case COMPLAINT:
+                Application.complaints.restoreLegacy(f[0]);
+                break;
+            case COMPLAINT_STATUS: // the old record holds the list index, IDs were assigned from 1 in order
+                Application.complaints.updateStatus(complaint(Long.parseLong(f[0]) + 1),
+                        Complaint.Status.parse(f[1]));
+                break;
+            case JOIN_WAITLIST:
+                student(f[0]).joinWaitlist(course(f[1]));
+                break;
+            case LEAVE_WAITLIST:
+                student(f[0]).leaveWaitlist(course(f[1]));
+                break;
+            case SET_CAPACITY:
+                course(f[0]).setMaxCapacity(Integer.parseInt(f[1]));
+                break;
+            case FILE_COMPLAINT:
+                Application.complaints.restore(Long.parseLong(f[0]), f[1], Long.parseLong(f[2]),
+                        Complaint.Priority.valueOf(f[3]), f[4]);
+                break;
+            case UPDATE_COMPLAINT:
+                Application.complaints.updatePriority(complaint(Long.parseLong(f[0])),
+                        Complaint.Priority.valueOf(f[2]));
+                Application.complaints.updateStatus(complaint(Long.parseLong(f[0])),
+                        Complaint.Status.valueOf(f[1]));
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    // Replay resolves the keys a record names; one the state lacks, such as a student missing from an
+    // older n_data.bin that was put back, stops the replay instead of failing later with a null
+    private static Student student(String id) throws IOException {
+        Student student = Application.findStudentByID(id);
+        if (student == null) {
+            throw new IOException("Journal names unknown student " + id);
+        }
+        return student;
+    }
+
+    private static Course course(String code) throws IOException {
+        Course course = Application.findCourseByCode(code);
+        if (course == null) {
+            throw new IOException("Journal names unknown course " + code);
+        }
+        return course;
+    }
+
+    private static Professor professor(String id) throws IOException {
+        Professor professor = Application.findProfessorByID(id);
+        if (professor == null) {
+            throw new IOException("Journal names unknown professor " + id);
+        }
+        return professor;
+    }
+
+    private static Complaint complaint(long id) throws IOException {
+        Complaint complaint = Application.complaints.get(id);
+        if (complaint == null) {
+            throw new IOException("Journal names unknown complaint " + id);
+        }
+        return complaint;
+    }
+
+    static String joinList(String[] values) {
+        return values == null ? "" : String.join(",", values);
+    }
+
+    static String[] splitList(String value) {
+        return value.isEmpty() ? new String[0] : value.split(",");
+    }
+}
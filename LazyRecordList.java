@@ -0,0 +1,90 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+// List over the records of a MappedStore. Elements are decoded on first get(); appended elements
+// live on the heap. The first removal or replacement copies the list into an ArrayList, which
+// decodes every record, so that path is reserved for rare catalog edits.
+class LazyRecordList<T> extends AbstractList<T> implements RandomAccess {
+    private final int recordCount;
+    private final IntFunction<T> loader;
+    private final ToIntFunction<Object> recordOf;
+    private final ArrayList<T> appended = new ArrayList<>();
+    private ArrayList<T> expanded;
+
+    public LazyRecordList(int recordCount, IntFunction<T> loader, ToIntFunction<Object> recordOf) {
+        this.recordCount = recordCount;
+        this.loader = loader;
+        this.recordOf = recordOf;
+    }
+
+    @Override
+    public T get(int index) {
+        if (expanded != null) {
+            return expanded.get(index);
+        }
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return index < recordCount ? loader.apply(index) : appended.get(index - recordCount);
+    }
+
+    @Override
+    public int size() {
+        return expanded != null ? expanded.size() : recordCount + appended.size();
+    }
+
+    @Override
+    public void add(int index, T element) {
+        modCount++;
+        if (expanded == null && index == size()) {
+            appended.add(element);
+        } else {
+            expand().add(index, element);
+        }
+    }
+
+    @Override
+    public T set(int index, T element) {
+        return expand().set(index, element);
+    }
+
+    @Override
+    public T remove(int index) {
+        modCount++;
+        return expand().remove(index);
+    }
+
+    // Answers without decoding: an unread record cannot be the object the caller holds
+    @Override
+    public int indexOf(Object value) {
+        if (expanded != null) {
+            return expanded.indexOf(value);
+        }
+        int record = recordOf.applyAsInt(value);
+        if (record >= 0 && record < recordCount) {
+            return record;
+        }
+        int appendedIndex = appended.indexOf(value);
+        return appendedIndex < 0 ? -1 : recordCount + appendedIndex;
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return indexOf(value) >= 0;
+    }
+
+    private ArrayList<T> expand() {
+        if (expanded == null) {
+            ArrayList<T> copy = new ArrayList<>(size());
+            for (int i = 0; i < recordCount; i++) {
+                copy.add(loader.apply(i));
+            }
+            copy.addAll(appended);
+            expanded = copy;
+        }
+        return expanded;
+    }
+}
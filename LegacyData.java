@@ -0,0 +1,213 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+// Reads n_data.ser as the original console portal wrote it: Java serialization of
+// ArrayList<User> users, ArrayList<Course> courses, ArrayList<Complaint> complaints and
+// HashMap<Course, ArrayList<Student>> enrolledCourses. Those classes had no serialVersionUID and
+// another field layout, so today's classes cannot read them. Each class descriptor in the stream is
+// swapped for a shadow class below with the same fields, checked name by name, and the shadow
+// objects are converted into today's users, courses and complaints.
+final class LegacyData {
+    final List<User> users = new ArrayList<>();
+    final List<Course> courses = new ArrayList<>();
+    final List<Complaint> complaints = new ArrayList<>();
+
+    private final IdentityHashMap<OldUser, User> convertedUsers = new IdentityHashMap<>();
+    private final IdentityHashMap<OldCourse, Course> convertedCourses = new IdentityHashMap<>();
+
+    static LegacyData read(File file) throws IOException {
+        try (ObjectInputStream in = new ShadowInput(new FileInputStream(file))) {
+            List<?> users = (List<?>) in.readObject();
+            List<?> courses = (List<?>) in.readObject();
+            List<?> complaints = (List<?>) in.readObject();
+            // enrolledCourses is read only to be sure the file is complete. It kept students who were
+            // refused for the credit limit or had dropped, so rosters are rebuilt from registrations.
+            in.readObject();
+            LegacyData data = new LegacyData();
+            data.convert(users, courses, complaints);
+            return data;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new InvalidClassException("not a portal data file: " + e.getMessage());
+        }
+    }
+
+    private void convert(List<?> oldUsers, List<?> oldCourses, List<?> oldComplaints) {
+        for (Object user : oldUsers) {
+            users.add(user((OldUser) user));
+        }
+        for (Object course : oldCourses) {
+            courses.add(course((OldCourse) course));
+        }
+        for (Object user : oldUsers) {
+            if (user instanceof OldStudent) {
+                OldStudent old = (OldStudent) user;
+                Student student = (Student) user(old);
+                // Registrations first, so each grade is counted into the running GPA totals once
+                for (OldCourse registered : new LinkedHashSet<>(old.registeredCourses)) {
+                    Course course = course(registered);
+                    student.restoreRegistration(course);
+                    course.getEnrollment().restore(student);
+                }
+                for (Map.Entry<OldCourse, String> entry : old.grades.entrySet()) {
+                    Grade grade = Grade.fromLabel(entry.getValue());
+                    if (grade == null) {
+                        System.out.println("Dropping grade \"" + entry.getValue() + "\" of " + old.studentID
+                                + " in " + entry.getKey().courseCode + ": not a letter grade (kept in the old file)");
+                    } else {
+                        student.restoreGrade(course(entry.getKey()), grade);
+                    }
+                }
+            }
+        }
+        for (Course course : convertedCourses.values()) {
+            course.getEnrollment().publishRoster();
+        }
+        for (Object complaint : oldComplaints) {
+            OldComplaint old = (OldComplaint) complaint;
+            Complaint converted = new Complaint(complaints.size() + 1, null, 0, old.description);
+            converted.setStatus(Complaint.Status.parse(old.status));
+            complaints.add(converted);
+        }
+    }
+
+    private User user(OldUser old) {
+        User user = convertedUsers.get(old);
+        if (user == null) {
+            if (old instanceof OldTeachingAssistant) {
+                OldStudent student = (OldStudent) old;
+                user = new TeachingAssistant(old.email, old.password, student.studentID, student.semester);
+            } else if (old instanceof OldStudent) {
+                OldStudent student = (OldStudent) old;
+                user = new Student(old.email, old.password, student.studentID, student.semester);
+            } else if (old instanceof OldProfessor) {
+                user = new Professor(old.email, old.password, ((OldProfessor) old).professorID);
+            } else {
+                user = new Administrator(old.email, old.password);
+            }
+            user.hashStoredPassword(); // passwords were stored in plain text
+            convertedUsers.put(old, user);
+        }
+        return user;
+    }
+
+    // Also used for courses deleted from the catalog that transcripts still refer to
+    private Course course(OldCourse old) {
+        Course course = convertedCourses.get(old);
+        if (course == null) {
+            Professor professor = old.professor == null ? null : (Professor) user(old.professor);
+            course = new Course(old.courseCode, old.title, professor, old.credits,
+                    old.prerequisites == null ? new String[0] : old.prerequisites, old.semester, old.schedule,
+                    old.maxCapacity);
+            if (old.feedbackList != null) {
+                for (OldFeedback feedback : old.feedbackList) {
+                    if (feedback.feedback instanceof Integer) {
+                        course.getFeedback().restoreRatings((Integer) feedback.feedback, 1);
+                    } else {
+                        course.getFeedback().restoreComment(feedback.student == null ? null : feedback.student.studentID,
+                                String.valueOf(feedback.feedback));
+                    }
+                }
+            }
+            convertedCourses.put(old, course);
+        }
+        return course;
+    }
+
+    // Swaps the old portal classes for their shadows; JDK classes are read as usual
+    private static class ShadowInput extends ObjectInputStream {
+        private static final Map<String, Class<?>> SHADOWS = Map.of(
+                "User", OldUser.class,
+                "Student", OldStudent.class,
+                "TeachingAssistant", OldTeachingAssistant.class,
+                "Professor", OldProfessor.class,
+                "Administrator", OldAdministrator.class,
+                "Course", OldCourse.class,
+                "Feedback", OldFeedback.class,
+                "Complaint", OldComplaint.class);
+
+        ShadowInput(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass stream = super.readClassDescriptor();
+            Class<?> shadow = SHADOWS.get(stream.getName());
+            if (shadow == null) {
+                return stream;
+            }
+            // The shadow's descriptor drives the read, so its fields must be the stream's, in the same order
+            ObjectStreamClass local = ObjectStreamClass.lookup(shadow);
+            ObjectStreamField[] expected = stream.getFields();
+            ObjectStreamField[] actual = local.getFields();
+            boolean same = expected.length == actual.length;
+            for (int i = 0; same && i < expected.length; i++) {
+                same = expected[i].getName().equals(actual[i].getName())
+                        && expected[i].getTypeCode() == actual[i].getTypeCode();
+            }
+            if (!same) {
+                throw new InvalidClassException(stream.getName(), "field layout of an unknown portal version");
+            }
+            return local;
+        }
+    }
+
+    // ---- the original portal's serialized fields ----
+
+    private abstract static class OldUser implements Serializable {
+        String email;
+        String password;
+    }
+
+    private static class OldStudent extends OldUser {
+        String studentID;
+        int semester;
+        ArrayList<OldCourse> registeredCourses;
+        HashMap<OldCourse, String> grades;
+    }
+
+    private static class OldTeachingAssistant extends OldStudent {
+    }
+
+    private static class OldProfessor extends OldUser {
+        String professorID;
+    }
+
+    private static class OldAdministrator extends OldUser {
+    }
+
+    private static class OldFeedback implements Serializable {
+        Object feedback;
+        OldStudent student;
+    }
+
+    private static class OldCourse implements Serializable {
+        String courseCode;
+        String title;
+        OldProfessor professor;
+        int credits;
+        String[] prerequisites;
+        int semester;
+        String schedule;
+        int maxCapacity;
+        ArrayList<OldFeedback> feedbackList;
+    }
+
+    private static class OldComplaint implements Serializable {
+        String description;
+        String status;
+    }
+}
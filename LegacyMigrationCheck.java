@@ -0,0 +1,111 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Upgrades a data file written by the original console portal and checks that nothing was lost.
+// fixtures/baseline_n_data.ser was saved by that version after students registered, were graded,
+// rated and commented on courses and filed complaints, and an administrator changed complaint
+// statuses, a semester and the catalog (CS203 was deleted after S004 was graded in it).
+// Then checks that unreadable data files make loadData() fail and are left as they were.
+// Usage, from the repository root: java LegacyMigrationCheck [fixture]
+class LegacyMigrationCheck {
+    private static final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        Path fixture = Paths.get(args.length > 0 ? args[0] : "fixtures/baseline_n_data.ser");
+        Path dir = Files.createTempDirectory("portal-migration");
+        System.setProperty("portal.dataDir", dir.toString()); // before Application is initialized
+
+        Files.copy(fixture, dir.resolve("n_data.ser"));
+        check("migration succeeds", Application.loadData());
+        check("n_data.bin written", Application.DATA_FILE.exists());
+        check("n_data.ser renamed", !Application.LEGACY_DATA_FILE.exists()
+                && new File(dir.toFile(), "n_data.ser.migrated").exists());
+        checkContents("after migration");
+        Application.flush();
+
+        check("n_data.bin loads", Application.loadData());
+        checkContents("after reloading n_data.bin");
+
+        byte[] snapshot = Files.readAllBytes(Application.DATA_FILE.toPath());
+        Files.write(Application.DATA_FILE.toPath(), Arrays.copyOf(snapshot, snapshot.length / 2));
+        check("truncated n_data.bin is refused", !Application.loadData());
+        Files.write(Application.DATA_FILE.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        check("garbage n_data.bin is refused", !Application.loadData());
+        check("refused n_data.bin is untouched",
+                Arrays.equals(Files.readAllBytes(Application.DATA_FILE.toPath()), new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+
+        Files.delete(Application.DATA_FILE.toPath());
+        byte[] legacy = Files.readAllBytes(fixture);
+        Files.write(Application.LEGACY_DATA_FILE.toPath(), Arrays.copyOf(legacy, legacy.length - 100));
+        check("truncated n_data.ser is refused", !Application.loadData());
+        check("refused n_data.ser is kept", Application.LEGACY_DATA_FILE.exists() && !Application.DATA_FILE.exists());
+
+        System.out.println(failures.isEmpty() ? "All migration checks passed."
+                : failures.size() + " checks failed: " + failures);
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    private static void checkContents(String stage) {
+        check(stage + ": 8 users", Application.users.size() == 8);
+        check(stage + ": catalog without CS203", Application.courses.size() == 5
+                && Application.findCourseByCode("CS203") == null && Application.findCourseByCode("CS301") != null);
+
+        Student john = Application.findStudentByID("S001");
+        Student sam = Application.findStudentByID("S003");
+        Student ana = Application.findStudentByID("S004");
+        Course cs101 = Application.findCourseByCode("CS101");
+        check(stage + ": students present", john != null && sam != null && ana != null && cs101 != null);
+        if (john == null || sam == null || ana == null || cs101 == null) {
+            return;
+        }
+        check(stage + ": S001 registrations", codes(john.getRegisteredCourses()).equals(List.of("CS101", "CS102")));
+        check(stage + ": S001 grade", john.getGrade(cs101) == Grade.fromLabel("A"));
+        check(stage + ": S001 logs in with the old password", john.login("john@university.com", "password123"));
+        check(stage + ": S003 semester", sam.getSemester() == 3);
+        check(stage + ": CS101 roster", Application.getRoster(cs101).size() == 2
+                && Application.getRoster(cs101).contains(john) && cs101.getEnrollment().getSeatsTaken() == 2);
+
+        Transcript transcript = ana.getTranscript();
+        check(stage + ": S004 keeps the deleted course", codes(transcript.getCourses()).equals(List.of("CS201", "CS203")));
+        Course cs203 = transcript.getCourses().size() == 2 ? transcript.getCourses().get(1) : null;
+        check(stage + ": S004 grade in the deleted course", cs203 != null && transcript.getGrade(cs203) == Grade.fromLabel("B"));
+        check(stage + ": S004 GPA", Math.abs(ana.getGpa() - transcript.getGpa()) < 1e-9 && transcript.getGpa() > 0);
+
+        CourseFeedback feedback = cs101.getFeedback();
+        check(stage + ": CS101 ratings", feedback.getRatingCount() == 2 && feedback.getAverageRating() == 4.5);
+        check(stage + ": CS101 comment", feedback.getCommentCount() == 1
+                && "S002".equals(feedback.getCommenter(0)) && "Great course".equals(feedback.getComment(0)));
+        Professor lee = Application.findProfessorByID("P003");
+        check(stage + ": CS301 taught by P003", lee != null && Application.findCourseByCode("CS301").getProfessor() == lee);
+
+        List<Complaint> complaints = Application.complaints.all();
+        check(stage + ": 3 complaints", complaints.size() == 3);
+        if (complaints.size() == 3) {
+            check(stage + ": complaint statuses", complaints.get(0).getStatus() == Complaint.Status.RESOLVED
+                    && complaints.get(1).getStatus() == Complaint.Status.IN_PROGRESS
+                    && complaints.get(2).getStatus() == Complaint.Status.PENDING
+                    && complaints.get(0).getInfo().equals("Projector in room 3 is broken"));
+        }
+    }
+
+    private static List<String> codes(List<Course> courses) {
+        List<String> codes = new ArrayList<>();
+        for (Course course : courses) {
+            codes.add(course.getCourseCode());
+        }
+        return codes;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.println((passed ? "ok   " : "FAIL ") + name);
+        if (!passed) {
+            failures.add(name);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Drives a running PortalServer with many concurrent sessions. Each client signs up a student,
+// logs in, then repeatedly lists courses, tries to register for one and reads its transcript.
+// Usage: java LoadGenerator [baseUrl] [clients] [rounds] [courseCode]
+class LoadGenerator {
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:" + PortalServer.DEFAULT_PORT;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        String courseCode = args.length > 3 ? args[3] : "CS101";
+
+        HttpClient http = HttpClient.newHttpClient();
+        String runID = Long.toString(System.currentTimeMillis(), 36);
+        long[][] latencies = new long[clients][];
+        Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = PortalServer.newExecutor();
+        List<Future<?>> running = new ArrayList<>();
+
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            running.add(pool.submit(() -> {
+                long[] samples = new long[2 + 3 * rounds];
+                int count = 0;
+                try {
+                    String studentID = "L" + runID + "-" + client;
+                    String email = studentID + "@load.test";
+                    start.await();
+                    long begin = System.nanoTime();
+                    send(http, baseUrl, "POST", "/signup", null, Json.object("email", email, "password", "pw",
+                            "studentID", studentID, "semester", 1));
+                    samples[count++] = System.nanoTime() - begin;
+                    begin = System.nanoTime();
+                    String token = (String) send(http, baseUrl, "POST", "/login", null,
+                            Json.object("email", email, "password", "pw")).get("token");
+                    samples[count++] = System.nanoTime() - begin;
+                    for (int r = 0; r < rounds; r++) {
+                        begin = System.nanoTime();
+                        send(http, baseUrl, "GET", "/courses?semester=1", token, null);
+                        samples[count++] = System.nanoTime() - begin;
+                        begin = System.nanoTime();
+                        Map<String, Object> registered = send(http, baseUrl, "POST", "/register", token,
+                                Json.object("courseCode", courseCode));
+                        samples[count++] = System.nanoTime() - begin;
+                        outcomes.computeIfAbsent(String.valueOf(registered.get("result")), k -> new LongAdder()).increment();
+                        begin = System.nanoTime();
+                        send(http, baseUrl, "GET", "/transcript", token, null);
+                        samples[count++] = System.nanoTime() - begin;
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                }
+                latencies[client] = Arrays.copyOf(samples, count);
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : running) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        pool.shutdown();
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.println(clients + " clients x " + rounds + " rounds against " + baseUrl);
+        System.out.printf("%d requests in %.2f s (%.0f req/s), %d clients failed%n", all.length, seconds,
+                all.length / seconds, failures.get());
+        if (all.length > 0) {
+            System.out.printf("latency ms: p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n", percentile(all, 50),
+                    percentile(all, 90), percentile(all, 99), all[all.length - 1] / 1e6);
+        }
+        System.out.println("registration results for " + courseCode + ": " + new TreeMap<>(outcomes));
+    }
+
+    private static double percentile(long[] sorted, int percent) {
+        return sorted[Math.min(sorted.length - 1, (int) ((long) sorted.length * percent / 100))] / 1e6;
+    }
+
+    private static Map<String, Object> send(HttpClient http, String baseUrl, String method, String path, String token,
+                                            Map<String, Object> body) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        request.method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofString(Json.write(body)));
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        Map<String, Object> json = Json.parseObject(response.body());
+        if (response.statusCode() >= 500) {
+            throw new IllegalStateException(path + ": " + json.get("error"));
+        }
+        return json;
+    }
+}
@@ -0,0 +1,339 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+// Read-only view of an n_data.bin file mapped into memory. Users and courses are decoded from
+// the mapping the first time they are asked for and cached afterwards, so opening the store
+// costs the same for any dataset size and the heap only holds the records a session touches.
+// Course rosters and feedback stay deferred until someone reads them.
+class MappedStore {
+    private final ByteBuffer buffer; // only absolute get methods are used, the position never moves
+    private final short version;
+    private final long epoch;
+    private final int[] sections = new int[PortalCodec.SECTION_COUNT];
+    private final int[] keyTables = new int[PortalCodec.KEY_TABLE_COUNT];
+    private final int userCount;
+    private final int courseCount;
+    private final HashMap<Integer, String> strings = new HashMap<>();
+    private final HashMap<Integer, User> users = new HashMap<>();
+    private final HashMap<Integer, Course> courses = new HashMap<>();
+    private final IdentityHashMap<Object, Integer> records = new IdentityHashMap<>();
+
+    public static MappedStore open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new MappedStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private MappedStore(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != PortalCodec.MAGIC) {
+            throw new IOException("Not a portal data file");
+        }
+        version = buffer.getShort(4);
+        if (version < 3 || version > PortalCodec.VERSION) {
+            throw new IOException("Unsupported portal data version " + version);
+        }
+        epoch = buffer.getLong(8);
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = (int) buffer.getLong(20 + i * 16);
+        }
+        userCount = buffer.getInt(sections[PortalCodec.USERS]);
+        courseCount = buffer.getInt(sections[PortalCodec.COURSES]);
+        int position = sections[PortalCodec.KEYS];
+        for (int i = 0; i < keyTables.length; i++) {
+            keyTables[i] = position;
+            position += 4 + 8 * buffer.getInt(position);
+        }
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    public int getCourseCount() {
+        return courseCount;
+    }
+
+    // Catalog courses come first in the file, one code key each
+    public int getCatalogSize() {
+        return buffer.getInt(keyTables[PortalCodec.COURSE_CODE_KEY]);
+    }
+
+    public boolean isInCatalog(int course) {
+        return buffer.get(recordOffset(PortalCodec.COURSES, PortalCodec.COURSE_OFFSETS, course)) == 1;
+    }
+
+    // Record number of an object this store materialized, or -1
+    public synchronized int recordOf(Object value) {
+        Integer record = records.get(value);
+        return record == null ? -1 : record;
+    }
+
+    public synchronized User user(int index) {
+        User cached = users.get(index);
+        if (cached != null) {
+            return cached;
+        }
+        int position = recordOffset(PortalCodec.USERS, PortalCodec.USER_OFFSETS, index);
+        byte kind = buffer.get(position);
+        String email = string(buffer.getInt(position + 1));
+        String password = string(buffer.getInt(position + 5));
+        User user;
+        switch (kind) {
+            case PortalCodec.STUDENT:
+                user = new Student(email, password, string(buffer.getInt(position + 9)), buffer.getInt(position + 13));
+                break;
+            case PortalCodec.TEACHING_ASSISTANT:
+                user = new TeachingAssistant(email, password, string(buffer.getInt(position + 9)), buffer.getInt(position + 13));
+                break;
+            case PortalCodec.PROFESSOR:
+                user = new Professor(email, password, string(buffer.getInt(position + 9)));
+                break;
+            case PortalCodec.ADMINISTRATOR:
+                user = new Administrator(email, password);
+                break;
+            default:
+                throw new IllegalStateException("Unknown user kind " + kind);
+        }
+        users.put(index, user);
+        records.put(user, index);
+        if (user instanceof Student) {
+            loadStudentCourses((Student) user, index);
+        }
+        return user;
+    }
+
+    private void loadStudentCourses(Student student, int index) {
+        int relative = buffer.getInt(sections[PortalCodec.STUDENT_COURSE_OFFSETS] + 4 + 4 * index);
+        if (relative < 0) {
+            return;
+        }
+        int position = sections[PortalCodec.STUDENT_COURSES] + relative + 4; // skip the user index
+        int registeredCount = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < registeredCount; i++, position += 4) {
+            student.restoreRegistration(course(buffer.getInt(position)));
+        }
+        int gradeCount = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < gradeCount; i++, position += 5) {
+            student.restoreGrade(course(buffer.getInt(position)), Grade.fromCode(buffer.get(position + 4)));
+        }
+    }
+
+    public synchronized Course course(int index) {
+        Course cached = courses.get(index);
+        if (cached != null) {
+            return cached;
+        }
+        int position = recordOffset(PortalCodec.COURSES, PortalCodec.COURSE_OFFSETS, index) + 1;
+        String code = string(buffer.getInt(position));
+        String title = string(buffer.getInt(position + 4));
+        int professorIndex = buffer.getInt(position + 8);
+        int credits = buffer.getInt(position + 12);
+        String[] prerequisites = new String[buffer.getInt(position + 16)];
+        position += 20;
+        for (int i = 0; i < prerequisites.length; i++, position += 4) {
+            prerequisites[i] = string(buffer.getInt(position));
+        }
+        int semester = buffer.getInt(position);
+        String schedule = string(buffer.getInt(position + 4));
+        int maxCapacity = buffer.getInt(position + 8);
+        position += 12;
+        Professor professor = professorIndex < 0 ? null : (Professor) user(professorIndex);
+        Course course = new Course(code, title, professor, credits, prerequisites, semester, schedule, maxCapacity);
+        courses.put(index, course);
+        records.put(course, index);
+
+        int rosterSize = buffer.getInt(position);
+        int rosterStart = position + 4;
+        position = rosterStart + 4 * rosterSize;
+        CourseFeedback feedback = course.getFeedback();
+        if (version >= 5) {
+            for (int rating = CourseFeedback.MIN_RATING; rating <= CourseFeedback.MAX_RATING; rating++, position += 8) {
+                feedback.restoreRatings(rating, buffer.getLong(position));
+            }
+            int commentCount = buffer.getInt(position);
+            int commentStart = position + 4;
+            feedback.deferComments(() -> loadComments(feedback, commentStart, commentCount));
+            position = commentStart + 8 * commentCount;
+        } else {
+            position = loadLegacyFeedback(feedback, position);
+        }
+        int waitlistPosition = position; // version 3 files stop before this
+        course.getEnrollment().defer(rosterSize, () -> students(rosterStart, rosterSize),
+                version < 4 ? null : () -> students(waitlistPosition + 4, buffer.getInt(waitlistPosition)));
+        return course;
+    }
+
+    private synchronized void loadComments(CourseFeedback feedback, int start, int count) {
+        for (int i = 0; i < count; i++) {
+            feedback.restoreComment(string(buffer.getInt(start + 8 * i)), string(buffer.getInt(start + 8 * i + 4)));
+        }
+    }
+
+    // Versions 3 and 4 kept every feedback entry as {kind, studentID, value}; ratings are counted
+    // now, comments decoded on first read. Returns the position after the entries.
+    private int loadLegacyFeedback(CourseFeedback feedback, int position) {
+        int count = buffer.getInt(position);
+        int start = position + 4;
+        for (int i = 0; i < count; i++) {
+            if (buffer.get(start + 9 * i) == 1) {
+                feedback.restoreRatings(buffer.getInt(start + 9 * i + 5), 1);
+            }
+        }
+        feedback.deferComments(() -> {
+            synchronized (this) {
+                for (int i = 0; i < count; i++) {
+                    int entry = start + 9 * i;
+                    if (buffer.get(entry) != 1) {
+                        feedback.restoreComment(string(buffer.getInt(entry + 1)), string(buffer.getInt(entry + 5)));
+                    }
+                }
+            }
+        });
+        return start + 9 * count;
+    }
+
+    private synchronized List<Student> students(int start, int count) {
+        List<Student> students = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            students.add((Student) user(buffer.getInt(start + 4 * i)));
+        }
+        return students;
+    }
+
+    public synchronized List<Complaint> complaints() {
+        int position = sections[PortalCodec.COMPLAINTS];
+        int count = buffer.getInt(position);
+        List<Complaint> complaints = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Complaint complaint;
+            if (version >= 6) {
+                int entry = position + 4 + 26 * i;
+                complaint = new Complaint(buffer.getLong(entry), string(buffer.getInt(entry + 16)),
+                        buffer.getLong(entry + 8), string(buffer.getInt(entry + 20)));
+                complaint.setStatus(Complaint.Status.values()[buffer.get(entry + 24)]);
+                complaint.setPriority(Complaint.Priority.values()[buffer.get(entry + 25)]);
+            } else {
+                int entry = position + 4 + 8 * i; // description and status string, numbered in order
+                complaint = new Complaint(i + 1, null, 0, string(buffer.getInt(entry)));
+                complaint.setStatus(Complaint.Status.parse(string(buffer.getInt(entry + 4))));
+            }
+            complaints.add(complaint);
+        }
+        return complaints;
+    }
+
+    // ---- key lookups: binary search on the hash, then compare the decoded record ----
+
+    public synchronized User userByEmail(String email, Class<? extends User> role) {
+        for (int record : candidates(PortalCodec.EMAIL_KEY, email)) {
+            User user = user(record);
+            if (role.isInstance(user) && user.getEmail().equals(email)) {
+                return user;
+            }
+        }
+        return null;
+    }
+
+    public synchronized Student studentByID(String studentID) {
+        String key = PortalRepository.normalize(studentID);
+        for (int record : candidates(PortalCodec.STUDENT_ID_KEY, key)) {
+            Student student = (Student) user(record);
+            if (PortalRepository.normalize(student.getStudentID()).equals(key)) {
+                return student;
+            }
+        }
+        return null;
+    }
+
+    public synchronized Professor professorByID(String professorID) {
+        for (int record : candidates(PortalCodec.PROFESSOR_ID_KEY, professorID)) {
+            Professor professor = (Professor) user(record);
+            if (professor.getProfessorID().equals(professorID)) {
+                return professor;
+            }
+        }
+        return null;
+    }
+
+    public synchronized Course courseByCode(String code) {
+        String key = PortalRepository.normalize(code);
+        for (int record : candidates(PortalCodec.COURSE_CODE_KEY, key)) {
+            Course course = course(record);
+            if (PortalRepository.normalize(course.getCourseCode()).equals(key)) {
+                return course;
+            }
+        }
+        return null;
+    }
+
+    public synchronized Course courseByTitle(String title) {
+        String key = PortalRepository.normalize(title);
+        for (int record : candidates(PortalCodec.COURSE_TITLE_KEY, key)) {
+            Course course = course(record);
+            if (PortalRepository.normalize(course.getTitle()).equals(key)) {
+                return course;
+            }
+        }
+        return null;
+    }
+
+    private List<Integer> candidates(int table, String key) {
+        int base = keyTables[table] + 4;
+        int hash = key.hashCode();
+        int low = 0;
+        int high = buffer.getInt(keyTables[table]);
+        int count = high;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if ((int) (buffer.getLong(base + 8 * middle) >> 32) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        List<Integer> matches = new ArrayList<>(1);
+        for (int i = low; i < count; i++) {
+            long entry = buffer.getLong(base + 8 * i);
+            if ((int) (entry >> 32) != hash) {
+                break;
+            }
+            matches.add((int) entry);
+        }
+        return matches;
+    }
+
+    private int recordOffset(int section, int offsetSection, int index) {
+        return sections[section] + buffer.getInt(sections[offsetSection] + 4 + 4 * index);
+    }
+
+    private String string(int id) {
+        if (id < 0) {
+            return null;
+        }
+        String value = strings.get(id);
+        if (value == null) {
+            int table = sections[PortalCodec.STRINGS];
+            int position = table + buffer.getInt(table + 4 + 4 * id);
+            byte[] bytes = new byte[buffer.getInt(position)];
+            buffer.get(position + 4, bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            strings.put(id, value);
+        }
+        return value;
+    }
+}
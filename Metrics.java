@@ -0,0 +1,426 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+
+// Counters and latency histograms for the portal's hot paths. Counters are LongAdders and
+// histograms are log-linear (HDR-style: 16 linear sub-buckets per power of two, so any recorded
+// value is within about 6% of its bucket), so recording is a few uncontended atomic adds.
+// The two nanoTime() calls around a timed section cost more than that, so sections that run
+// millions of times (registration) time one call in -Dportal.metricsSampleEvery (default 8);
+// their counters stay exact. -Dportal.metrics=false turns every call into a no-op.
+// Read them through JMX (CollegePortal:type=Metrics), GET /metrics, or the periodic text dump
+// (-Dportal.metricsInterval=seconds; on by default in server mode).
+final class Metrics {
+    static final boolean ENABLED = !"false".equals(System.getProperty("portal.metrics"));
+    static final int SAMPLE_EVERY = Math.max(1, Integer.getInteger("portal.metricsSampleEvery", 8));
+    static final String OBJECT_NAME = "CollegePortal:type=Metrics";
+
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final List<String> order = new CopyOnWriteArrayList<>(); // registration order, for the dump
+
+    // ---- the portal's metrics ----
+
+    static final Counter REGISTRATIONS = counter("registrations", "Successful course registrations");
+    static final Counter REGISTRATION_REJECTIONS = counter("registrationRejections",
+            "Registrations refused for prerequisites, credits, clashes or duplicates");
+    static final Counter COURSE_FULL = counter("courseFull", "Registrations refused because the course was full");
+    static final Counter DROPS = counter("drops", "Courses dropped");
+    static final Counter WAITLIST_JOINS = counter("waitlistJoins", "Students added to a waitlist");
+    static final Counter PROMOTIONS = counter("waitlistPromotions", "Waitlisted students registered into a freed seat");
+    static final Counter LOGINS = counter("logins", "Successful logins");
+    static final Counter LOGIN_FAILURES = counter("loginFailures", "Logins with a wrong password or unknown email");
+    static final Counter RATINGS = counter("ratings", "Numeric feedback submitted");
+    static final Counter COMMENTS = counter("comments", "Text feedback submitted");
+    static final Counter COMPLAINTS_FILED = counter("complaintsFiled", "Complaints filed");
+    static final Counter COMPLAINT_UPDATES = counter("complaintUpdates", "Complaint status or priority changes");
+    static final Counter CATALOG_CHANGES = counter("catalogChanges", "Courses added, deleted or resized by administrators");
+    static final Counter BATCH_COMMANDS = counter("batchCommands", "Administrator batch commands applied");
+    static final Counter BATCH_REJECTIONS = counter("batchRejections", "Administrator batch commands rejected by validation");
+    static final Counter SAVES = counter("saves", "saveData() calls");
+    static final Counter COMMIT_FAILURES = counter("commitFailures", "Journal commits that failed and were retried");
+    static final Counter COMMITS = counter("commits", "Journal commits by the background writer, each covering a burst of saves");
+    static final Counter SAVE_BYTES = counter("saveBytes", "Journal bytes committed by the background writer");
+    static final Counter CHECKPOINT_BYTES = counter("checkpointBytes", "Snapshot bytes written by checkpoints");
+    static final Counter HTTP_ERRORS = counter("httpErrors", "Server responses with a 4xx or 5xx status");
+
+    static final Histogram REGISTER_TIME = histogram("registerTime",
+            "Student.enroll(), including the journal append (sampled)");
+    static final Histogram LOGIN_TIME = histogram("loginTime", "Password check of a login");
+    static final Histogram LOGIN_LOOKUP_TIME = histogram("loginLookupTime", "Finding the account for a login email");
+    static final Histogram SAVE_TIME = histogram("saveTime", "Background journal commit and fsync");
+    static final Histogram FLUSH_TIME = histogram("flushTime", "flush(): waiting for the writer to make saves durable");
+    static final Histogram BACKPRESSURE_TIME = histogram("backpressureTime",
+            "saveData() calls held back because the writer fell behind");
+    static final Histogram CHECKPOINT_TIME = histogram("checkpointTime", "Writing a full snapshot and renaming it into place");
+    static final Histogram SHARD_REGISTER_TIME = histogram("shardRegisterTime",
+            "ShardCoordinator.register(): credit hold and seat claim on the owning shards");
+    static final Histogram LOAD_TIME = histogram("loadTime", "loadData(): snapshot load and journal replay");
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name, String description) {
+        return counters.computeIfAbsent(name, key -> {
+            order.add(key);
+            return new Counter(description);
+        });
+    }
+
+    // Latencies are recorded in nanoseconds
+    public static Histogram histogram(String name, String description) {
+        return histograms.computeIfAbsent(name, key -> {
+            order.add(key);
+            return new Histogram(description);
+        });
+    }
+
+    // Start of a timed section, for Histogram.recordSince
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    // Like start(), but only one call in SAMPLE_EVERY is timed; the others return 0 and record nothing
+    public static long sampledStart() {
+        return ENABLED && ThreadLocalRandom.current().nextInt(SAMPLE_EVERY) == 0 ? System.nanoTime() : 0;
+    }
+
+    static final class Counter {
+        final String description;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String description) {
+            this.description = description;
+        }
+
+        public void increment() {
+            if (ENABLED) {
+                value.increment();
+            }
+        }
+
+        public void add(long amount) {
+            if (ENABLED) {
+                value.add(amount);
+            }
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        final String description;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS); // the count is their sum
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private Histogram(String description) {
+            this.description = description;
+        }
+
+        // A start of 0 is an unsampled (or disabled) section
+        public void recordSince(long startNanos) {
+            if (startNanos != 0) {
+                record(System.nanoTime() - startNanos);
+            }
+        }
+
+        public void record(long value) {
+            if (!ENABLED || value < 0) {
+                return;
+            }
+            buckets.incrementAndGet(bucket(value));
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        // Values below 16 get a bucket each; above that, 16 buckets per power of two
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int shift = exponent - SUB_BUCKET_BITS;
+            return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+        }
+
+        // Smallest value that falls in the bucket
+        static long lowerBound(int bucket) {
+            if (bucket < 2 * SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        }
+
+        public long count() {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += buckets.get(i);
+            }
+            return total;
+        }
+
+        public long max() {
+            return max.get();
+        }
+
+        public double mean() {
+            long n = count();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        // The value at or below which the given fraction of recordings fall, to bucket precision
+        public long percentile(double fraction) {
+            long total = 0;
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    long low = lowerBound(i);
+                    long high = i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                    return Math.min(max.get(), low + (high - low) / 2);
+                }
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            sum.reset();
+            max.reset();
+        }
+    }
+
+    // Point-in-time values as plain numbers, for GET /metrics and the MBean
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String name : order) {
+            Counter counter = counters.get(name);
+            if (counter != null) {
+                values.put(name, counter.get());
+                continue;
+            }
+            Histogram histogram = histograms.get(name);
+            values.put(name, Json.object("count", histogram.count(),
+                    "meanMicros", histogram.mean() / 1000, "p50Micros", histogram.percentile(0.50) / 1000.0,
+                    "p90Micros", histogram.percentile(0.90) / 1000.0, "p99Micros", histogram.percentile(0.99) / 1000.0,
+                    "maxMicros", histogram.max() / 1000.0));
+        }
+        return values;
+    }
+
+    public static void reset() {
+        for (Counter counter : counters.values()) {
+            counter.value.reset();
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    // ---- text dump ----
+
+    private static final Map<String, Long> lastCounts = new HashMap<>();
+    private static long lastDump = System.nanoTime();
+
+    // One line per metric; rates are per second since the previous dump
+    public static synchronized String dump() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - lastDump) / 1e9);
+        lastDump = now;
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("--- portal metrics at %s (%.0f s interval) ---%n", Instant.now(), seconds));
+        for (String name : order) {
+            Counter counter = counters.get(name);
+            long count = counter != null ? counter.get() : histograms.get(name).count();
+            Long previous = lastCounts.put(name, count);
+            double rate = (count - (previous == null ? 0 : previous)) / seconds;
+            if (counter != null) {
+                out.append(String.format("%-24s %12d %12.1f/s%n", name, count, rate));
+            } else {
+                Histogram histogram = histograms.get(name);
+                out.append(String.format("%-24s %12d %12.1f/s  p50 %s  p90 %s  p99 %s  max %s%n", name, count, rate,
+                        format(histogram.percentile(0.50)), format(histogram.percentile(0.90)),
+                        format(histogram.percentile(0.99)), format(histogram.max())));
+            }
+        }
+        return out.toString();
+    }
+
+    private static String format(long nanos) {
+        if (nanos < 10_000) {
+            return nanos + "ns";
+        }
+        if (nanos < 10_000_000) {
+            return nanos / 1000 + "us";
+        }
+        return nanos / 1_000_000 + "ms";
+    }
+
+    // Prints dump() every intervalSeconds on a daemon thread
+    public static void startDump(long intervalSeconds, PrintStream out) {
+        if (!ENABLED || intervalSeconds <= 0) {
+            return;
+        }
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(() -> out.print(dump()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // ---- JMX ----
+
+    public static void registerMBean() {
+        if (!ENABLED) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), name);
+            }
+        } catch (JMException e) {
+            System.out.println("Could not register the metrics MBean: " + e.getMessage());
+        }
+    }
+
+    // Counters appear as Long attributes named after the metric, histograms as Double attributes
+    // "<name>.p50Micros", ".p90Micros", ".p99Micros", ".maxMicros", ".meanMicros" plus Long "<name>.count"
+    private static final class MBean implements DynamicMBean {
+        private static final String[] STATISTICS = {"count", "meanMicros", "p50Micros", "p90Micros", "p99Micros", "maxMicros"};
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Counter counter = counters.get(attribute);
+            if (counter != null) {
+                return counter.get();
+            }
+            int dot = attribute.lastIndexOf('.');
+            Histogram histogram = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+            if (histogram == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            switch (attribute.substring(dot + 1)) {
+                case "count":
+                    return histogram.count();
+                case "meanMicros":
+                    return histogram.mean() / 1000;
+                case "p50Micros":
+                    return histogram.percentile(0.50) / 1000.0;
+                case "p90Micros":
+                    return histogram.percentile(0.90) / 1000.0;
+                case "p99Micros":
+                    return histogram.percentile(0.99) / 1000.0;
+                case "maxMicros":
+                    return histogram.max() / 1000.0;
+                default:
+                    throw new AttributeNotFoundException(attribute);
+            }
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // skipped, as the DynamicMBean contract allows
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) {
+            if ("reset".equals(action)) {
+                reset();
+                return null;
+            }
+            if ("dump".equals(action)) {
+                return dump();
+            }
+            throw new UnsupportedOperationException(action);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : order) {
+                Counter counter = counters.get(name);
+                if (counter != null) {
+                    attributes.add(new MBeanAttributeInfo(name, "java.lang.Long", counter.description, true, false, false));
+                    continue;
+                }
+                Histogram histogram = histograms.get(name);
+                for (String statistic : STATISTICS) {
+                    attributes.add(new MBeanAttributeInfo(name + "." + statistic,
+                            statistic.equals("count") ? "java.lang.Long" : "java.lang.Double",
+                            histogram.description + " (" + statistic + ")", true, false, false));
+                }
+            }
+            MBeanOperationInfo[] operations = {
+                    new MBeanOperationInfo("reset", "Zero every metric", new MBeanParameterInfo[0], "void",
+                            MBeanOperationInfo.ACTION),
+                    new MBeanOperationInfo("dump", "Text dump; rates since the previous dump", new MBeanParameterInfo[0],
+                            "java.lang.String", MBeanOperationInfo.ACTION)
+            };
+            return new MBeanInfo(Metrics.class.getName(), "College portal metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, operations, null);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.Semaphore;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// Salted PBKDF2 password hashes, stored as "pbkdf2$iterations$salt$hash" in place of the plaintext.
+// -Dportal.hashIterations tunes the cost of new hashes; old hashes keep the count they were made with.
+// Verification always does the full derivation and a constant-time compare, including for unknown
+// accounts, and at most one derivation per core runs at a time so a login flood cannot starve the
+// rest of the server.
+final class PasswordHasher {
+    static final int ITERATIONS = Integer.getInteger("portal.hashIterations", 100_000);
+    private static final String PREFIX = "pbkdf2$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Semaphore DERIVATIONS = new Semaphore(Runtime.getRuntime().availableProcessors(), true);
+
+    private PasswordHasher() {
+    }
+
+    public static boolean isHash(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return hash(password, salt);
+    }
+
+    // With a caller-chosen salt, for generated test data that must come out the same every run
+    static String hash(String password, byte[] salt) {
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + ITERATIONS + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(derive(password, salt, ITERATIONS));
+    }
+
+    // stored may be null (no such account) or a plaintext password from a pre-hashing data file;
+    // both still pay for one derivation
+    public static boolean verify(String password, String stored) {
+        boolean known = stored != null;
+        if (!isHash(stored)) {
+            derive(password, new byte[SALT_BYTES], ITERATIONS); // same cost as a real check
+            return known && MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        Base64.Decoder base64 = Base64.getDecoder();
+        byte[] expected = base64.decode(parts[3]);
+        byte[] actual = derive(password, base64.decode(parts[2]), Integer.parseInt(parts[1]));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        DERIVATIONS.acquireUninterruptibly();
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 is not available", e);
+        } finally {
+            DERIVATIONS.release();
+            spec.clearPassword();
+        }
+    }
+}
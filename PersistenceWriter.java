@@ -0,0 +1,163 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// The single background thread that puts the portal on disk. saveData() only takes a ticket; the
+// writer commits everything journaled since its last pass with one fsync, so a burst of mutations
+// costs one write, then writes any snapshot a checkpoint has captured. await(ticket) blocks until
+// the commit covering that ticket is done, and throws if that commit failed. A failed commit keeps
+// its records buffered and is retried every RETRY_MILLIS until one succeeds.
+class PersistenceWriter {
+    static final long RETRY_MILLIS = 1000;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Condition progress = lock.newCondition();
+    private long requested;
+    private long committed; // every ticket up to this one is on disk
+    private long failed; // tickets up to this one were in a commit that failed, until a later one succeeds
+    private IOException failure;
+    private PortalCodec.Encoded snapshot; // captured by a checkpoint, waiting to be written
+    private boolean snapshotting; // a checkpoint is between capture and install
+    private Thread thread;
+
+    // Asks for everything journaled so far to be committed; returns the ticket for await()
+    public long request() {
+        lock.lock();
+        try {
+            if (thread == null) {
+                thread = new Thread(this::run, "portal-writer");
+                thread.setDaemon(true); // exit paths flush explicitly
+                thread.start();
+            }
+            work.signal();
+            return ++requested;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Throws UncheckedIOException if the commit covering the ticket failed; the mutations are still
+    // buffered and may yet reach the disk on a retry, so the caller cannot report them as saved
+    public void await(long ticket) {
+        lock.lock();
+        try {
+            while (committed < ticket) {
+                if (failed >= ticket) {
+                    throw new UncheckedIOException("Could not write the journal", failure);
+                }
+                progress.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Claims the one checkpoint slot; without wait, returns false if another checkpoint holds it
+    public boolean beginSnapshot(boolean wait) {
+        lock.lock();
+        try {
+            while (snapshotting) {
+                if (!wait) {
+                    return false;
+                }
+                progress.awaitUninterruptibly();
+            }
+            snapshotting = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void endSnapshot() {
+        lock.lock();
+        try {
+            snapshotting = false;
+            progress.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Hands a captured snapshot to the writer, which installs it and releases the checkpoint slot
+    public void submit(PortalCodec.Encoded encoded) {
+        lock.lock();
+        try {
+            snapshot = encoded;
+        } finally {
+            lock.unlock();
+        }
+        request();
+    }
+
+    private void run() {
+        while (true) {
+            long target;
+            PortalCodec.Encoded pending;
+            lock.lock();
+            try {
+                while (requested == committed && snapshot == null) {
+                    work.awaitUninterruptibly();
+                }
+                target = requested;
+                pending = snapshot;
+                snapshot = null;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                Application.commitJournal();
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new IOException(e);
+            }
+            lock.lock();
+            try {
+                if (error == null) {
+                    committed = target;
+                } else {
+                    failed = target;
+                    failure = error;
+                }
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            if (pending != null) {
+                try {
+                    Application.install(pending);
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); // the rotated segments stay and are replayed on load
+                } finally {
+                    endSnapshot();
+                }
+            }
+            if (error != null) {
+                error.printStackTrace();
+                pause();
+            }
+        }
+    }
+
+    // Waits before retrying a failed commit; new requests do not cut the wait short
+    private void pause() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RETRY_MILLIS);
+        lock.lock();
+        try {
+            for (long left = deadline - System.nanoTime(); left > 0; left = deadline - System.nanoTime()) {
+                work.awaitNanos(left);
+            }
+        } catch (InterruptedException e) {
+            // the writer is never interrupted; retry now
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,406 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+// Throughput of the portal's core operations over DatasetGenerator datasets, measured the way JMH does:
+// warmup iterations, then timed iterations reporting ops/s each, with results kept alive in a sink.
+// Prints a table and writes JMH-format JSON (one entry per benchmark and dataset size) so runs of
+// different versions can be compared with the usual JMH tooling.
+// This is the quick, dependency-free run: one JVM for everything. For numbers to publish, run the
+// same scenarios under JMH itself, with forks and Blackholes: mvn package && java -jar target/benchmarks.jar
+// Data files go to a temporary -Dportal.dataDir, never the working directory.
+// Usage: java -Xmx8g PortalBenchmark [--sizes 1000:100,10000:1000,100000:5000,1000000:50000]
+//        [--threads n] [--warmup n] [--iterations n] [--time ms] [--only name,...] [--out file.json]
+class PortalBenchmark {
+    static final String DEFAULT_SIZES = "1000:100,10000:1000,100000:5000";
+    static final int HOT_COURSES = 4;
+    static final int HOT_CAPACITY = 64;
+    static final Set<String> CONTENDED = Set.of("registerContended", "flush");
+    static final int IMPORT_ROWS = GradeImporter.BATCH_SIZE;
+    static final int BATCH_COMMANDS = 10_000;
+    // Scenarios doing many units of work per invocation, scored in units/s as JMH's
+    // @OperationsPerInvocation does: grades for importGrades, commands for adminBatch
+    static final Map<String, Integer> OPERATIONS_PER_INVOCATION = Map.of("importGrades", IMPORT_ROWS,
+            "adminBatch", BATCH_COMMANDS);
+
+    // One invocation of the operation under test; the result goes to the sink
+    interface Operation {
+        Object run(ThreadLocalRandom random) throws Exception;
+    }
+
+    private final int warmup;
+    private final int iterations;
+    private final long iterationMillis;
+    private final int threads;
+    private final Set<String> only;
+    private final List<Object> results = new ArrayList<>();
+    private final PrintStream console = System.out;
+    private final PrintStream silent = new PrintStream(OutputStream.nullOutputStream());
+    private volatile int sink;
+
+    private int studentCount;
+    private int courseCount;
+    private Student[] students;
+    private Course[] catalog;
+    private Course[] hot;
+    private Path gradeFile;
+    private List<String> commands;
+
+    PortalBenchmark(int warmup, int iterations, long iterationMillis, int threads, Set<String> only) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.iterationMillis = iterationMillis;
+        this.threads = threads;
+        this.only = only;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String sizes = DEFAULT_SIZES;
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        int warmup = 2;
+        int iterations = 5;
+        long time = 1000;
+        Set<String> only = new HashSet<>();
+        File out = new File("portal-benchmark.json");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sizes":
+                    sizes = args[i + 1];
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--time":
+                    time = Long.parseLong(args[i + 1]);
+                    break;
+                case "--only":
+                    only.addAll(Arrays.asList(args[i + 1].split(",")));
+                    break;
+                case "--out":
+                    out = new File(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        // Must happen before Application is first touched, since its data file paths are fixed then
+        File dataDir = Files.createTempDirectory("portal-bench").toFile();
+        System.setProperty("portal.dataDir", dataDir.getPath());
+
+        PortalBenchmark benchmark = new PortalBenchmark(warmup, iterations, time, threads, only);
+        System.out.printf("%-26s %9s %7s %8s %16s %12s%n", "benchmark", "students", "courses", "threads", "ops/s", "ns/op");
+        for (String size : sizes.split(",")) {
+            String[] parts = size.split(":");
+            benchmark.runAll(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        }
+        try (Writer writer = new FileWriter(out)) {
+            writer.write(Json.write(benchmark.results));
+        }
+        System.out.println("Results written to " + out);
+        for (File file : dataDir.listFiles()) {
+            file.delete();
+        }
+        dataDir.delete();
+    }
+
+    private void runAll(int studentCount, int courseCount) throws Exception {
+        populate(studentCount, courseCount, 42);
+        Application.checkpoint(); // loadData needs a snapshot, and the journal starts empty
+
+        for (Map.Entry<String, Operation> scenario : scenarios().entrySet()) {
+            bench(scenario.getKey(), CONTENDED.contains(scenario.getKey()) ? threads : 1, scenario.getValue());
+        }
+    }
+
+    // The operations under test, by benchmark name, in the order they run; the ones in CONTENDED run
+    // on every thread. jmh/PortalJmh.java runs the same operations under JMH.
+    private Map<String, Operation> scenarios() {
+        Map<String, Operation> scenarios = new LinkedHashMap<>();
+        scenarios.put("findStudentByID", random -> Application.findStudentByID("S" + random.nextInt(studentCount)));
+        scenarios.put("isFull", random -> catalog[random.nextInt(catalog.length)].isFull());
+        scenarios.put("trackProgress", random -> students[random.nextInt(students.length)].trackProgress());
+        scenarios.put("viewAvailableCourses", random -> students[0].viewAvailableCourses(1 + random.nextInt(8), 1));
+        scenarios.put("registerCourse", this::registerCourse);
+        scenarios.put("registerContended", this::registerContended);
+        scenarios.put("saveData", random -> {
+            registerCourse(random);
+            Application.saveData();
+            return null;
+        });
+        scenarios.put("flush", random -> {
+            registerContended(random);
+            Application.flush();
+            return null;
+        });
+        scenarios.put("importGrades", random -> {
+            GradeImporter.Result result = GradeImporter.importFile(gradeFile, course -> true);
+            if (result.applied != IMPORT_ROWS) {
+                throw new IllegalStateException(result.toString());
+            }
+            return result.applied;
+        });
+        scenarios.put("adminBatch", random -> {
+            AdminBatch.Result result = AdminBatch.run(commands, false);
+            if (result.applied != BATCH_COMMANDS) {
+                throw new IllegalStateException(result.toString());
+            }
+            return result.applied;
+        });
+        scenarios.put("checkpoint", random -> {
+            Application.checkpoint();
+            return null;
+        });
+        scenarios.put("loadData", random -> {
+            Application.loadData();
+            return Application.users.size();
+        });
+        return scenarios;
+    }
+
+    // Entry points for jmh/PortalJmh.java, which has to live in a package and so can reach the
+    // portal only by reflection. prepare() installs a dataset and returns each scenario as a
+    // Callable on the calling thread's random; settle() commits what a JMH iteration journaled.
+    // The menu output of the scenarios is silenced for the rest of the forked JVM's life.
+    public static Map<String, Callable<Object>> prepare(int studentCount, int courseCount) throws IOException {
+        PortalBenchmark benchmark = new PortalBenchmark(0, 0, 0, 1, Set.of());
+        System.setOut(benchmark.silent);
+        benchmark.populate(studentCount, courseCount, 42);
+        Application.checkpoint();
+        Map<String, Callable<Object>> callables = new LinkedHashMap<>();
+        benchmark.scenarios().forEach((name, operation) -> callables.put(name, () -> operation.run(ThreadLocalRandom.current())));
+        return callables;
+    }
+
+    public static void settle() {
+        Application.flush();
+    }
+
+    // Menu path: register for a random catalog course, then withdraw (or leave the waitlist) so the dataset stays put
+    private Object registerCourse(ThreadLocalRandom random) throws Exception {
+        Student student = students[random.nextInt(students.length)];
+        Course course = catalog[random.nextInt(catalog.length)];
+        boolean registered = student.getRegisteredCourses().contains(course);
+        try {
+            student.registerCourse(course);
+        } catch (CourseFullException e) {
+            student.leaveWaitlist(course);
+            return EnrollmentEngine.Result.COURSE_FULL;
+        }
+        if (!registered && student.getRegisteredCourses().contains(course)) {
+            student.withdraw(course);
+            return EnrollmentEngine.Result.REGISTERED;
+        }
+        return null;
+    }
+
+    // Server path: every thread competes for the seats of a few small courses under the read lock
+    private Object registerContended(ThreadLocalRandom random) {
+        Student student = students[random.nextInt(students.length)];
+        Course course = hot[random.nextInt(hot.length)];
+        Lock lock = Application.stateLock.readLock();
+        lock.lock();
+        try {
+            EnrollmentEngine.Result result = student.enroll(course);
+            if (result == EnrollmentEngine.Result.REGISTERED) {
+                student.withdraw(course);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void bench(String name, int threadCount, Operation operation) throws Exception {
+        if (!only.isEmpty() && !only.contains(name)) {
+            return;
+        }
+        ConcurrentHashMap<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        List<Double> scores = new ArrayList<>();
+        int perInvocation = OPERATIONS_PER_INVOCATION.getOrDefault(name, 1);
+        System.setOut(silent);
+        try {
+            for (int i = 0; i < warmup + iterations; i++) {
+                double score = iteration(pool, threadCount, operation, i < warmup ? null : outcomes);
+                if (i >= warmup) {
+                    scores.add(score * perInvocation);
+                }
+                Application.flush(); // commit what the iteration journaled, outside the timing
+            }
+        } finally {
+            System.setOut(console);
+            pool.shutdown();
+        }
+        Application.checkpoint();
+
+        double mean = scores.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        double variance = scores.stream().mapToDouble(score -> (score - mean) * (score - mean)).sum()
+                / Math.max(1, scores.size() - 1);
+        double error = scores.size() < 2 ? Double.NaN : studentT999(scores.size() - 1) * Math.sqrt(variance / scores.size());
+        System.out.printf("%-26s %9d %7d %8d %16.1f %12.1f%n", name, studentCount, courseCount, threadCount,
+                mean, mean == 0 ? 0 : threadCount * 1e9 / mean);
+
+        Map<String, Object> secondary = new TreeMap<>();
+        outcomes.forEach((outcome, count) -> secondary.put(outcome, Json.object("score", count.sum(), "scoreUnit", "ops")));
+        results.add(Json.object(
+                "benchmark", "PortalBenchmark." + name,
+                "mode", "thrpt",
+                "threads", threadCount,
+                "forks", 1,
+                "warmupIterations", warmup,
+                "warmupTime", iterationMillis + " ms",
+                "measurementIterations", iterations,
+                "measurementTime", iterationMillis + " ms",
+                "params", Json.object("students", Integer.toString(studentCount), "courses", Integer.toString(courseCount)),
+                "primaryMetric", Json.object(
+                        "score", mean,
+                        "scoreError", error, // half-width of the 99.9% confidence interval, as JMH reports it
+                        "scoreConfidence", List.of(mean - error, mean + error),
+                        "scoreUnit", "ops/s",
+                        "rawData", List.of(scores)),
+                "secondaryMetrics", secondary));
+    }
+
+    // Two-sided 99.9% quantile of Student's t distribution, which JMH uses for scoreError
+    private static double studentT999(int degreesOfFreedom) {
+        double[] table = {636.62, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+                4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+                3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646};
+        return degreesOfFreedom <= table.length ? table[degreesOfFreedom - 1] : 3.291;
+    }
+
+    // Runs the operation on every thread until the iteration time is up; returns total ops/s
+    private double iteration(ExecutorService pool, int threadCount, Operation operation,
+                             ConcurrentHashMap<String, LongAdder> outcomes) throws Exception {
+        CyclicBarrier start = new CyclicBarrier(threadCount);
+        List<Future<long[]>> workers = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            workers.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                start.await();
+                long begin = System.nanoTime();
+                long deadline = begin + iterationMillis * 1_000_000;
+                long ops = 0;
+                int local = 0;
+                long now;
+                do {
+                    Object result = operation.run(random);
+                    if (result != null) {
+                        local += result.hashCode();
+                        if (outcomes != null && result instanceof Enum) {
+                            outcomes.computeIfAbsent(result.toString(), k -> new LongAdder()).increment();
+                        }
+                    }
+                    ops++;
+                    now = System.nanoTime();
+                } while (now < deadline);
+                sink += local;
+                return new long[]{ops, now - begin};
+            }));
+        }
+        double total = 0;
+        for (Future<long[]> worker : workers) {
+            long[] measured = worker.get();
+            total += measured[0] * 1e9 / measured[1];
+        }
+        return total;
+    }
+
+    // Installs DatasetGenerator's data as the portal's state, plus HOT_COURSES small unscheduled
+    // courses for the contended run, the grade export importGrades reads back and adminBatch's commands
+    private void populate(int studentCount, int courseCount, long seed) throws IOException {
+        this.studentCount = studentCount;
+        this.courseCount = courseCount;
+        DatasetGenerator.generate(studentCount, courseCount, seed);
+        catalog = Application.courses.toArray(new Course[0]);
+        students = Application.users.stream().filter(user -> user instanceof Student).toArray(Student[]::new);
+        Professor professor = Application.findProfessorByID("P0");
+        hot = new Course[HOT_COURSES];
+        for (int i = 0; i < HOT_COURSES; i++) {
+            hot[i] = new Course("HOT" + i, "Popular course " + i, professor, 1, new String[0], 1, "TBA", HOT_CAPACITY);
+            Application.addToCatalog(hot[i]);
+        }
+        gradeFile = exportGrades(new File(Application.DATA_DIR, "grades.csv").toPath());
+        commands = adminCommands();
+    }
+
+    // BATCH_COMMANDS commands: advanceSemester going round the students, and every fourth one a
+    // catalog command that sets a catalog course's details, capacity or professor to what they
+    // already are, so only the students' semesters move
+    private List<String> adminCommands() {
+        List<String> lines = new ArrayList<>(BATCH_COMMANDS);
+        int student = 0;
+        int course = 0;
+        for (int i = 0; i < BATCH_COMMANDS; i++) {
+            if (i % 4 != 3) {
+                lines.add("advanceSemester," + students[student++ % students.length].getStudentID());
+                continue;
+            }
+            Course target = catalog[course % catalog.length];
+            switch (course++ % 3) {
+                case 0:
+                    lines.add("updateCourse," + target.getCourseCode() + "," + target.getCredits() + ","
+                            + String.join(";", target.getPrerequisites()) + "," + target.getSchedule());
+                    break;
+                case 1:
+                    lines.add("setCapacity," + target.getCourseCode() + "," + target.getMaxCapacity());
+                    break;
+                default:
+                    lines.add("assignProfessor," + target.getProfessor().getProfessorID() + "," + target.getCourseCode());
+                    break;
+            }
+        }
+        return lines;
+    }
+
+    // IMPORT_ROWS rows of the generated grades as a grade export, going round the graded
+    // registrations again if there are fewer, so importing it leaves the dataset as it was
+    private Path exportGrades(Path file) throws IOException {
+        List<String> graded = new ArrayList<>();
+        for (Student student : students) {
+            for (Course course : student.getRegisteredCourses()) {
+                Grade grade = student.getGrade(course);
+                if (grade != null) {
+                    graded.add(student.getStudentID() + "," + course.getCourseCode() + "," + grade);
+                }
+            }
+        }
+        List<String> lines = new ArrayList<>(IMPORT_ROWS + 1);
+        lines.add("studentID,courseCode,grade");
+        for (int i = 0; i < IMPORT_ROWS; i++) {
+            lines.add(graded.get(i % graded.size()));
+        }
+        return Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+}
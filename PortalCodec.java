@@ -0,0 +1,507 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Versioned binary snapshot format, replacing Java serialization of the whole object graph.
+//
+// Layout: header (magic, version, epoch, section table) followed by the sections below, each at the
+// offset the section table gives; the encoder writes them in the order it can produce them.
+// Every string is stored once in the STRINGS section and referenced by index; users and courses
+// reference each other by their position in the USERS and COURSES sections. The *_OFFSETS
+// sections and the sorted hash tables in KEYS let MappedStore find single records without
+// decoding the rest of the file.
+class PortalCodec {
+    static final int MAGIC = 0x50525431; // "PRT1"
+    static final short VERSION = 6; // 4 added course waitlists, 5 split feedback, 6 complaint IDs; MappedStore still reads 3-5
+
+    static final int SCHEMA = 0;
+    static final int STRINGS = 1;
+    static final int USERS = 2;
+    static final int COURSES = 3;
+    static final int STUDENT_COURSES = 4;
+    static final int COMPLAINTS = 5;
+    static final int USER_OFFSETS = 6;
+    static final int COURSE_OFFSETS = 7;
+    static final int STUDENT_COURSE_OFFSETS = 8;
+    static final int KEYS = 9;
+    static final int SECTION_COUNT = 10;
+
+    // Hash tables in the KEYS section, in this order
+    static final int EMAIL_KEY = 0;
+    static final int STUDENT_ID_KEY = 1;
+    static final int PROFESSOR_ID_KEY = 2;
+    static final int COURSE_CODE_KEY = 3;
+    static final int COURSE_TITLE_KEY = 4;
+    static final int KEY_TABLE_COUNT = 5;
+
+    static final String SCHEMA_TEXT =
+            "strings: count, offsets[], {utf8Length, utf8}*\n"
+            + "users: count, {kind(1=student,2=professor,3=administrator,4=ta), email, password,"
+            + " [studentID, semester | professorID]}*\n"
+            + "courses: count, {inCatalog, code, title, professorUser, credits, prerequisites[],"
+            + " semester, schedule, maxCapacity, rosterUsers[], ratingCounts(long)[1..5],"
+            + " {studentID, comment}[], waitlistUsers[]}*\n"
+            + "student_courses: count, {user, registeredCourses[], {course, gradeCode(byte)}[]}*\n"
+            + "complaints: count, {id(long), filedAt(long), submitterID, description, status(byte), priority(byte)}*\n"
+            + "user_offsets, course_offsets, student_course_offsets: count, offset[]\n"
+            + "keys: {count, (hash << 32 | record)[] sorted} for email, studentID, professorID, code, title\n";
+
+    static final byte STUDENT = 1;
+    static final byte PROFESSOR = 2;
+    static final byte ADMINISTRATOR = 3;
+    static final byte TEACHING_ASSISTANT = 4;
+
+    static class Snapshot {
+        ArrayList<User> users = new ArrayList<>();
+        ArrayList<Course> courses = new ArrayList<>();
+        ArrayList<Complaint> complaints = new ArrayList<>();
+        long epoch;
+    }
+
+    // ---- writing ----
+
+    private final HashMap<String, Integer> stringIds = new HashMap<>();
+    private final ArrayList<String> strings = new ArrayList<>();
+
+    // An encoded snapshot, already in a temporary file next to its data file but not yet synced
+    static class Encoded {
+        private final File temp;
+        private final File file;
+        final long epoch;
+        final long size;
+
+        Encoded(File temp, File file, long epoch, long size) {
+            this.temp = temp;
+            this.file = file;
+            this.epoch = epoch;
+            this.size = size;
+        }
+
+        // Syncs the temporary file and renames it over the data file, so a crash before this leaves
+        // the previous snapshot intact; returns the bytes written
+        long install() throws IOException {
+            try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            replace(temp, file);
+            return size;
+        }
+    }
+
+    public static long write(File file, List<User> users, List<Course> courses, List<Complaint> complaints, long epoch)
+            throws IOException {
+        return encode(file, users, courses, complaints, epoch).install();
+    }
+
+    // Streams the state into file's temporary file without syncing it, so callers can capture it
+    // under a lock and sync and install it later. Only a small write buffer, the string table and
+    // per-record offsets and keys are held in memory, never the encoded snapshot.
+    public static Encoded encode(File file, List<User> users, List<Course> courses, List<Complaint> complaints,
+                                 long epoch) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = new PortalCodec().encodeSections(new Output(channel), users, courses, complaints, epoch);
+            return new Encoded(temp, file, epoch, size);
+        }
+    }
+
+    // Atomically replaces target with source (both in the same directory) and syncs the directory
+    // so the rename itself survives a crash
+    static void replace(File source, File target) throws IOException {
+        Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel directory = FileChannel.open(target.getAbsoluteFile().getParentFile().toPath(),
+                StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // not every platform can open a directory; the rename is still atomic
+        }
+    }
+
+    // The header's section table gives every section's offset, so the sections are written in the
+    // order they can be produced: records first, then the strings they interned, then the tables
+    // and offsets collected along the way, and the header last, at the start of the file.
+    private long encodeSections(Output out, List<User> users, List<Course> courses, List<Complaint> complaints,
+                                long epoch) throws IOException {
+        IdentityHashMap<User, Integer> userIds = new IdentityHashMap<>();
+        for (User user : users) {
+            userIds.putIfAbsent(user, userIds.size());
+        }
+        // Courses removed from the catalog can still be referenced by transcripts
+        IdentityHashMap<Course, Integer> courseIds = new IdentityHashMap<>();
+        for (Course course : courses) {
+            courseIds.putIfAbsent(course, courseIds.size());
+        }
+        ArrayList<Course> allCourses = new ArrayList<>(courses);
+        for (User user : users) {
+            if (user instanceof Student) {
+                Student student = (Student) user;
+                for (Course course : student.getRegisteredCourses()) {
+                    if (courseIds.putIfAbsent(course, courseIds.size()) == null) {
+                        allCourses.add(course);
+                    }
+                }
+                student.forEachGrade((course, grade) -> {
+                    if (courseIds.putIfAbsent(course, courseIds.size()) == null) {
+                        allCourses.add(course);
+                    }
+                });
+            }
+        }
+
+        long[][] keys = new long[KEY_TABLE_COUNT][];
+        int[] keyCounts = new int[KEY_TABLE_COUNT];
+        for (int i = 0; i < KEY_TABLE_COUNT; i++) {
+            keys[i] = new long[i < COURSE_CODE_KEY ? users.size() : allCourses.size()];
+        }
+        long[] sectionOffsets = new long[SECTION_COUNT];
+        long[] sectionLengths = new long[SECTION_COUNT];
+        out.skip(headerSize());
+
+        int[] userOffsets = new int[users.size()];
+        long start = out.startSection(USERS, sectionOffsets);
+        out.putInt(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            userOffsets[i] = (int) (out.position() - start);
+            keys[EMAIL_KEY][keyCounts[EMAIL_KEY]++] = key(user.getEmail(), i);
+            if (user instanceof Student) {
+                Student student = (Student) user;
+                keys[STUDENT_ID_KEY][keyCounts[STUDENT_ID_KEY]++] = key(PortalRepository.normalize(student.getStudentID()), i);
+                out.put(student instanceof TeachingAssistant ? TEACHING_ASSISTANT : STUDENT);
+                out.putInt(intern(user.getEmail()));
+                out.putInt(intern(user.getPassword()));
+                out.putInt(intern(student.getStudentID()));
+                out.putInt(student.getSemester());
+            } else if (user instanceof Professor) {
+                keys[PROFESSOR_ID_KEY][keyCounts[PROFESSOR_ID_KEY]++] = key(((Professor) user).getProfessorID(), i);
+                out.put(PROFESSOR);
+                out.putInt(intern(user.getEmail()));
+                out.putInt(intern(user.getPassword()));
+                out.putInt(intern(((Professor) user).getProfessorID()));
+            } else {
+                out.put(ADMINISTRATOR);
+                out.putInt(intern(user.getEmail()));
+                out.putInt(intern(user.getPassword()));
+            }
+        }
+        out.endSection(USERS, sectionOffsets, sectionLengths);
+
+        int[] courseOffsets = new int[allCourses.size()];
+        start = out.startSection(COURSES, sectionOffsets);
+        out.putInt(allCourses.size());
+        for (int i = 0; i < allCourses.size(); i++) {
+            Course course = allCourses.get(i);
+            courseOffsets[i] = (int) (out.position() - start);
+            if (i < courses.size()) {
+                keys[COURSE_CODE_KEY][keyCounts[COURSE_CODE_KEY]++] = key(PortalRepository.normalize(course.getCourseCode()), i);
+                keys[COURSE_TITLE_KEY][keyCounts[COURSE_TITLE_KEY]++] = key(PortalRepository.normalize(course.getTitle()), i);
+            }
+            out.put((byte) (i < courses.size() ? 1 : 0));
+            out.putInt(intern(course.getCourseCode()));
+            out.putInt(intern(course.getTitle()));
+            out.putInt(userIds.getOrDefault(course.getProfessor(), -1));
+            out.putInt(course.getCredits());
+            String[] prerequisites = course.getPrerequisites() == null ? new String[0] : course.getPrerequisites();
+            out.putInt(prerequisites.length);
+            for (String prerequisite : prerequisites) {
+                out.putInt(intern(prerequisite));
+            }
+            out.putInt(course.getSemester());
+            out.putInt(intern(course.getSchedule()));
+            out.putInt(course.getMaxCapacity());
+            ArrayList<Integer> roster = new ArrayList<>();
+            for (Student student : course.getEnrollment().getStudentsView()) {
+                Integer id = userIds.get(student);
+                if (id != null) {
+                    roster.add(id);
+                }
+            }
+            out.putInt(roster.size());
+            for (int id : roster) {
+                out.putInt(id);
+            }
+            CourseFeedback feedback = course.getFeedback();
+            long[] histogram = feedback.getHistogram();
+            for (int rating = CourseFeedback.MIN_RATING; rating <= CourseFeedback.MAX_RATING; rating++) {
+                out.putLong(histogram[rating]);
+            }
+            int commentCount = feedback.getCommentCount();
+            out.putInt(commentCount);
+            for (int c = 0; c < commentCount; c++) {
+                out.putInt(intern(feedback.getCommenter(c)));
+                out.putInt(intern(feedback.getComment(c)));
+            }
+            ArrayList<Integer> waitlist = new ArrayList<>();
+            for (Student student : course.getEnrollment().getWaitlist()) {
+                Integer id = userIds.get(student);
+                if (id != null) {
+                    waitlist.add(id);
+                }
+            }
+            out.putInt(waitlist.size());
+            for (int id : waitlist) {
+                out.putInt(id);
+            }
+        }
+        out.endSection(COURSES, sectionOffsets, sectionLengths);
+
+        int[] studentOffsets = new int[users.size()];
+        int studentCount = 0;
+        for (User user : users) {
+            if (user instanceof Student) {
+                studentCount++;
+            }
+        }
+        start = out.startSection(STUDENT_COURSES, sectionOffsets);
+        out.putInt(studentCount);
+        // Filled from one walk of each student's grades, so the count matches the grades written
+        ArrayList<Course> gradedCourses = new ArrayList<>();
+        ArrayList<Grade> grades = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            if (!(user instanceof Student)) {
+                studentOffsets[i] = -1;
+            } else {
+                Student student = (Student) user;
+                studentOffsets[i] = (int) (out.position() - start);
+                out.putInt(userIds.get(user));
+                List<Course> registered = student.getRegisteredCourses();
+                out.putInt(registered.size());
+                for (Course course : registered) {
+                    out.putInt(courseIds.get(course));
+                }
+                gradedCourses.clear();
+                grades.clear();
+                student.forEachGrade((course, grade) -> {
+                    gradedCourses.add(course);
+                    grades.add(grade);
+                });
+                out.putInt(grades.size());
+                for (int g = 0; g < grades.size(); g++) {
+                    out.putInt(courseIds.get(gradedCourses.get(g)));
+                    out.put(grades.get(g).getCode());
+                }
+            }
+        }
+        out.endSection(STUDENT_COURSES, sectionOffsets, sectionLengths);
+
+        out.startSection(COMPLAINTS, sectionOffsets);
+        out.putInt(complaints.size());
+        for (Complaint complaint : complaints) {
+            out.putLong(complaint.getId());
+            out.putLong(complaint.getFiledAt());
+            out.putInt(intern(complaint.getSubmitterID()));
+            out.putInt(intern(complaint.getInfo()));
+            out.put((byte) complaint.getStatus().ordinal());
+            out.put((byte) complaint.getPriority().ordinal());
+        }
+        out.endSection(COMPLAINTS, sectionOffsets, sectionLengths);
+
+        // Every string is interned by now. The offset table comes first in the section, so its
+        // space is skipped and it is filled in once the strings are written.
+        int[] stringOffsets = new int[strings.size()];
+        start = out.startSection(STRINGS, sectionOffsets);
+        out.putInt(strings.size());
+        out.skip(4L * strings.size());
+        for (int i = 0; i < strings.size(); i++) {
+            byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            stringOffsets[i] = (int) (out.position() - start);
+            out.putInt(bytes.length);
+            out.put(bytes);
+        }
+        out.endSection(STRINGS, sectionOffsets, sectionLengths);
+        out.putIntsAt(start + 4, stringOffsets);
+
+        out.startSection(USER_OFFSETS, sectionOffsets);
+        out.putInt(users.size());
+        out.putInts(userOffsets);
+        out.endSection(USER_OFFSETS, sectionOffsets, sectionLengths);
+
+        out.startSection(COURSE_OFFSETS, sectionOffsets);
+        out.putInt(allCourses.size());
+        out.putInts(courseOffsets);
+        out.endSection(COURSE_OFFSETS, sectionOffsets, sectionLengths);
+
+        out.startSection(STUDENT_COURSE_OFFSETS, sectionOffsets);
+        out.putInt(users.size());
+        out.putInts(studentOffsets);
+        out.endSection(STUDENT_COURSE_OFFSETS, sectionOffsets, sectionLengths);
+
+        out.startSection(KEYS, sectionOffsets);
+        for (int i = 0; i < KEY_TABLE_COUNT; i++) {
+            long[] table = keys[i];
+            Arrays.sort(table, 0, keyCounts[i]);
+            out.putInt(keyCounts[i]);
+            for (int k = 0; k < keyCounts[i]; k++) {
+                out.putLong(table[k]);
+            }
+        }
+        out.endSection(KEYS, sectionOffsets, sectionLengths);
+
+        out.startSection(SCHEMA, sectionOffsets);
+        out.put(SCHEMA_TEXT.getBytes(StandardCharsets.UTF_8));
+        out.endSection(SCHEMA, sectionOffsets, sectionLengths);
+        long size = out.position();
+
+        ByteBuffer header = ByteBuffer.allocate(headerSize());
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(epoch).putInt(SECTION_COUNT);
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            header.putLong(sectionOffsets[i]).putLong(sectionLengths[i]);
+        }
+        out.putAt(0, header.flip());
+        return size;
+    }
+
+    private int intern(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            stringIds.put(value, id);
+            strings.add(value);
+        }
+        return id;
+    }
+
+    // Sorts by hash, then by record so that the first account with a key wins
+    static long key(String value, int record) {
+        return ((long) value.hashCode() << 32) | (record & 0xFFFFFFFFL);
+    }
+
+    static int headerSize() {
+        return 4 + 2 + 2 + 8 + 4 + SECTION_COUNT * 16;
+    }
+
+    // Buffered sequential writer over the snapshot's file channel. It tracks the file position, so
+    // sections can record where they start, and can patch earlier bytes in place.
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private long flushed; // file position of the buffer's first byte
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        long startSection(int section, long[] offsets) {
+            offsets[section] = position();
+            return offsets[section];
+        }
+
+        void endSection(int section, long[] offsets, long[] lengths) {
+            lengths[section] = position() - offsets[section];
+        }
+
+        void put(byte value) throws IOException {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        void put(byte[] value) throws IOException {
+            for (int from = 0; from < value.length; ) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), value.length - from);
+                buffer.put(value, from, length);
+                from += length;
+            }
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putInts(int[] values) throws IOException {
+            for (int value : values) {
+                putInt(value);
+            }
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        // Leaves a gap to be filled in later with putAt
+        void skip(long bytes) throws IOException {
+            flush();
+            flushed += bytes;
+        }
+
+        void putIntsAt(long position, int[] values) throws IOException {
+            flush();
+            for (int from = 0; from < values.length; ) {
+                int count = Math.min(buffer.capacity() / 4, values.length - from);
+                buffer.asIntBuffer().put(values, from, count);
+                buffer.limit(4 * count);
+                position = writeAt(position, buffer);
+                buffer.clear();
+                from += count;
+            }
+        }
+
+        void putAt(long position, ByteBuffer bytes) throws IOException {
+            flush();
+            writeAt(position, bytes);
+        }
+
+        private long writeAt(long position, ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
+            }
+            return position;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            flushed = writeAt(flushed, buffer);
+            buffer.clear();
+        }
+    }
+
+    // ---- reading ----
+
+    // Decodes the whole file into plain lists
+    public static Snapshot read(File file) throws IOException {
+        MappedStore store = MappedStore.open(file);
+        Snapshot snapshot = new Snapshot();
+        snapshot.epoch = store.getEpoch();
+        for (int i = 0; i < store.getUserCount(); i++) {
+            snapshot.users.add(store.user(i));
+        }
+        for (int i = 0; i < store.getCourseCount(); i++) {
+            Course course = store.course(i);
+            course.getEnrollment().getStudentsView(); // resolve the deferred roster now
+            course.getFeedback().getCommentCount(); // and the deferred comments
+            if (store.isInCatalog(i)) {
+                snapshot.courses.add(course);
+            }
+        }
+        snapshot.complaints.addAll(store.complaints());
+        return snapshot;
+    }
+}
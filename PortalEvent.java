@@ -0,0 +1,139 @@
+import java.time.Instant;
+
+// One journal record read back as a typed event: what happened, when, and its fields by name.
+// The journal is the portal's append-only event stream; PortalHistory keeps the segments that
+// checkpoints retire, so the full stream can be replayed for audits and materialized views.
+class PortalEvent {
+    // Record types and their fields, in the order Journal.append writes them
+    enum Type {
+        STUDENT_ADDED(Journal.ADD_STUDENT, Key.STUDENT, "email", "passwordHash", "studentID", "semester"),
+        PROFESSOR_ADDED(Journal.ADD_PROFESSOR, Key.PROFESSOR, "email", "passwordHash", "professorID"),
+        COURSE_ADDED(Journal.ADD_COURSE, Key.COURSE, "courseCode", "title", "professorID", "credits",
+                "prerequisites", "semester", "schedule", "maxCapacity"),
+        COURSE_DELETED(Journal.DELETE_COURSE, Key.COURSE, "courseCode"),
+        COURSE_UPDATED(Journal.UPDATE_COURSE, Key.COURSE, "courseCode", "credits", "prerequisites", "schedule"),
+        PROFESSOR_ASSIGNED(Journal.ASSIGN_PROFESSOR, Key.COURSE, "professorID", "courseCode"),
+        REGISTERED(Journal.REGISTER, Key.COURSE, "studentID", "courseCode"),
+        DROPPED(Journal.DROP, Key.COURSE, "studentID", "courseCode"),
+        GRADED(Journal.GRADE, Key.STUDENT, "studentID", "courseCode", "grade"),
+        SEMESTER_CHANGED(Journal.SEMESTER, Key.STUDENT, "studentID", "semester"),
+        RATED(Journal.NUMERIC_FEEDBACK, Key.COURSE, "courseCode", "studentID", "rating"),
+        COMMENTED(Journal.TEXT_FEEDBACK, Key.COURSE, "courseCode", "studentID", "comment"),
+        LEGACY_COMPLAINT(Journal.COMPLAINT, Key.COMPLAINT, "description"),
+        LEGACY_COMPLAINT_STATUS(Journal.COMPLAINT_STATUS, Key.COMPLAINT, "index", "status"),
+        WAITLIST_JOINED(Journal.JOIN_WAITLIST, Key.COURSE, "studentID", "courseCode"),
+        WAITLIST_LEFT(Journal.LEAVE_WAITLIST, Key.COURSE, "studentID", "courseCode"),
+        CAPACITY_SET(Journal.SET_CAPACITY, Key.COURSE, "courseCode", "maxCapacity"),
+        COMPLAINT_FILED(Journal.FILE_COMPLAINT, Key.COMPLAINT, "complaintID", "submitterID", "filedAt",
+                "priority", "description"),
+        COMPLAINT_UPDATED(Journal.UPDATE_COMPLAINT, Key.COMPLAINT, "complaintID", "status", "priority");
+
+        private static final Type[] BY_CODE = new Type[32];
+
+        static {
+            for (Type type : values()) {
+                BY_CODE[type.code] = type;
+            }
+        }
+
+        final byte code;
+        final Key key;
+        final String[] fields;
+
+        Type(byte code, Key key, String... fields) {
+            this.code = code;
+            this.key = key;
+            this.fields = fields;
+        }
+
+        static Type of(byte code) {
+            Type type = code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+            if (type == null) {
+                throw new IllegalArgumentException("Unknown journal record type " + code);
+            }
+            return type;
+        }
+    }
+
+    // What an event is about; replay keeps the events of one subject in order on one partition.
+    // Complaints share a single partition since legacy complaint numbers depend on filing order.
+    enum Key {
+        STUDENT,
+        PROFESSOR,
+        COURSE,
+        COMPLAINT
+    }
+
+    final Type type;
+    final long time; // milliseconds since the epoch; 0 for records written before the journal kept times
+    final long epoch; // journal segment the event was read from
+    private final String[] values;
+
+    PortalEvent(Type type, long time, long epoch, String[] values) {
+        this.type = type;
+        this.time = time;
+        this.epoch = epoch;
+        this.values = values;
+    }
+
+    // The field with the given name, or null if this type of event has no such field
+    public String get(String field) {
+        for (int i = 0; i < type.fields.length && i < values.length; i++) {
+            if (type.fields[i].equals(field)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    public int getInt(String field) {
+        return Integer.parseInt(get(field));
+    }
+
+    String[] values() {
+        return values;
+    }
+
+    // The student, professor or course the event is about, or "" for complaints
+    public String subject() {
+        switch (type.key) {
+            case STUDENT:
+                return get("studentID");
+            case PROFESSOR:
+                return get("professorID");
+            case COURSE:
+                return get("courseCode");
+            default:
+                return "";
+        }
+    }
+
+    // Which of the given number of partitions replays this event
+    int partition(int partitions) {
+        return partition(type.key, subject(), partitions);
+    }
+
+    // The same for view state, so a partition's events and the state they change end up together
+    static int partition(Key key, String subject, int partitions) {
+        return Math.floorMod(key.ordinal() * 31 + subject.hashCode(), partitions);
+    }
+
+    // True if the event concerns the student or course, for an audit trail
+    public boolean involves(String id) {
+        return id.equals(get("studentID")) || id.equals(get("courseCode")) || id.equals(get("professorID"))
+                || id.equals(get("submitterID")) || id.equals(get("complaintID"));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append(time == 0 ? "(no time)" : Instant.ofEpochMilli(time).toString()).append(' ').append(type);
+        for (int i = 0; i < values.length; i++) {
+            String name = i < type.fields.length ? type.fields[i] : "field" + i;
+            if (!name.equals("passwordHash")) {
+                text.append(' ').append(name).append('=').append(values[i]);
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,298 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// The portal's full event history. Checkpoints fold the journal into n_data.bin; instead of
+// deleting the retired segment, the journal moves it to history/n_data.<epoch>.log, and the
+// snapshot that was current when history began is kept as history/n_data.<epoch>.bin. That base
+// plus every archived segment plus the live log replays to the current state, and any prefix of
+// it to the state at that time. EventViews are rebuilt from it with partitioned parallel replay;
+// their snapshots (history/views.<epoch>.bin) let a rebuild replay only the segments after them.
+// -Dportal.history=false turns archiving off.
+// Usage: java PortalHistory audit <studentID|courseCode|professorID> [--since 2025-01-31T00:00:00Z]
+//        java PortalHistory views [--threads n] [--until 2025-01-31T00:00:00Z]
+//        java PortalHistory stats
+//        java PortalHistory bench [events] [--threads n]
+class PortalHistory {
+    static final boolean ENABLED = !"false".equals(System.getProperty("portal.history"));
+    static final File DIR = new File(Application.DATA_DIR, "history");
+
+    // Moves a retired journal segment into the history directory, named by its epoch
+    static void archive(File segment) throws IOException {
+        long epoch = Journal.read(segment, event -> {
+        });
+        if (epoch < 0) {
+            return;
+        }
+        DIR.mkdirs();
+        File target = new File(DIR, name("n_data", epoch, ".log"));
+        for (int copy = 1; target.exists(); copy++) {
+            target = new File(DIR, name("n_data", epoch, "." + copy + ".log")); // never overwrite history
+        }
+        Files.move(segment.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Before the first checkpoint that archives a segment, keeps the snapshot the history starts from
+    static void keepBase(File dataFile, long epoch) {
+        if (!ENABLED || !dataFile.exists() || base() != null) {
+            return;
+        }
+        DIR.mkdirs();
+        File base = new File(DIR, name("n_data", epoch, ".bin"));
+        try {
+            Files.createLink(base.toPath(), dataFile.toPath()); // the checkpoint renames a new file over the old one
+        } catch (IOException | UnsupportedOperationException e) {
+            try {
+                Files.copy(dataFile.toPath(), base.toPath());
+            } catch (IOException copyFailed) {
+                copyFailed.printStackTrace();
+            }
+        }
+    }
+
+    private static String name(String prefix, long epoch, String suffix) {
+        return String.format("%s.%010d%s", prefix, epoch, suffix);
+    }
+
+    static long epochOf(File file) {
+        String[] parts = file.getName().split("\\.");
+        return parts.length > 2 ? Long.parseLong(parts[1]) : -1;
+    }
+
+    // The snapshot history starts from, or null before the first archiving checkpoint
+    static File base() {
+        File[] bases = DIR.listFiles((dir, name) -> name.startsWith("n_data.") && name.endsWith(".bin"));
+        return bases == null || bases.length == 0 ? null
+                : Arrays.stream(bases).min(Comparator.comparingLong(PortalHistory::epochOf)).get();
+    }
+
+    static List<File> archivedSegments() {
+        File[] segments = DIR.listFiles((dir, name) -> name.startsWith("n_data.") && name.endsWith(".log"));
+        List<File> sorted = new ArrayList<>(segments == null ? List.of() : Arrays.asList(segments));
+        sorted.sort(Comparator.comparingLong(PortalHistory::epochOf).thenComparing(File::getName));
+        return sorted;
+    }
+
+    // The live log, then the segment a running checkpoint is writing to
+    static List<File> liveSegments() {
+        List<File> live = new ArrayList<>();
+        for (String name : new String[]{"n_data.log", "n_data.log.next"}) {
+            File segment = new File(Application.DATA_DIR, name);
+            if (segment.exists()) {
+                live.add(segment);
+            }
+        }
+        return live;
+    }
+
+    // Reads segments on up to `threads` threads and returns their events in journal order,
+    // stopping after the last event at or before `until`
+    static List<PortalEvent> read(List<File> segments, int threads, long until) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, segments.size())));
+        try {
+            List<Future<List<PortalEvent>>> reads = new ArrayList<>();
+            for (File segment : segments) {
+                reads.add(pool.submit(() -> {
+                    List<PortalEvent> events = new ArrayList<>();
+                    Journal.read(segment, events::add);
+                    return events;
+                }));
+            }
+            List<PortalEvent> all = new ArrayList<>();
+            for (Future<List<PortalEvent>> read : reads) {
+                for (PortalEvent event : read.get()) {
+                    if (event.time > until) {
+                        return all;
+                    }
+                    all.add(event);
+                }
+            }
+            return all;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // ---- command line ----
+
+    public static void main(String[] args) throws Exception {
+        String command = args.length > 0 ? args[0] : "stats";
+        int threads = Runtime.getRuntime().availableProcessors();
+        long since = 0;
+        long until = Long.MAX_VALUE;
+        List<String> positional = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--since":
+                    since = Instant.parse(args[++i]).toEpochMilli();
+                    break;
+                case "--until":
+                    until = Instant.parse(args[++i]).toEpochMilli();
+                    break;
+                default:
+                    positional.add(args[i]);
+            }
+        }
+        switch (command) {
+            case "audit":
+                if (positional.isEmpty()) {
+                    System.out.println("Usage: java PortalHistory audit <studentID|courseCode|professorID> [--since time]");
+                    return;
+                }
+                audit(positional.get(0), since, System.out);
+                break;
+            case "views":
+                views(threads, until);
+                break;
+            case "stats":
+                stats();
+                break;
+            case "bench":
+                bench(positional.isEmpty() ? 1_000_000 : Integer.parseInt(positional.get(0)), threads);
+                break;
+            default:
+                System.out.println("Unknown command " + command + "; use audit, views, stats or bench");
+        }
+    }
+
+    // Every event involving the student, course or professor, oldest first
+    static void audit(String id, long since, PrintStream out) throws Exception {
+        List<File> segments = new ArrayList<>(archivedSegments());
+        segments.addAll(liveSegments());
+        int matched = 0;
+        for (PortalEvent event : read(segments, 1, Long.MAX_VALUE)) {
+            if (event.time >= since && event.involves(id)) {
+                out.println(event);
+                matched++;
+            }
+        }
+        out.println(matched + " events for " + id);
+    }
+
+    // Rebuilds the views from the newest view snapshot (or the base snapshot) and the segments
+    // after it, saves a view snapshot at the end of the archived history, and checks the result
+    // against the portal's own state when replaying up to now
+    static void views(int threads, long until) throws Exception {
+        long start = System.nanoTime();
+        EventViews views = EventViews.latestSnapshot(until);
+        if (views == null) {
+            File base = base();
+            if (base == null) {
+                System.out.println("No history yet in " + DIR + "; it starts at the next checkpoint.");
+                return;
+            }
+            views = EventViews.of(PortalCodec.read(base));
+            System.out.println("Starting from base snapshot " + base.getName());
+        } else {
+            System.out.println("Starting from view snapshot at epoch " + views.epoch);
+        }
+        long fromEpoch = views.epoch;
+        List<File> archived = new ArrayList<>();
+        for (File segment : archivedSegments()) {
+            if (epochOf(segment) >= fromEpoch) {
+                archived.add(segment);
+            }
+        }
+        List<PortalEvent> events = read(archived, threads, until);
+        int replayed = events.size();
+        views = views.replay(events, threads);
+        if (!archived.isEmpty() && until == Long.MAX_VALUE) {
+            views.epoch = epochOf(archived.get(archived.size() - 1)) + 1;
+            views.write(new File(DIR, name("views", views.epoch, ".bin")));
+        }
+        events = read(liveSegments(), threads, until);
+        replayed += events.size();
+        views = views.replay(events, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Replayed %d events on %d thread%s in %.2f s%n", replayed, threads, threads == 1 ? "" : "s", seconds);
+        System.out.println(Json.write(views.summary()));
+        if (until == Long.MAX_VALUE) {
+            PrintStream console = System.out;
+            System.setOut(new PrintStream(PrintStream.nullOutputStream()));
+            boolean loaded;
+            try {
+                loaded = Application.loadData();
+            } finally {
+                System.setOut(console);
+            }
+            if (!loaded) {
+                System.out.println("Could not load the portal's current state to compare with.");
+                return;
+            }
+            List<String> differences = views.compareWith(Application.users, Application.courses, Application.complaints.all());
+            System.out.println(differences.isEmpty() ? "Views match the portal's current state."
+                    : differences.size() + " differences from the portal's state, e.g. " + differences.get(0));
+        }
+    }
+
+    static void stats() throws Exception {
+        File base = base();
+        System.out.println("History: " + (base == null ? "no base snapshot yet" : "base " + base.getName()) + ", "
+                + archivedSegments().size() + " archived segments");
+        List<File> segments = new ArrayList<>(archivedSegments());
+        segments.addAll(liveSegments());
+        Map<PortalEvent.Type, Integer> counts = new EnumMap<>(PortalEvent.Type.class);
+        long first = Long.MAX_VALUE;
+        long last = 0;
+        for (PortalEvent event : read(segments, Runtime.getRuntime().availableProcessors(), Long.MAX_VALUE)) {
+            counts.merge(event.type, 1, Integer::sum);
+            if (event.time > 0) {
+                first = Math.min(first, event.time);
+                last = Math.max(last, event.time);
+            }
+        }
+        counts.forEach((type, count) -> System.out.printf("%-24s %10d%n", type, count));
+        if (last > 0) {
+            System.out.println("From " + Instant.ofEpochMilli(first) + " to " + Instant.ofEpochMilli(last));
+        }
+    }
+
+    // Replays a synthetic history of registrations, drops and grades over an empty base, once on one
+    // thread and once partitioned, and reports events per second
+    static void bench(int count, int threads) throws InterruptedException {
+        Random random = new Random(42);
+        int students = Math.max(1, count / 20);
+        int courses = Math.max(1, count / 1000);
+        List<PortalEvent> events = new ArrayList<>(count);
+        long time = System.currentTimeMillis() - count;
+        for (int c = 0; c < courses && events.size() < count; c++) {
+            events.add(new PortalEvent(PortalEvent.Type.COURSE_ADDED, time++, 1, new String[]{"C" + c, "Course " + c,
+                    "P0", "4", "", "1", "Mon 09:00-10:00", "100000"}));
+        }
+        while (events.size() < count) {
+            String student = "S" + random.nextInt(students);
+            String course = "C" + random.nextInt(courses);
+            int kind = random.nextInt(10);
+            PortalEvent.Type type = kind < 6 ? PortalEvent.Type.REGISTERED
+                    : kind < 8 ? PortalEvent.Type.DROPPED : PortalEvent.Type.GRADED;
+            String[] values = type == PortalEvent.Type.GRADED ? new String[]{student, course, "B"}
+                    : new String[]{student, course};
+            events.add(new PortalEvent(type, time++, 1, values));
+        }
+        for (int run = 0; run < 3; run++) {
+            for (int t : new int[]{1, threads}) {
+                long start = System.nanoTime();
+                EventViews views = new EventViews().replay(events, t);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%,d events on %d thread%s: %.3f s (%,.0f events/s), %d enrollments%n", count, t,
+                        t == 1 ? "" : "s", seconds, count / seconds, views.enrollmentCount());
+            }
+        }
+    }
+}
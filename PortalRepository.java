@@ -0,0 +1,195 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+// Hash indexes over Application.users and Application.courses so that logins and the
+// "enter course code / student ID" lookups do not scan the whole list.
+// Kept current by Application.addUser, addToCatalog and removeFromCatalog.
+// Catalog courses are also partitioned by semester, each partition served as a read-only view.
+// Maps are concurrent so server threads can read (and fill from the store) while holding only the read lock.
+// With a MappedStore attached, misses fall through to the store's on-disk key tables.
+class PortalRepository {
+    private final ConcurrentHashMap<String, Student> studentsByEmail = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Professor> professorsByEmail = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Administrator> administratorsByEmail = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Student> studentsByID = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Professor> professorsByID = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Course> coursesByCode = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Course> coursesByTitle = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, CopyOnWriteArrayList<Course>> coursesBySemester = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, List<Course>> semesterViews = new ConcurrentHashMap<>();
+    private volatile boolean semestersIndexed;
+    private volatile MappedStore store;
+
+    // Serves lookups from the mapped file instead of indexing every record up front
+    public void attach(MappedStore store) {
+        rebuild(List.of(), List.of());
+        this.store = store;
+        semestersIndexed = false; // partitioned on first use, which decodes the catalog once
+    }
+
+    // Drops every index and re-indexes the given lists (after loading a snapshot)
+    public void rebuild(List<User> users, List<Course> courses) {
+        store = null;
+        studentsByEmail.clear();
+        professorsByEmail.clear();
+        administratorsByEmail.clear();
+        studentsByID.clear();
+        professorsByID.clear();
+        coursesByCode.clear();
+        coursesByTitle.clear();
+        for (User user : users) {
+            index(user);
+        }
+        for (Course course : courses) {
+            coursesByCode.putIfAbsent(normalize(course.getCourseCode()), course);
+            coursesByTitle.putIfAbsent(normalize(course.getTitle()), course);
+        }
+        indexSemesters(courses);
+    }
+
+    private synchronized void indexSemesters(List<Course> courses) {
+        HashMap<Integer, List<Course>> partitions = new HashMap<>();
+        for (Course course : courses) {
+            partitions.computeIfAbsent(course.getSemester(), k -> new ArrayList<>()).add(course);
+        }
+        coursesBySemester.clear();
+        semesterViews.clear();
+        partitions.forEach((semester, partition) -> semester(semester).addAll(partition));
+        semestersIndexed = true;
+    }
+
+    private CopyOnWriteArrayList<Course> semester(int semester) {
+        return coursesBySemester.computeIfAbsent(semester, k -> {
+            CopyOnWriteArrayList<Course> partition = new CopyOnWriteArrayList<>();
+            semesterViews.put(k, Collections.unmodifiableList(partition));
+            return partition;
+        });
+    }
+
+    // The first account registered under a key wins, like the linear scans did
+    public void index(User user) {
+        if (user instanceof Student) {
+            Student student = (Student) user;
+            studentsByEmail.putIfAbsent(student.getEmail(), student);
+            studentsByID.putIfAbsent(normalize(student.getStudentID()), student);
+        } else if (user instanceof Professor) {
+            Professor professor = (Professor) user;
+            professorsByEmail.putIfAbsent(professor.getEmail(), professor);
+            professorsByID.putIfAbsent(professor.getProfessorID(), professor);
+        } else if (user instanceof Administrator) {
+            administratorsByEmail.putIfAbsent(user.getEmail(), (Administrator) user);
+        }
+    }
+
+    public void index(Course course) {
+        coursesByCode.putIfAbsent(normalize(course.getCourseCode()), course);
+        coursesByTitle.putIfAbsent(normalize(course.getTitle()), course);
+        if (semestersIndexed) {
+            semester(course.getSemester()).add(course);
+        }
+    }
+
+    // Removes a deleted course; a duplicate code or title further down the catalog takes its place
+    public void unindex(Course course, List<Course> remaining) {
+        String code = normalize(course.getCourseCode());
+        String title = normalize(course.getTitle());
+        CopyOnWriteArrayList<Course> partition = coursesBySemester.get(course.getSemester());
+        if (partition != null) {
+            partition.remove(course);
+        }
+        boolean ownsCode = coursesByCode.remove(code, course);
+        boolean ownsTitle = coursesByTitle.remove(title, course);
+        if (!ownsCode && !ownsTitle || store != null) {
+            return; // a mapped store resolves duplicates on the next lookup
+        }
+        for (Course other : remaining) {
+            if (ownsCode && normalize(other.getCourseCode()).equals(code)) {
+                coursesByCode.putIfAbsent(code, other);
+            }
+            if (ownsTitle && normalize(other.getTitle()).equals(title)) {
+                coursesByTitle.putIfAbsent(title, other);
+            }
+        }
+    }
+
+    // Catalog courses offered in a semester, in catalog order; a live view, nothing is copied
+    public List<Course> coursesInSemester(int semester) {
+        if (!semestersIndexed) {
+            synchronized (this) {
+                if (!semestersIndexed) {
+                    indexSemesters(Application.courses);
+                }
+            }
+        }
+        List<Course> view = semesterViews.get(semester);
+        return view == null ? Collections.emptyList() : view;
+    }
+
+    // Email lookups are the login path, so their latency is recorded
+    public Student studentByEmail(String email) {
+        long start = Metrics.start();
+        Student student = lookup(studentsByEmail, email, key -> (Student) store.userByEmail(key, Student.class));
+        Metrics.LOGIN_LOOKUP_TIME.recordSince(start);
+        return student;
+    }
+
+    public Professor professorByEmail(String email) {
+        long start = Metrics.start();
+        Professor professor = lookup(professorsByEmail, email, key -> (Professor) store.userByEmail(key, Professor.class));
+        Metrics.LOGIN_LOOKUP_TIME.recordSince(start);
+        return professor;
+    }
+
+    public Administrator administratorByEmail(String email) {
+        long start = Metrics.start();
+        Administrator administrator = lookup(administratorsByEmail, email,
+                key -> (Administrator) store.userByEmail(key, Administrator.class));
+        Metrics.LOGIN_LOOKUP_TIME.recordSince(start);
+        return administrator;
+    }
+
+    public Student studentByID(String studentID) {
+        return studentID == null ? null : lookup(studentsByID, normalize(studentID), key -> store.studentByID(key));
+    }
+
+    public Professor professorByID(String professorID) {
+        return lookup(professorsByID, professorID, key -> store.professorByID(key));
+    }
+
+    public Course courseByCode(String code) {
+        return code == null ? null : lookup(coursesByCode, normalize(code), key -> inCatalog(store.courseByCode(key)));
+    }
+
+    public Course courseByTitle(String title) {
+        return title == null ? null : lookup(coursesByTitle, normalize(title), key -> inCatalog(store.courseByTitle(key)));
+    }
+
+    private <T> T lookup(ConcurrentHashMap<String, T> index, String key, Function<String, T> fallback) {
+        if (key == null) {
+            return null;
+        }
+        T value = index.get(key);
+        if (value == null && store != null) {
+            value = fallback.apply(key);
+            if (value != null) {
+                index.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    // The file still lists courses deleted since it was written
+    private static Course inCatalog(Course course) {
+        return course != null && Application.courses.contains(course) ? course : null;
+    }
+
+    static String normalize(String key) {
+        return key.trim().toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,621 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+// HTTP/JSON front end over the same state the console menus use. Start with
+// "java Application --server [port]". Every request runs on its own virtual thread when the JDK
+// has them (21+), otherwise on a bounded pool. Requests read the portal under
+// Application.stateLock's read lock and mutate it under the write lock, except registration and
+// drop, which go through the lock-free EnrollmentEngine (or to the EnrollmentShards when
+// -Dportal.shards is set), and transcripts, which read the student's immutable Transcript. After releasing the lock a mutating request waits for
+// Application.flush(), so it is acknowledged only once durable, and concurrent requests share the
+// background writer's journal fsync.
+class PortalServer {
+    static final int DEFAULT_PORT = 8080;
+    static final int POOL_THREADS = Integer.getInteger("portal.serverThreads", 256);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final SessionManager sessions = new SessionManager();
+    // Set with -Dportal.shards: registration and drop go to the enrollment shards instead of this node
+    private final ShardCoordinator cluster = ShardCoordinator.fromProperty();
+    // Sharded mode: one registration or drop per student at a time, so their outcomes are mirrored
+    // into this node's state in the order the shards applied them
+    private final Map<String, Object> shardLocks = new ConcurrentHashMap<>();
+
+    public PortalServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        executor = newExecutor();
+        server.setExecutor(executor);
+        route("/signup", "POST", null, this::signUp);
+        route("/login", "POST", null, this::login);
+        route("/logout", "POST", User.class, this::logout);
+        route("/courses", "GET", null, this::listCourses);
+        route("/register", "POST", Student.class, this::register);
+        route("/drop", "POST", Student.class, this::drop);
+        route("/transcript", "GET", Student.class, this::transcript);
+        route("/waitlist", "GET", Student.class, this::waitlistPosition);
+        route("/notifications", "GET", Student.class, this::notifications);
+        route("/grades", "POST", User.class, this::assignGrade);
+        route("/feedback", "POST", Student.class, this::giveFeedback);
+        route("/feedback/summary", "GET", Professor.class, this::feedbackSummary);
+        route("/complaints", "POST", Student.class, this::submitComplaint);
+        route("/complaints/all", "GET", Administrator.class, this::listComplaints);
+        route("/complaints/next", "POST", Administrator.class, this::takeNextComplaint);
+        route("/complaints/status", "POST", Administrator.class, this::updateComplaint);
+        route("/admin/batch", "POST", Administrator.class, this::runBatch);
+        route("/metrics", "GET", Administrator.class, request -> Metrics.snapshot());
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Portal server listening on port " + server.getAddress().getPort());
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() when running on 21+, looked up reflectively
+    // so the portal still compiles and runs on 17
+    static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(POOL_THREADS);
+        }
+    }
+
+    // ---- endpoints ----
+
+    private Object signUp(Request request) throws ApiException {
+        String email = request.string("email");
+        String password = request.string("password");
+        String studentID = request.string("studentID");
+        int semester = request.integer("semester");
+        String hash = PasswordHasher.hash(password); // before taking the lock
+        Lock lock = Application.stateLock.writeLock();
+        lock.lock();
+        try {
+            if (Application.repository.studentByEmail(email) != null || Application.findStudentByID(studentID) != null) {
+                throw new ApiException(409, "A student with this email or ID already exists");
+            }
+            Application.addUser(new Student(email, hash, studentID, semester));
+            Application.journal.append(Journal.ADD_STUDENT, email, hash, studentID, Integer.toString(semester));
+        } finally {
+            lock.unlock();
+        }
+        Application.flush();
+        return Json.object("studentID", studentID);
+    }
+
+    private Object login(Request request) throws ApiException {
+        SessionManager.Session session = sessions.login(request.string("email"), request.string("password"));
+        if (session == null) {
+            throw new ApiException(401, "Invalid login credentials");
+        }
+        return Json.object("token", session.token, "role", session.user.getClass().getSimpleName(),
+                "expiresInSeconds", SessionManager.TTL_MILLIS / 1000);
+    }
+
+    private Object logout(Request request) {
+        sessions.logout(request.token);
+        return Json.object("loggedOut", true);
+    }
+
+    private Object listCourses(Request request) throws ApiException {
+        int semester = request.integer("semester");
+        int page = request.has("page") ? request.integer("page") : 1;
+        List<Object> listed = new ArrayList<>();
+        int total;
+        Lock lock = Application.stateLock.readLock();
+        lock.lock();
+        try {
+            List<Course> offered = Application.getCoursesInSemester(semester);
+            total = offered.size();
+            int from = Math.max(0, page - 1) * Student.COURSES_PER_PAGE;
+            for (int i = from; i < Math.min(from + Student.COURSES_PER_PAGE, total); i++) {
+                listed.add(course(offered.get(i)));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return Json.object("semester", semester, "page", page, "total", total, "courses", listed);
+    }
+
+    // A full course puts the student on its waitlist; they are told through /notifications when promoted.
+    // Sharded mode has no waitlists: a full course is reported as COURSE_FULL and the student is not queued.
+    private Object register(Request request) throws ApiException {
+        Student student = (Student) request.user;
+        if (cluster != null) {
+            return registerOnShards(student, request.string("courseCode"));
+        }
+        EnrollmentEngine.Result result;
+        boolean waitlisted = false;
+        Lock lock = Application.stateLock.readLock();
+        lock.lock();
+        try {
+            Course course = course(request.string("courseCode"));
+            result = student.enroll(course);
+            if (result == EnrollmentEngine.Result.COURSE_FULL) {
+                waitlisted = student.joinWaitlist(course) || course.getEnrollment().isWaitlisted(student);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (result == EnrollmentEngine.Result.REGISTERED || waitlisted) {
+            Application.flush();
+        }
+        return Json.object("result", result.name(), "waitlisted", waitlisted);
+    }
+
+    private Object waitlistPosition(Request request) throws ApiException {
+        Lock lock = Application.stateLock.readLock();
+        lock.lock();
+        try {
+            Course course = course(request.string("courseCode"));
+            return Json.object("courseCode", course.getCourseCode(),
+                    "position", course.getEnrollment().waitlistPosition((Student) request.user));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Object notifications(Request request) {
+        return Json.object("notifications", ((Student) request.user).takeNotifications());
+    }
+
+    private Object drop(Request request) throws ApiException {
+        if (Student.isDropDeadlinePassed()) {
+            throw new ApiException(409, "The drop deadline has passed");
+        }
+        if (cluster != null) {
+            return dropOnShards((Student) request.user, request.string("courseCode"));
+        }
+        boolean dropped;
+        boolean leftWaitlist = false;
+        Lock lock = Application.stateLock.readLock();
+        lock.lock();
+        try {
+            Course course = course(request.string("courseCode"));
+            dropped = ((Student) request.user).withdraw(course);
+            if (!dropped) {
+                leftWaitlist = ((Student) request.user).leaveWaitlist(course);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (dropped || leftWaitlist) {
+            Application.flush();
+        }
+        return Json.object("dropped", dropped, "leftWaitlist", leftWaitlist);
+    }
+
+    // Prerequisites are checked here, where the grades are live; the shards decide the rest. A
+    // registration they report, including one an earlier attempt made before this node could record
+    // it, is mirrored here and journaled before the reply.
+    private Object registerOnShards(Student student, String code) throws ApiException {
+        synchronized (shardLocks.computeIfAbsent(student.getStudentID(), id -> new Object())) {
+            EnrollmentEngine.Result result;
+            boolean eligible;
+            Lock check = Application.stateLock.readLock();
+            check.lock();
+            try {
+                Course course = course(code);
+                eligible = student.isRegisteredFor(course) || Application.prerequisites.isEligible(student, course);
+            } finally {
+                check.unlock();
+            }
+            if (!eligible) {
+                return Json.object("result", EnrollmentEngine.Result.PREREQUISITES_NOT_MET.name(), "waitlisted", false,
+                        "shard", cluster.getRing().shardOfCourse(code));
+            }
+            try {
+                result = cluster.register(student.getStudentID(), code);
+            } catch (IOException e) {
+                throw new ApiException(503, "Enrollment shard unavailable: " + e.getMessage());
+            }
+            if (result == EnrollmentEngine.Result.REGISTERED || result == EnrollmentEngine.Result.ALREADY_REGISTERED) {
+                Lock lock = Application.stateLock.readLock();
+                lock.lock();
+                try {
+                    EnrollmentEngine.mirrorRegistration(student, course(code));
+                } finally {
+                    lock.unlock();
+                }
+                Application.flush();
+            }
+            return Json.object("result", result.name(), "waitlisted", false,
+                    "shard", cluster.getRing().shardOfCourse(code));
+        }
+    }
+
+    // The local registration goes too when the shard no longer has the seat, so a drop also repairs
+    // a registration left here by a drop that failed after the shard applied it
+    private Object dropOnShards(Student student, String code) throws ApiException {
+        synchronized (shardLocks.computeIfAbsent(student.getStudentID(), id -> new Object())) {
+            boolean dropped;
+            try {
+                dropped = cluster.drop(student.getStudentID(), code);
+            } catch (IOException e) {
+                throw new ApiException(503, "Enrollment shard unavailable: " + e.getMessage());
+            }
+            boolean mirrored;
+            Lock lock = Application.stateLock.readLock();
+            lock.lock();
+            try {
+                Course course = Application.findCourseByCode(code);
+                mirrored = course != null && EnrollmentEngine.drop(student, course);
+            } finally {
+                lock.unlock();
+            }
+            if (mirrored) {
+                Application.flush();
+            }
+            return Json.object("dropped", dropped, "leftWaitlist", false);
+        }
+    }
+
+    private Object transcript(Request request) {
+        Student student = (Student) request.user;
+        Transcript transcript = student.getTranscript(); // immutable, so no lock against writers or checkpoints
+        List<Object> courses = new ArrayList<>();
+        for (Course course : transcript.getCourses()) {
+            Grade grade = transcript.getGrade(course);
+            courses.add(Json.object("courseCode", course.getCourseCode(), "title", course.getTitle(),
+                    "semester", course.getSemester(), "grade", grade == null ? null : grade.toString()));
+        }
+        return Json.object("studentID", student.getStudentID(), "gpa", transcript.getGpa(), "courses", courses);
+    }
+
+    // TAs may grade any course, professors only their own; same rule as the grade import menus
+    private Object assignGrade(Request request) throws ApiException {
+        if (!(request.user instanceof TeachingAssistant) && !(request.user instanceof Professor)) {
+            throw new ApiException(403, "Only teaching assistants and professors can assign grades");
+        }
+        Grade grade = Grade.fromLabel(request.string("grade"));
+        if (grade == null) {
+            throw new ApiException(400, "Invalid grade: " + request.string("grade"));
+        }
+        Lock lock = Application.stateLock.writeLock();
+        lock.lock();
+        try {
+            Course course = course(request.string("courseCode"));
+            Student student = Application.findStudentByID(request.string("studentID"));
+            if (request.user instanceof Professor && course.getProfessor() != request.user) {
+                throw new ApiException(403, "Not allowed to grade " + course.getCourseCode());
+            }
+            if (student == null || !Application.getEnrolledStudents(course).contains(student)) {
+                throw new ApiException(404, request.string("studentID") + " is not enrolled in " + course.getCourseCode());
+            }
+            student.setGrades(grade, course);
+        } finally {
+            lock.unlock();
+        }
+        Application.flush();
+        return Json.object("grade", grade.toString());
+    }
+
+    private Object giveFeedback(Request request) throws ApiException {
+        Student student = (Student) request.user;
+        Lock lock = Application.stateLock.writeLock();
+        lock.lock();
+        try {
+            Course course = course(request.string("courseCode"));
+            if (request.has("rating")) {
+                int rating = request.integer("rating");
+                if (rating < 1 || rating > 5) {
+                    throw new ApiException(400, "Rating must be between 1 and 5");
+                }
+                course.addFeedback(new Feedback<>(rating, student));
+            } else {
+                course.addFeedback(new Feedback<>(request.string("comment"), student));
+            }
+        } finally {
+            lock.unlock();
+        }
+        Application.flush();
+        return Json.object("submitted", true);
+    }
+
+    // Rating statistics are O(1); comments come one page at a time
+    private Object feedbackSummary(Request request) throws ApiException {
+        int page = request.has("page") ? request.integer("page") : 1;
+        Lock lock = Application.stateLock.readLock();
+        lock.lock();
+        try {
+            Course course = course(request.string("courseCode"));
+            CourseFeedback feedback = course.getFeedback();
+            long[] histogram = feedback.getHistogram();
+            List<Long> counts = new ArrayList<>();
+            for (int rating = CourseFeedback.MIN_RATING; rating <= CourseFeedback.MAX_RATING; rating++) {
+                counts.add(histogram[rating]);
+            }
+            return Json.object("courseCode", course.getCourseCode(), "ratings", feedback.getRatingCount(),
+                    "average", feedback.getAverageRating(), "histogram", counts,
+                    "comments", feedback.getCommentCount(), "page", page,
+                    "entries", feedback.getComments(page, Course.COMMENTS_PER_PAGE));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Object submitComplaint(Request request) throws ApiException {
+        String description = request.string("description");
+        Complaint.Priority priority = request.has("priority")
+                ? parse(Complaint.Priority.class, request.string("priority")) : Complaint.Priority.NORMAL;
+        Complaint complaint;
+        Lock lock = Application.stateLock.writeLock();
+        lock.lock();
+        try {
+            complaint = ((Student) request.user).fileComplaint(description, priority);
+        } finally {
+            lock.unlock();
+        }
+        Application.flush();
+        return Json.object("submitted", true, "id", complaint.getId());
+    }
+
+    // One page of the complaints in a status (PENDING unless given), oldest first
+    private Object listComplaints(Request request) throws ApiException {
+        Complaint.Status status = request.has("status")
+                ? parse(Complaint.Status.class, request.string("status")) : Complaint.Status.PENDING;
+        int page = request.has("page") ? request.integer("page") : 1;
+        List<Object> listed = new ArrayList<>();
+        int count;
+        Lock lock = Application.stateLock.readLock();
+        lock.lock();
+        try {
+            count = Application.complaints.count(status);
+            for (Complaint complaint : Application.complaints.page(status, page, Administrator.COMPLAINTS_PER_PAGE)) {
+                listed.add(json(complaint));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return Json.object("status", status.name(), "count", count, "page", page, "complaints", listed);
+    }
+
+    private Object takeNextComplaint(Request request) {
+        Complaint next;
+        Lock lock = Application.stateLock.writeLock();
+        lock.lock();
+        try {
+            next = Application.complaints.takeNext();
+        } finally {
+            lock.unlock();
+        }
+        if (next == null) {
+            return Json.object("complaint", null);
+        }
+        Application.flush();
+        return Json.object("complaint", json(next));
+    }
+
+    private Object updateComplaint(Request request) throws ApiException {
+        long id = request.integer("id");
+        Lock lock = Application.stateLock.writeLock();
+        lock.lock();
+        try {
+            Complaint complaint = Application.complaints.get(id);
+            if (complaint == null) {
+                throw new ApiException(404, "No complaint " + id);
+            }
+            if (request.has("priority")) {
+                Application.complaints.updatePriority(complaint, parse(Complaint.Priority.class, request.string("priority")));
+            }
+            if (request.has("status")) {
+                Application.complaints.updateStatus(complaint, parse(Complaint.Status.class, request.string("status")));
+            }
+        } finally {
+            lock.unlock();
+        }
+        Application.flush();
+        return Json.object("updated", true);
+    }
+
+    // "commands" is the batch as one string of lines or as an array of lines; "partial": true applies
+    // the valid commands even if others are rejected. AdminBatch takes the write lock itself.
+    private Object runBatch(Request request) throws ApiException {
+        Object commands = request.fields.get("commands");
+        List<String> lines = new ArrayList<>();
+        if (commands instanceof List) {
+            for (Object line : (List<?>) commands) {
+                lines.add(String.valueOf(line));
+            }
+        } else {
+            lines = request.string("commands").lines().toList();
+        }
+        boolean partial = request.has("partial") && Boolean.parseBoolean(request.fields.get("partial").toString());
+        AdminBatch.Result result = AdminBatch.run(lines, partial);
+        Application.flush();
+        List<Object> items = new ArrayList<>(result.items.size());
+        for (AdminBatch.Item item : result.items) {
+            items.add(item.error == null
+                    ? Json.object("line", item.line, "command", item.command, "status", item.status.name())
+                    : Json.object("line", item.line, "command", item.command, "status", item.status.name(), "error", item.error));
+        }
+        return Json.object("applied", result.applied, "rejected", result.rejected, "items", items);
+    }
+
+    private static Map<String, Object> json(Complaint complaint) {
+        return Json.object("id", complaint.getId(), "submitter", complaint.getSubmitterID(),
+                "filedAt", complaint.getFiledAt(), "status", complaint.getStatus().name(),
+                "priority", complaint.getPriority().name(), "description", complaint.getInfo());
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String value) throws ApiException {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Unknown " + type.getSimpleName().toLowerCase(Locale.ROOT) + ": " + value);
+        }
+    }
+
+    private static Course course(String code) throws ApiException {
+        Course course = Application.findCourseByCode(code);
+        if (course == null) {
+            throw new ApiException(404, "Course with code " + code + " not found");
+        }
+        return course;
+    }
+
+    private static Map<String, Object> course(Course course) {
+        return Json.object("courseCode", course.getCourseCode(), "title", course.getTitle(),
+                "credits", course.getCredits(), "schedule", course.getSchedule(),
+                "seatsTaken", course.getEnrollment().getSeatsTaken(), "capacity", course.getMaxCapacity());
+    }
+
+    // ---- plumbing ----
+
+    private interface Endpoint {
+        Object handle(Request request) throws ApiException;
+    }
+
+    private static class ApiException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    // Query parameters and JSON body fields, looked up by name
+    private static class Request {
+        final Map<String, Object> fields = new HashMap<>();
+        final String token;
+        final User user;
+
+        Request(Map<String, Object> fields, String token, User user) {
+            this.fields.putAll(fields);
+            this.token = token;
+            this.user = user;
+        }
+
+        boolean has(String name) {
+            return fields.get(name) != null;
+        }
+
+        String string(String name) throws ApiException {
+            Object value = fields.get(name);
+            if (value == null || value.toString().isBlank()) {
+                throw new ApiException(400, "Missing field: " + name);
+            }
+            return value.toString();
+        }
+
+        int integer(String name) throws ApiException {
+            Object value = fields.get(name);
+            if (value instanceof Number) {
+                return ((Number) value).intValue();
+            }
+            try {
+                return Integer.parseInt(string(name).trim());
+            } catch (NumberFormatException e) {
+                throw new ApiException(400, "Not a number: " + name);
+            }
+        }
+    }
+
+    private void route(String path, String method, Class<? extends User> role, Endpoint endpoint) {
+        Metrics.Histogram latency = Metrics.histogram("http" + path, method + " " + path + " handling time");
+        server.createContext(path, exchange -> {
+            long start = Metrics.start();
+            int status = 200;
+            Object response;
+            try {
+                if (!exchange.getRequestURI().getPath().equals(path)) {
+                    throw new ApiException(404, "Not found");
+                }
+                if (!exchange.getRequestMethod().equalsIgnoreCase(method)) {
+                    throw new ApiException(405, method + " only");
+                }
+                String token = bearerToken(exchange);
+                User user = sessions.resolve(token);
+                if (role != null && user == null) {
+                    throw new ApiException(401, "Log in first");
+                }
+                if (role != null && !role.isInstance(user)) {
+                    throw new ApiException(403, "Not allowed for " + user.getClass().getSimpleName());
+                }
+                response = endpoint.handle(new Request(fields(exchange), token, user));
+            } catch (ApiException e) {
+                status = e.status;
+                response = Json.object("error", e.getMessage());
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                response = Json.object("error", e.getMessage());
+            } catch (UncheckedIOException e) {
+                // flush() failed: the change is in memory but not known to be on disk
+                status = 503;
+                response = Json.object("error", "The change could not be saved; try again later");
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                status = 500;
+                response = Json.object("error", "Internal error");
+            }
+            byte[] body = Json.write(response).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            if (status >= 400) {
+                Metrics.HTTP_ERRORS.increment();
+            }
+            latency.recordSince(start);
+        });
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        return header != null && header.startsWith("Bearer ") ? header.substring(7).trim() : null;
+    }
+
+    static Map<String, Object> fields(HttpExchange exchange) throws IOException {
+        Map<String, Object> fields = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    fields.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        try (InputStream in = exchange.getRequestBody()) {
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            if (!body.isBlank()) {
+                fields.putAll(Json.parseObject(body));
+            }
+        }
+        return fields;
+    }
+}
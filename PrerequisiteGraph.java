@@ -0,0 +1,204 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+
+// Prerequisite DAG over the catalog. Course codes get stable integer IDs, each course keeps
+// its prerequisites as a bitset, and each student caches the bitset of courses they passed,
+// so an eligibility check is a handful of word ANDs. Rebuilt lazily after catalog changes.
+// The catalog commands refuse prerequisites that would close a cycle (cycleThrough); getCycle
+// reports any that reached the catalog anyway, e.g. from an older data file.
+class PrerequisiteGraph {
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private long[][] masks = new long[0][]; // by course ID, null when a course has no prerequisites
+    private List<String> cycle = Collections.emptyList();
+    private volatile boolean stale = true;
+
+    // IDs are never reused, so bitsets built before a rebuild stay valid
+    public synchronized int idOf(String code) {
+        String key = PortalRepository.normalize(code);
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = ids.size();
+            ids.put(key, id);
+        }
+        return id;
+    }
+
+    // Called whenever a course is added, removed or has its prerequisites changed
+    public void invalidate() {
+        stale = true;
+    }
+
+    // Codes of the courses that sit on or behind a prerequisite cycle, empty if the graph is a DAG
+    public synchronized List<String> getCycle() {
+        ensureBuilt();
+        return cycle;
+    }
+
+    public boolean isEligible(Student student, Course course) {
+        long[] required = mask(course);
+        if (required == null) {
+            return true;
+        }
+        long[] passed = student.getPassedCourses();
+        for (int word = 0; word < required.length; word++) {
+            long have = word < passed.length ? passed[word] : 0L;
+            if ((required[word] & ~have) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // One pass over every student, e.g. "who can take CS201 next semester"
+    public List<Student> eligibleStudents(Course course, List<User> users) {
+        List<Student> eligible = new ArrayList<>();
+        for (User user : users) {
+            if (user instanceof Student && isEligible((Student) user, course)) {
+                eligible.add((Student) user);
+            }
+        }
+        return eligible;
+    }
+
+    // Registered courses passed with at least a D, the rule prerequisitesMet always used
+    public long[] passedCourses(Student student) {
+        long[] words = new long[0];
+        for (Course course : student.getRegisteredCourses()) {
+            Grade grade = student.getGrade(course);
+            if (grade != null && grade.getPoints() >= Grade.D.getPoints()) {
+                int id = idOf(course.getCourseCode());
+                if (id / 64 >= words.length) {
+                    words = Arrays.copyOf(words, id / 64 + 1);
+                }
+                words[id / 64] |= 1L << (id % 64);
+            }
+        }
+        return words;
+    }
+
+    private synchronized long[] mask(Course course) {
+        ensureBuilt();
+        int id = idOf(course.getCourseCode());
+        return id < masks.length ? masks[id] : null;
+    }
+
+    private void ensureBuilt() {
+        if (stale) {
+            rebuild(Application.courses);
+        }
+    }
+
+    private synchronized void rebuild(List<Course> catalog) {
+        stale = false;
+        HashMap<Integer, List<Integer>> dependents = new HashMap<>();
+        HashMap<Integer, Integer> inDegree = new HashMap<>();
+        long[][] built = new long[0][];
+        for (Course course : catalog) {
+            int id = idOf(course.getCourseCode());
+            inDegree.putIfAbsent(id, 0);
+            if (id < built.length && built[id] != null) {
+                continue; // duplicate code, the first course wins
+            }
+            long[] mask = null;
+            if (course.getPrerequisites() != null) {
+                for (String prerequisite : course.getPrerequisites()) {
+                    if (prerequisite == null || prerequisite.isBlank()) {
+                        continue;
+                    }
+                    int required = idOf(prerequisite);
+                    if (mask == null) {
+                        mask = new long[required / 64 + 1];
+                    } else if (required / 64 >= mask.length) {
+                        mask = Arrays.copyOf(mask, required / 64 + 1);
+                    }
+                    mask[required / 64] |= 1L << (required % 64);
+                    dependents.computeIfAbsent(required, k -> new ArrayList<>()).add(id);
+                    inDegree.merge(id, 1, Integer::sum);
+                }
+            }
+            if (id >= built.length) {
+                built = Arrays.copyOf(built, Math.max(id + 1, built.length * 2));
+            }
+            built[id] = mask;
+        }
+        masks = built;
+
+        // Kahn's algorithm: whatever never reaches in-degree zero is on or behind a cycle
+        ArrayDeque<Integer> ready = new ArrayDeque<>();
+        for (int required : dependents.keySet()) {
+            inDegree.putIfAbsent(required, 0);
+        }
+        inDegree.forEach((id, degree) -> {
+            if (degree == 0) {
+                ready.add(id);
+            }
+        });
+        while (!ready.isEmpty()) {
+            for (int dependent : dependents.getOrDefault(ready.poll(), Collections.emptyList())) {
+                if (inDegree.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        List<String> cyclic = new ArrayList<>();
+        ids.forEach((code, id) -> {
+            if (inDegree.getOrDefault(id, 0) > 0) {
+                cyclic.add(code);
+            }
+        });
+        Collections.sort(cyclic);
+        cycle = cyclic;
+    }
+
+    // The cycle that giving course code these prerequisites would close, as the codes along it from
+    // code back to code, each requiring the next; empty if there is none. prerequisitesOf gives the
+    // prerequisites of any other course, or null for one that does not exist. The commands that
+    // set prerequisites check this first and refuse a cycle, so the catalog stays a DAG.
+    static List<String> cycleThrough(String code, String[] prerequisites, Function<String, String[]> prerequisitesOf) {
+        String target = PortalRepository.normalize(code);
+        HashMap<String, String> requiredBy = new HashMap<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        enqueue(target, prerequisites, requiredBy, queue);
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            if (current.equals(target)) {
+                List<String> path = new ArrayList<>();
+                path.add(target);
+                for (String step = requiredBy.get(target); !step.equals(target); step = requiredBy.get(step)) {
+                    path.add(step);
+                }
+                path.add(target);
+                Collections.reverse(path);
+                return path;
+            }
+            enqueue(current, prerequisitesOf.apply(current), requiredBy, queue);
+        }
+        return Collections.emptyList();
+    }
+
+    // cycleThrough against the catalog as it stands
+    static List<String> cycleThrough(String code, String[] prerequisites) {
+        return cycleThrough(code, prerequisites, other -> {
+            Course course = Application.findCourseByCode(other);
+            return course == null ? null : course.getPrerequisites();
+        });
+    }
+
+    private static void enqueue(String course, String[] prerequisites, HashMap<String, String> requiredBy,
+            ArrayDeque<String> queue) {
+        if (prerequisites == null) {
+            return;
+        }
+        for (String prerequisite : prerequisites) {
+            if (prerequisite != null && !prerequisite.isBlank()
+                    && requiredBy.putIfAbsent(PortalRepository.normalize(prerequisite), course) == null) {
+                queue.add(PortalRepository.normalize(prerequisite));
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+// Logged-in sessions for the server. The password hash is checked once at login; after that a
+// request carries an opaque random token that resolves to its user with one map lookup.
+// Sessions expire after -Dportal.sessionMinutes (default 30) without a request.
+class SessionManager {
+    static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(Long.getLong("portal.sessionMinutes", 30));
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    static final class Session {
+        final String token;
+        final User user;
+        volatile long expiresAt;
+
+        Session(String token, User user, long expiresAt) {
+            this.token = token;
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long ttlMillis;
+    private final AtomicLong nextPurge = new AtomicLong();
+
+    public SessionManager() {
+        this(TTL_MILLIS);
+    }
+
+    public SessionManager(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Returns a new session, or null if the email and password do not match an account.
+    // An unknown email costs the same hash derivation as a wrong password.
+    public Session login(String email, String password) {
+        User user;
+        Lock lock = Application.stateLock.readLock();
+        lock.lock();
+        try {
+            user = Application.repository.studentByEmail(email);
+            if (user == null) {
+                user = Application.repository.professorByEmail(email);
+            }
+            if (user == null) {
+                user = Application.repository.administratorByEmail(email);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (user == null) {
+            PasswordHasher.verify(password, null);
+            return null;
+        }
+        if (!user.login(email, password)) {
+            return null;
+        }
+        purgeExpired();
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        Session session = new Session(token, user, System.currentTimeMillis() + ttlMillis);
+        sessions.put(token, session);
+        return session;
+    }
+
+    // The session's user, or null for an unknown or expired token; each use extends the session
+    public User resolve(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now >= session.expiresAt) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.expiresAt = now + ttlMillis;
+        return session.user;
+    }
+
+    public void logout(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    // Drops expired sessions at most once a minute, piggybacking on logins
+    void purgeExpired() {
+        long now = System.currentTimeMillis();
+        long due = nextPurge.get();
+        if (now < due || !nextPurge.compareAndSet(due, now + PURGE_INTERVAL_MILLIS)) {
+            return;
+        }
+        sessions.values().removeIf(session -> now >= session.expiresAt);
+    }
+}
@@ -0,0 +1,65 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs a sharded portal on this machine for testing: one EnrollmentShard process per shard on
+// 127.0.0.1:basePort+i and a coordinator PortalServer on serverPort, all sharing the data
+// directory. The snapshot is checkpointed first so every shard seeds from the same state.
+// Ctrl-C stops every process.
+// Usage: java [-Dportal.dataDir=dir] ShardCluster [shards] [basePort] [serverPort]
+class ShardCluster {
+    public static void main(String[] args) throws Exception {
+        int shards = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int basePort = args.length > 1 ? Integer.parseInt(args[1]) : 9100;
+        int serverPort = args.length > 2 ? Integer.parseInt(args[2]) : PortalServer.DEFAULT_PORT;
+
+        if (!Application.loadData()) {
+            return; // leave the unreadable files for the administrator; a checkpoint would replace them
+        }
+        if (!Application.DATA_FILE.exists()) {
+            System.out.println("No " + Application.DATA_FILE + "; run the portal or DatasetGenerator first.");
+            return;
+        }
+        Application.checkpoint();
+
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            addresses.add("127.0.0.1:" + (basePort + i));
+        }
+        String ring = String.join(",", addresses);
+        List<Process> processes = new ArrayList<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (Process process : processes) {
+                process.destroy(); // SIGTERM, so each process runs its own shutdown hook
+            }
+            for (Process process : processes) {
+                try {
+                    process.waitFor();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }));
+        for (int i = 0; i < shards; i++) {
+            processes.add(launch(ring, "--shard", Integer.toString(i)));
+        }
+        Process coordinator = launch(ring, "--server", Integer.toString(serverPort));
+        processes.add(coordinator);
+        System.out.println("Shards: " + ring + "; coordinator on port " + serverPort);
+        coordinator.waitFor();
+    }
+
+    // Another JVM running Application with the same classpath, data directory and ring
+    private static Process launch(String ring, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-Dportal.dataDir=" + Application.DATA_DIR.getAbsolutePath());
+        command.add("-Dportal.shards=" + ring);
+        command.add("Application");
+        command.addAll(List.of(args));
+        return new ProcessBuilder(command).inheritIO().directory(new File(".")).start();
+    }
+}
@@ -0,0 +1,105 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+
+// Routes registrations and drops to the EnrollmentShards that own them. Prerequisites are not
+// checked here or on the shards; PortalServer checks them against the live grades first. A registration takes two
+// steps: hold the course's credits on the student's home shard, which enforces the credit limit
+// and schedule clashes across every shard, then claim the seat on the course's shard. If the seat
+// cannot be had the hold is released again; a drop frees the seat first, then the credits.
+// A coordinator that dies between the two steps leaves a hold without a seat, which /status on the
+// home shard shows in creditsHeld.
+// PortalServer mirrors each outcome into the coordinator's own state. One that dies after the shards
+// commit but before the mirror is journaled catches up when the student retries: the retry
+// returns ALREADY_REGISTERED, or the drop finds no seat, and that is mirrored too.
+class ShardCoordinator {
+    static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final ShardRing ring;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+
+    ShardCoordinator(ShardRing ring) {
+        this.ring = ring;
+    }
+
+    // The coordinator for -Dportal.shards, or null when enrollment is local
+    static ShardCoordinator fromProperty() {
+        ShardRing ring = ShardRing.fromProperty();
+        return ring == null ? null : new ShardCoordinator(ring);
+    }
+
+    public ShardRing getRing() {
+        return ring;
+    }
+
+    // Safe to retry: a hold left behind by an earlier attempt is completed or released
+    public EnrollmentEngine.Result register(String studentID, String courseCode) throws IOException {
+        long start = Metrics.start();
+        try {
+            int home = ring.shardOfStudent(studentID);
+            EnrollmentEngine.Result held = result(call(home, "/hold", studentID, courseCode));
+            if (held != EnrollmentEngine.Result.REGISTERED && held != EnrollmentEngine.Result.ALREADY_REGISTERED) {
+                return held;
+            }
+            EnrollmentEngine.Result seated;
+            try {
+                seated = result(call(ring.shardOfCourse(courseCode), "/seat", studentID, courseCode));
+            } catch (IOException | RuntimeException e) {
+                if (held == EnrollmentEngine.Result.REGISTERED) {
+                    call(home, "/release", studentID, courseCode);
+                }
+                throw e;
+            }
+            if (seated == EnrollmentEngine.Result.REGISTERED || seated == EnrollmentEngine.Result.ALREADY_REGISTERED) {
+                return held == EnrollmentEngine.Result.ALREADY_REGISTERED && seated == EnrollmentEngine.Result.ALREADY_REGISTERED
+                        ? EnrollmentEngine.Result.ALREADY_REGISTERED
+                        : EnrollmentEngine.Result.REGISTERED;
+            }
+            call(home, "/release", studentID, courseCode);
+            return seated;
+        } finally {
+            Metrics.SHARD_REGISTER_TIME.recordSince(start);
+        }
+    }
+
+    // Returns false if the student held no seat in the course
+    public boolean drop(String studentID, String courseCode) throws IOException {
+        boolean dropped = Boolean.TRUE.equals(call(ring.shardOfCourse(courseCode), "/unseat", studentID, courseCode)
+                .get("dropped"));
+        if (dropped) {
+            call(ring.shardOfStudent(studentID), "/release", studentID, courseCode);
+        }
+        return dropped;
+    }
+
+    private static EnrollmentEngine.Result result(Map<String, Object> response) {
+        return EnrollmentEngine.Result.valueOf((String) response.get("result"));
+    }
+
+    private Map<String, Object> call(int shard, String path, String studentID, String courseCode) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://" + ring.address(shard) + path))
+                .timeout(TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        Json.write(Json.object("studentID", studentID, "courseCode", courseCode))))
+                .build();
+        HttpResponse<String> response;
+        try {
+            response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted calling shard " + shard, e);
+        }
+        Map<String, Object> body = Json.parseObject(response.body());
+        if (response.statusCode() == 400) {
+            throw new IllegalArgumentException((String) body.get("error"));
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Shard " + shard + " " + path + ": " + body.get("error"));
+        }
+        return body;
+    }
+}
@@ -0,0 +1,70 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Consistent-hash ring over the enrollment shards. Each shard is placed at VIRTUAL_NODES points,
+// hashed from its index rather than its address, so a shard can move to another port and keep its
+// keys, and adding a shard only takes over the keys between its points and their predecessors.
+// Courses are placed by course code and students by student ID, on the same ring.
+// -Dportal.shards=host:port,host:port,... lists the shards in index order.
+class ShardRing {
+    static final int VIRTUAL_NODES = 128;
+
+    private final List<String> addresses;
+    private final TreeMap<Long, Integer> points = new TreeMap<>();
+
+    ShardRing(List<String> addresses) {
+        this.addresses = new ArrayList<>(addresses);
+        for (int shard = 0; shard < addresses.size(); shard++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                points.put(hash("shard-" + shard + "#" + v), shard);
+            }
+        }
+    }
+
+    // The ring from -Dportal.shards, or null when the portal runs as a single node
+    static ShardRing fromProperty() {
+        String shards = System.getProperty("portal.shards");
+        if (shards == null || shards.isBlank()) {
+            return null;
+        }
+        return new ShardRing(Arrays.asList(shards.trim().split("\\s*,\\s*")));
+    }
+
+    public int size() {
+        return addresses.size();
+    }
+
+    public String address(int shard) {
+        return addresses.get(shard);
+    }
+
+    public int shardOfCourse(String courseCode) {
+        return owner("course:" + courseCode);
+    }
+
+    public int shardOfStudent(String studentID) {
+        return owner("student:" + studentID);
+    }
+
+    private int owner(String key) {
+        Map.Entry<Long, Integer> point = points.ceilingEntry(hash(key));
+        return (point == null ? points.firstEntry() : point).getValue();
+    }
+
+    // 64-bit FNV-1a with a final avalanche, so placement is the same in every JVM
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
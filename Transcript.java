@@ -0,0 +1,107 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// Immutable projection of one student's record: the registered courses in registration order,
+// the grades, and the GPA, all as of the same moment. Student publishes a new one at the end of
+// every change, under its monitor, so readers take a reference and never lock or copy.
+final class Transcript {
+    private final List<Course> courses;
+    private final GradeMap grades; // never changed once published; Student puts into a copy
+    private final double gpa;
+
+    // courses must not change either; Student passes a view over its replaced-on-change ID array
+    Transcript(List<Course> courses, GradeMap grades, double gpa) {
+        this.courses = courses;
+        this.grades = grades;
+        this.gpa = gpa;
+    }
+
+    public List<Course> getCourses() {
+        return courses;
+    }
+
+    // Null if the course has not been graded or is not registered
+    public Grade getGrade(Course course) {
+        if (!courses.contains(course)) {
+            return null;
+        }
+        byte code = grades.get(course.getIndex());
+        return code == GradeMap.NONE ? null : Grade.fromCode(code);
+    }
+
+    // Every grade the student holds, including those of courses no longer registered, read-only
+    public Map<Course, Grade> getGrades() {
+        return new GradesView(grades);
+    }
+
+    public double getGpa() {
+        return gpa;
+    }
+
+    private static final class GradesView extends AbstractMap<Course, Grade> {
+        private final GradeMap grades;
+
+        GradesView(GradeMap grades) {
+            this.grades = grades;
+        }
+
+        @Override
+        public Grade get(Object key) {
+            if (!(key instanceof Course)) {
+                return null;
+            }
+            byte code = grades.get(((Course) key).getIndex());
+            return code == GradeMap.NONE ? null : Grade.fromCode(code);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Map.Entry<Course, Grade>> entrySet() {
+            return new AbstractSet<Map.Entry<Course, Grade>>() {
+                @Override
+                public int size() {
+                    return grades.size();
+                }
+
+                @Override
+                public Iterator<Map.Entry<Course, Grade>> iterator() {
+                    return new Iterator<Map.Entry<Course, Grade>>() {
+                        private int slot = advance(0);
+
+                        private int advance(int from) {
+                            while (from < grades.capacity() && grades.courseAt(from) < 0) {
+                                from++;
+                            }
+                            return from;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return slot < grades.capacity();
+                        }
+
+                        @Override
+                        public Map.Entry<Course, Grade> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<Course, Grade> entry = new SimpleImmutableEntry<>(
+                                    Course.IDS.get(grades.courseAt(slot)), Grade.fromCode(grades.gradeAt(slot)));
+                            slot = advance(slot + 1);
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// A course schedule string such as "Mon-Wed 10:00-11:30" parsed into one bitmap per weekday,
+// one bit per five minutes, so two schedules clash if any pair of day words shares a bit.
+// Times where the end is not after the start ("12:00-1:30") are read as running into the afternoon.
+final class WeeklySchedule {
+    static final int SLOT_MINUTES = 5;
+    static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+    static final int WORDS_PER_DAY = (SLOTS_PER_DAY + 63) / 64;
+    static final String[] DAYS = {"Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"};
+    static final WeeklySchedule EMPTY = new WeeklySchedule();
+
+    private static final Pattern MEETING = Pattern.compile("([^0-9]*?)(\\d{1,2}):(\\d{2})\\s*-\\s*(\\d{1,2}):(\\d{2})");
+    private static final Pattern DAY = Pattern.compile("(mon|tue|wed|thu|fri|sat|sun)[a-z]*");
+
+    private final long[] slots = new long[DAYS.length * WORDS_PER_DAY];
+
+    private WeeklySchedule() {
+    }
+
+    // Anything that cannot be read (e.g. "TBA") is an empty schedule and never clashes
+    public static WeeklySchedule parse(String text) {
+        if (text == null) {
+            return EMPTY;
+        }
+        WeeklySchedule schedule = new WeeklySchedule();
+        Matcher meeting = MEETING.matcher(text.toLowerCase(Locale.ROOT));
+        while (meeting.find()) {
+            int start = Integer.parseInt(meeting.group(2)) * 60 + Integer.parseInt(meeting.group(3));
+            int end = Integer.parseInt(meeting.group(4)) * 60 + Integer.parseInt(meeting.group(5));
+            if (end <= start) {
+                end += 12 * 60;
+            }
+            if (end > 24 * 60) {
+                continue;
+            }
+            Matcher day = DAY.matcher(meeting.group(1));
+            while (day.find()) {
+                schedule.fill(dayIndex(day.group(1)), start / SLOT_MINUTES, (end + SLOT_MINUTES - 1) / SLOT_MINUTES);
+            }
+        }
+        return schedule.isEmpty() ? EMPTY : schedule;
+    }
+
+    private static int dayIndex(String prefix) {
+        for (int i = 0; i < DAYS.length; i++) {
+            if (DAYS[i].equalsIgnoreCase(prefix)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(prefix);
+    }
+
+    // Marks slots [from, to) of a day
+    private void fill(int day, int from, int to) {
+        for (int slot = from; slot < to; slot++) {
+            slots[day * WORDS_PER_DAY + slot / 64] |= 1L << (slot % 64);
+        }
+    }
+
+    public boolean overlaps(WeeklySchedule other) {
+        for (int i = 0; i < slots.length; i++) {
+            if ((slots[i] & other.slots[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public WeeklySchedule union(WeeklySchedule other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        WeeklySchedule combined = new WeeklySchedule();
+        for (int i = 0; i < slots.length; i++) {
+            combined.slots[i] = slots[i] | other.slots[i];
+        }
+        return combined;
+    }
+
+    public boolean isEmpty() {
+        for (long word : slots) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
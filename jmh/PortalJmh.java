@@ -0,0 +1,164 @@
+package jmh;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// PortalBenchmark's scenarios under JMH: every fork is a fresh JVM with its own scratch data
+// directory and DatasetGenerator dataset of the @Param size (students:courses), and every result
+// goes to a Blackhole. JMH does not accept benchmarks in the default package, where the portal
+// lives, so the scenarios are fetched once per trial through PortalBenchmark.prepare by reflection;
+// the timed calls are plain Callable invocations.
+// Usage: mvn -B package && java -jar target/benchmarks.jar [PortalJmh.registerContended] [-p size=100000:5000]
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PortalJmh {
+    @Param({"1000:100", "10000:1000", "100000:5000"})
+    public String size;
+
+    private File dataDir;
+    private Method settle;
+    private Callable<Object> findStudentByID;
+    private Callable<Object> isFull;
+    private Callable<Object> trackProgress;
+    private Callable<Object> viewAvailableCourses;
+    private Callable<Object> registerCourse;
+    private Callable<Object> registerContended;
+    private Callable<Object> saveData;
+    private Callable<Object> flush;
+    private Callable<Object> importGrades;
+    private Callable<Object> adminBatch;
+    private Callable<Object> checkpoint;
+    private Callable<Object> loadData;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        // Must happen before Application is first touched, since its data file paths are fixed then
+        dataDir = Files.createTempDirectory("portal-jmh").toFile();
+        System.setProperty("portal.dataDir", dataDir.getPath());
+        Class<?> portal = Class.forName("PortalBenchmark");
+        Method prepare = portal.getMethod("prepare", int.class, int.class);
+        prepare.setAccessible(true); // the class is package-private
+        settle = portal.getMethod("settle");
+        settle.setAccessible(true);
+        String[] parts = size.split(":");
+        Map<String, Callable<Object>> scenarios = (Map<String, Callable<Object>>) prepare.invoke(null,
+                Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        findStudentByID = scenarios.get("findStudentByID");
+        isFull = scenarios.get("isFull");
+        trackProgress = scenarios.get("trackProgress");
+        viewAvailableCourses = scenarios.get("viewAvailableCourses");
+        registerCourse = scenarios.get("registerCourse");
+        registerContended = scenarios.get("registerContended");
+        saveData = scenarios.get("saveData");
+        flush = scenarios.get("flush");
+        importGrades = scenarios.get("importGrades");
+        adminBatch = scenarios.get("adminBatch");
+        checkpoint = scenarios.get("checkpoint");
+        loadData = scenarios.get("loadData");
+    }
+
+    // Commits what the iteration journaled, outside the timing
+    @TearDown(Level.Iteration)
+    public void settle() throws Exception {
+        settle.invoke(null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : dataDir.listFiles()) {
+            file.delete();
+        }
+        dataDir.delete();
+    }
+
+    @Benchmark
+    public void findStudentByID(Blackhole blackhole) throws Exception {
+        blackhole.consume(findStudentByID.call());
+    }
+
+    @Benchmark
+    public void isFull(Blackhole blackhole) throws Exception {
+        blackhole.consume(isFull.call());
+    }
+
+    @Benchmark
+    public void trackProgress(Blackhole blackhole) throws Exception {
+        blackhole.consume(trackProgress.call());
+    }
+
+    @Benchmark
+    public void viewAvailableCourses(Blackhole blackhole) throws Exception {
+        blackhole.consume(viewAvailableCourses.call());
+    }
+
+    @Benchmark
+    public void registerCourse(Blackhole blackhole) throws Exception {
+        blackhole.consume(registerCourse.call());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void registerContended(Blackhole blackhole) throws Exception {
+        blackhole.consume(registerContended.call());
+    }
+
+    @Benchmark
+    public void saveData(Blackhole blackhole) throws Exception {
+        blackhole.consume(saveData.call());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void flush(Blackhole blackhole) throws Exception {
+        blackhole.consume(flush.call());
+    }
+
+    // One call imports PortalBenchmark.IMPORT_ROWS grades, so the score is grades/s
+    @Benchmark
+    @OperationsPerInvocation(10_000)
+    public void importGrades(Blackhole blackhole) throws Exception {
+        blackhole.consume(importGrades.call());
+    }
+
+    // One call runs PortalBenchmark.BATCH_COMMANDS commands, so the score is commands/s
+    @Benchmark
+    @OperationsPerInvocation(10_000)
+    public void adminBatch(Blackhole blackhole) throws Exception {
+        blackhole.consume(adminBatch.call());
+    }
+
+    @Benchmark
+    public void checkpoint(Blackhole blackhole) throws Exception {
+        blackhole.consume(checkpoint.call());
+    }
+
+    @Benchmark
+    public void loadData(Blackhole blackhole) throws Exception {
+        blackhole.consume(loadData.call());
+    }
+}